@@ -0,0 +1,64 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SampleEntry;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocations of the serializers while request threads serialize sessions concurrently.
+ * Meant to be run with the GC profiler, e.g. <code>-prof gc</code>, whose <code>gc.alloc.rate.norm</code> is the bytes allocated per value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SerializerAllocationBenchmark {
+
+    @Param({"java", "kryo"})
+    public String serializer;
+
+    @Param({"sample", "list"})
+    public String payload;
+
+    private IBinarySerializer binarySerializer;
+    private Serializable value;
+
+    @Setup
+    public void setUp() {
+        this.binarySerializer = "kryo".equals(this.serializer) ? new KryoSerializer() : new JavaSerializer();
+        this.binarySerializer.setClassLoader(getClass().getClassLoader());
+        this.value = "list".equals(this.payload) ? sampleEntries(100) : sampleEntry(1);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws SerializationException {
+        return this.binarySerializer.serialize(this.value);
+    }
+
+    private static ArrayList<SampleEntry> sampleEntries(final int count) {
+        final ArrayList<SampleEntry> list = new ArrayList<SampleEntry>();
+        for (int i = 0; i < count; i++) {
+            list.add(sampleEntry(i));
+        }
+        return list;
+    }
+
+    private static SampleEntry sampleEntry(final int i) {
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - SIMPLE - " + i);
+        simpleEntry.setStatusCode(i);
+
+        final SampleEntry sampleEntry = new SampleEntry();
+        sampleEntry.setMsg("MSG - SAMPLE - " + i);
+        sampleEntry.setStatusCode(i);
+        sampleEntry.setEntry(simpleEntry);
+        return sampleEntry;
+    }
+}
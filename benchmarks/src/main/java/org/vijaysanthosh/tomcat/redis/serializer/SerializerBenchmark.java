@@ -0,0 +1,88 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SampleEntry;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and de-serialization of attribute values of different shapes by <code>JavaSerializer</code> and <code>KryoSerializer</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({"java", "kryo"})
+    public String serializer;
+
+    @Param({"string", "simple", "sample", "list", "map"})
+    public String payload;
+
+    private IBinarySerializer binarySerializer;
+    private Serializable value;
+    private byte[] serializedValue;
+
+    @Setup
+    public void setUp() throws SerializationException {
+        this.binarySerializer = "kryo".equals(this.serializer) ? new KryoSerializer() : new JavaSerializer();
+        this.binarySerializer.setClassLoader(getClass().getClassLoader());
+        this.value = createPayload(this.payload);
+        this.serializedValue = this.binarySerializer.serialize(this.value);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws SerializationException {
+        return this.binarySerializer.serialize(this.value);
+    }
+
+    @Benchmark
+    public Serializable deSerialize() throws SerializationException {
+        return this.binarySerializer.deSerialize(this.serializedValue);
+    }
+
+    private static Serializable createPayload(final String payload) {
+        if ("string".equals(payload)) {
+            return "USER-1234567890";
+        } else if ("simple".equals(payload)) {
+            return simpleEntry(1);
+        } else if ("sample".equals(payload)) {
+            return sampleEntry(1);
+        } else if ("list".equals(payload)) {
+            final ArrayList<SampleEntry> list = new ArrayList<SampleEntry>();
+            for (int i = 0; i < 1000; i++) {
+                list.add(sampleEntry(i));
+            }
+            return list;
+        } else if ("map".equals(payload)) {
+            final HashMap<String, SimpleEntry> map = new HashMap<String, SimpleEntry>();
+            for (int i = 0; i < 1000; i++) {
+                map.put("KEY-" + i, simpleEntry(i));
+            }
+            return map;
+        }
+        throw new IllegalArgumentException("Unknown payload " + payload);
+    }
+
+    private static SimpleEntry simpleEntry(final int i) {
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - SIMPLE - " + i);
+        simpleEntry.setStatusCode(i);
+        return simpleEntry;
+    }
+
+    private static SampleEntry sampleEntry(final int i) {
+        final SampleEntry sampleEntry = new SampleEntry();
+        sampleEntry.setMsg("MSG - SAMPLE - " + i);
+        sampleEntry.setStatusCode(i);
+        sampleEntry.setEntry(simpleEntry(i));
+        return sampleEntry;
+    }
+}
@@ -0,0 +1,90 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end flush of the changes done by a request, from the registration of the <code>RedisCommand</code>s
+ * up to their execution against <code>LocalRedisServer</code>, a local stand-in for redis-server.
+ * An invocation completes once the stand-in has received all the commands of the flush.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlushActionsBenchmark {
+
+    private static final int ATTRIBUTES = 8;
+
+    @Param({"true", "false"})
+    public boolean pipelined;
+
+    @Param({"1", "16"})
+    public int sessions;
+
+    private LocalRedisServer server;
+    private RedisStoreManager storeManager;
+    private RedisSessionActionHandler actionHandler;
+    private String[] sessionIds;
+    private String[] keys;
+    private String[] fields;
+
+    @Setup
+    public void setUp() throws IOException, LifecycleException {
+        this.server = new LocalRedisServer();
+
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        this.storeManager = sessionManager.getStoreManager();
+        this.storeManager.setHost(this.server.getHost());
+        this.storeManager.setPort(this.server.getPort());
+        this.storeManager.setPipelined(this.pipelined);
+        // The stand-in does not execute scripts.
+        this.storeManager.setScripting(false);
+        this.storeManager.init();
+        this.actionHandler = new RedisSessionActionHandler(sessionManager, 1800, Integer.MAX_VALUE);
+
+        this.sessionIds = new String[this.sessions];
+        this.keys = new String[this.sessions];
+        for (int i = 0; i < this.sessions; i++) {
+            this.sessionIds[i] = "SESSION-" + i;
+            this.keys[i] = this.actionHandler.getLayout().getKey(this.sessionIds[i], RedisSessionLayout.ATTRIBUTES);
+        }
+        this.fields = new String[ATTRIBUTES];
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            this.fields[i] = "ATTRIBUTE-" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.storeManager.destroy();
+        this.server.shutdown();
+    }
+
+    @Benchmark
+    public int flushActions() {
+        for (int i = 0; i < this.sessions; i++) {
+            for (int j = 0; j < ATTRIBUTES; j++) {
+                this.actionHandler.registerCommand(new RedisCommand(this.sessionIds[i]).setCommand(Command.HSET)
+                        .setKey(this.keys[i]).setField(this.fields[j]).setValue(j));
+            }
+            this.actionHandler.registerSessionAccess(this.sessionIds[i]);
+        }
+
+        // Every RedisCommand results in exactly one command to redis.
+        final int expected = this.server.getCommandCount() + this.actionHandler.registry.size();
+        this.actionHandler.flushActions();
+        while (this.server.getCommandCount() < expected) {
+            Thread.yield();
+        }
+        return expected;
+    }
+}
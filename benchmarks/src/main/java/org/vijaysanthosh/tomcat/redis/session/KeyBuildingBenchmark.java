@@ -0,0 +1,56 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the redis keys of a <code>Session</code>, done for every registered <code>RedisCommand</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyBuildingBenchmark {
+
+    private static final String SESSION_ID = "5C8B2F7A1D9E4C6B8A3F0E2D7C1B9A4E";
+
+    private RedisSessionLayout multiHashLayout;
+    private RedisSessionLayout singleHashLayout;
+
+    @Setup
+    public void setUp() throws LifecycleException {
+        this.multiHashLayout = RedisSessionLayout.getLayout(RedisSessionLayout.MULTI_HASH);
+        this.singleHashLayout = RedisSessionLayout.getLayout(RedisSessionLayout.SINGLE_HASH);
+    }
+
+    @Benchmark
+    public String join() {
+        return StringUtils.join(Arrays.asList(RedisSessionLayout.SESSION, RedisSessionLayout.ATTRIBUTES, SESSION_ID), RedisSessionLayout.COLON);
+    }
+
+    @Benchmark
+    public String concatenation() {
+        return RedisSessionLayout.SESSION + RedisSessionLayout.COLON + RedisSessionLayout.ATTRIBUTES + RedisSessionLayout.COLON + SESSION_ID;
+    }
+
+    @Benchmark
+    public String multiHashKey() {
+        return this.multiHashLayout.getKey(SESSION_ID, RedisSessionLayout.ATTRIBUTES);
+    }
+
+    @Benchmark
+    public String singleHashKey() {
+        return this.singleHashLayout.getKey(SESSION_ID, RedisSessionLayout.ATTRIBUTES);
+    }
+
+    @Benchmark
+    public Object multiHashKeys() {
+        return this.multiHashLayout.getKeys(SESSION_ID);
+    }
+}
@@ -0,0 +1,62 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the <code>RedisCommandRegistry</code> alone: request threads registering while a single thread drains the stripes,
+ * as done by <code>RedisSessionActionHandler</code> without the execution against redis.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class RedisCommandRegistryBenchmark {
+
+    private static final int SESSIONS = 1024;
+
+    @Param({"8"})
+    public int stripes;
+
+    private RedisCommandRegistry registry;
+    private RedisCommand[] commands;
+
+    @Setup
+    public void setUp() {
+        this.registry = new RedisCommandRegistry(this.stripes, 256);
+        this.commands = new RedisCommand[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            this.commands[i] = new RedisCommand("SESSION-" + i).setCommand(Command.EXPIRY).setKey("session:main:SESSION-" + i).setExpiryInterval(1800);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private int counter = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        private int stripe = 0;
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(4)
+    public boolean register(final Producer producer) {
+        return this.registry.register(this.commands[(producer.counter++ & Integer.MAX_VALUE) % SESSIONS]);
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public List<RedisCommand> drain(final Consumer consumer) {
+        consumer.stripe = (consumer.stripe + 1) % this.stripes;
+        return this.registry.drain(consumer.stripe);
+    }
+}
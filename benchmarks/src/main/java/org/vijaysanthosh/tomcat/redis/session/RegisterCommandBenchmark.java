@@ -0,0 +1,89 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registration of <code>RedisCommand</code>s by concurrent requests through <code>RedisSessionActionHandler.registerCommand</code>,
+ * including the flushes triggered once a stripe of the registry exceeds its share of <code>maxRegistrySize</code>.
+ * The flushed <code>RedisCommand</code>s are executed asynchronously against <code>LocalRedisServer</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RegisterCommandBenchmark {
+
+    private static final int SESSIONS = 1024;
+    private static final int ATTRIBUTES = 8;
+
+    @Param({"100"})
+    public int maxRegistrySize;
+
+    private LocalRedisServer server;
+    private RedisStoreManager storeManager;
+    private RedisSessionActionHandler actionHandler;
+    private String[] sessionIds;
+    private String[] keys;
+    private String[] fields;
+
+    @Setup
+    public void setUp() throws IOException, LifecycleException {
+        this.server = new LocalRedisServer();
+
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        this.storeManager = sessionManager.getStoreManager();
+        this.storeManager.setHost(this.server.getHost());
+        this.storeManager.setPort(this.server.getPort());
+        // The stand-in does not execute scripts.
+        this.storeManager.setScripting(false);
+        // The executors have to keep up with the producers, hence dropping the expiries the stand-in is too slow for.
+        this.storeManager.setOverflowPolicy("dropExpiry");
+        this.storeManager.init();
+        this.actionHandler = new RedisSessionActionHandler(sessionManager, 1800, this.maxRegistrySize);
+
+        this.sessionIds = new String[SESSIONS];
+        this.keys = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            this.sessionIds[i] = "SESSION-" + i;
+            this.keys[i] = this.actionHandler.getLayout().getKey(this.sessionIds[i], RedisSessionLayout.ATTRIBUTES);
+        }
+        this.fields = new String[ATTRIBUTES];
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            this.fields[i] = "ATTRIBUTE-" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.storeManager.destroy();
+        this.server.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        private int counter = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    @Benchmark
+    public void registerAttribute(final Request request) {
+        final int i = (request.counter++ & Integer.MAX_VALUE) % SESSIONS;
+        this.actionHandler.registerCommand(new RedisCommand(this.sessionIds[i]).setCommand(Command.HSET)
+                .setKey(this.keys[i]).setField(this.fields[(request.counter >>> 10) % ATTRIBUTES]).setValue(i));
+    }
+
+    @Benchmark
+    public void registerAccess(final Request request) {
+        final int i = (request.counter++ & Integer.MAX_VALUE) % SESSIONS;
+        this.actionHandler.registerSessionAccess(this.sessionIds[i]);
+    }
+}
@@ -0,0 +1,77 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.serializer.SerializationException;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work done on the request threads, i.e. registering a new session id and loading a session, against the in-memory backend.
+ * The simulated round trip latency separates the cost of the session handling from the one of the network.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SessionRoundTripBenchmark {
+
+    private static final int SESSIONS = 1024;
+    private static final int ATTRIBUTES = 8;
+
+    /**
+     * Simulated latency (in microseconds) of a round trip to redis.
+     */
+    @Param({"0", "200"})
+    public long latency;
+
+    private RedisStoreManager storeManager;
+    private RedisSessionActionHandler actionHandler;
+    private String[] sessionIds;
+
+    @Setup
+    public void setUp() throws LifecycleException {
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        this.storeManager = sessionManager.getStoreManager();
+        this.storeManager.setBackend("memory");
+        this.storeManager.setBackendLatency(this.latency);
+        this.storeManager.init();
+        this.actionHandler = new RedisSessionActionHandler(sessionManager, 1800, 100);
+
+        final RedisSessionLayout layout = this.actionHandler.getLayout();
+        this.sessionIds = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            this.sessionIds[i] = "SESSION-" + i;
+            this.actionHandler.regsisterSessionId(this.sessionIds[i], true);
+            for (int j = 0; j < ATTRIBUTES; j++) {
+                this.actionHandler.registerCommand(new RedisCommand(this.sessionIds[i]).setCommand(RedisCommand.Command.HSET)
+                        .setKey(layout.getKey(this.sessionIds[i], RedisSessionLayout.ATTRIBUTES)).setField("ATTRIBUTE-" + j).setValue(j));
+            }
+        }
+        this.actionHandler.flushActions();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.storeManager.destroy();
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        private int counter = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    @Benchmark
+    public Object loadSession(final Request request) throws SerializationException {
+        return this.actionHandler.loadSession(this.sessionIds[(request.counter++ & Integer.MAX_VALUE) % SESSIONS]);
+    }
+
+    @Benchmark
+    public String registerSessionId(final Request request) {
+        return this.actionHandler.regsisterSessionId(Thread.currentThread().getId() + "-" + request.counter++, false);
+    }
+}
@@ -0,0 +1,95 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.catalina.LifecycleException;
+import org.openjdk.jmh.annotations.*;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches of <code>RedisCommand</code>s flushed through the executors, when most of them belong to a few hot sessions which
+ * all hash to the same executor. The queues are kept small, hence the callers are held back to the rate at which the
+ * batches are executed against the in-memory backend.
+ * <p>
+ * With a single mailbox per executor, the executor of the hot sessions bounds the throughput while the others sit idle.
+ * With more mailboxes, the hot sessions are spread over mailboxes which any idle executor takes on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SkewedFlushBenchmark {
+
+    private static final int EXECUTORS = 4;
+    private static final int HOT_SESSIONS = 16;
+    private static final int COLD_SESSIONS = 1024;
+    private static final int COMMANDS = 4;
+
+    /**
+     * Percentage of the batches belonging to a hot session.
+     */
+    private static final int HOT_PERCENTAGE = 80;
+
+    @Param({"1", "8"})
+    public int mailboxes;
+
+    private RedisStoreManager storeManager;
+    private String[] hotSessionIds;
+    private String[] coldSessionIds;
+
+    @Setup
+    public void setUp() throws LifecycleException {
+        this.storeManager = new RedisStoreManager();
+        this.storeManager.setBackend("memory");
+        // Simulated latency (in microseconds) of a round trip to redis.
+        this.storeManager.setBackendLatency(100L);
+        this.storeManager.setExecutorPoolSize(EXECUTORS);
+        this.storeManager.setExecutorMailboxes(this.mailboxes);
+        this.storeManager.setExecutorQueueSize(16);
+        this.storeManager.setOverflowTimeout(TimeUnit.MINUTES.toMillis(1));
+        this.storeManager.init();
+
+        // The hot sessions all belong to the first executor, as by an unlucky hash distribution.
+        final List<String> hotSessionIds = new ArrayList<String>();
+        for(int i = 0; hotSessionIds.size() < HOT_SESSIONS; i++) {
+            if(RedisStoreManager.getStripe("HOT-" + i, EXECUTORS) == 0) {
+                hotSessionIds.add("HOT-" + i);
+            }
+        }
+        this.hotSessionIds = hotSessionIds.toArray(new String[HOT_SESSIONS]);
+        this.coldSessionIds = new String[COLD_SESSIONS];
+        for(int i = 0; i < COLD_SESSIONS; i++) {
+            this.coldSessionIds[i] = "COLD-" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.storeManager.destroy();
+    }
+
+    @State(Scope.Thread)
+    public static class Request {
+        private final Random random = new Random(Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public void flush(final Request request) {
+        final String sessionId = request.random.nextInt(100) < HOT_PERCENTAGE
+                ? this.hotSessionIds[request.random.nextInt(HOT_SESSIONS)]
+                : this.coldSessionIds[request.random.nextInt(COLD_SESSIONS)];
+
+        final List<RedisCommand> commands = new ArrayList<RedisCommand>(COMMANDS);
+        for(int i = 0; i < COMMANDS; i++) {
+            commands.add(new RedisCommand(sessionId).setCommand(RedisCommand.Command.HSET)
+                    .setKey("session:attributes:" + sessionId).setField("ATTRIBUTE-" + i).setValue(i));
+        }
+        this.storeManager.execute(commands);
+    }
+}
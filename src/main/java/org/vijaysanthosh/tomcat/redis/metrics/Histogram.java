@@ -0,0 +1,76 @@
+package org.vijaysanthosh.tomcat.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with a bucket per power of two.
+ * Recording a value neither locks nor allocates. Percentiles are hence accurate to within a factor of two.
+ */
+public final class Histogram {
+
+    /**
+     * Bucket i holds the values with a bit length of i, i.e. from 2^(i-1) to 2^i - 1. Bucket 0 holds 0.
+     */
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value Value to be recorded. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+
+        long current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value)) {
+            current = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        final long count = getCount();
+        return count > 0 ? (double) getSum() / count : 0d;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100.
+     * @return Upper bound of the bucket holding the percentile, capped to the maximum recorded value. 0 if nothing has been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        final long count = getCount();
+        if(count == 0) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100d));
+        long cumulative = 0L;
+        for(int i = 0; i < BUCKETS; i++) {
+            cumulative += this.buckets.get(i);
+            if(cumulative >= rank) {
+                return Math.min(i == 64 ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+}
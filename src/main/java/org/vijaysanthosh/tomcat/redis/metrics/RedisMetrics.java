@@ -0,0 +1,151 @@
+package org.vijaysanthosh.tomcat.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the persistence of sessions into redis.
+ * Recording neither locks nor allocates, hence can be done on the hot paths. Latencies are recorded in nanoseconds.
+ */
+public class RedisMetrics {
+
+    private final Histogram flushLatency = new Histogram();
+    private final Histogram flushSize = new Histogram();
+    private final Histogram serializationLatency = new Histogram();
+    private final Histogram loadLatency = new Histogram();
+
+    private final AtomicLong commandErrors = new AtomicLong();
+    private final AtomicLong droppedCommands = new AtomicLong();
+    private final AtomicLong coalescedBatches = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong loadHits = new AtomicLong();
+    private final AtomicLong loadMisses = new AtomicLong();
+    private final AtomicLong nearCacheHits = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong replicaFallbacks = new AtomicLong();
+    private final AtomicLong reservedSessionIds = new AtomicLong();
+    private final AtomicLong registeredSessionIds = new AtomicLong();
+
+    /**
+     * Records the execution of a batch of <code>RedisCommand</code>s against redis.
+     *
+     * @param commands Number of <code>RedisCommand</code>s in the batch.
+     * @param nanos Time taken to execute the batch.
+     */
+    public void recordFlush(final int commands, final long nanos) {
+        this.flushSize.record(commands);
+        this.flushLatency.record(nanos);
+    }
+
+    public void recordCommandErrors(final int commands) {
+        this.commandErrors.addAndGet(commands);
+    }
+
+    public void recordDroppedCommands(final int commands) {
+        this.droppedCommands.addAndGet(commands);
+    }
+
+    public void recordCoalescedBatch() {
+        this.coalescedBatches.incrementAndGet();
+    }
+
+    public void recordSerialization(final long nanos) {
+        this.serializationLatency.record(nanos);
+    }
+
+    public void recordBytesWritten(final int bytes) {
+        this.bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Records a load of a <code>Session</code> from redis.
+     *
+     * @param found Whether the <code>Session</code> was found in redis.
+     * @param nanos Time taken by the load.
+     */
+    public void recordLoad(final boolean found, final long nanos) {
+        (found ? this.loadHits : this.loadMisses).incrementAndGet();
+        this.loadLatency.record(nanos);
+    }
+
+    public void recordNearCacheHit() {
+        this.nearCacheHits.incrementAndGet();
+    }
+
+    /**
+     * Records an attempt to load a <code>Session</code> from a replica.
+     *
+     * @param served Whether the replica served the <code>Session</code>. Otherwise it has been loaded from the master.
+     */
+    public void recordReplicaRead(final boolean served) {
+        (served ? this.replicaReads : this.replicaFallbacks).incrementAndGet();
+    }
+
+    /**
+     * Records the registration of a new <code>Session</code> identifier.
+     *
+     * @param reserved Whether the identifier had been reserved ahead. Otherwise it has been registered with a round trip of its own.
+     */
+    public void recordSessionIdRegistration(final boolean reserved) {
+        (reserved ? this.reservedSessionIds : this.registeredSessionIds).incrementAndGet();
+    }
+
+    public Histogram getFlushLatency() {
+        return this.flushLatency;
+    }
+
+    public Histogram getFlushSize() {
+        return this.flushSize;
+    }
+
+    public Histogram getSerializationLatency() {
+        return this.serializationLatency;
+    }
+
+    public Histogram getLoadLatency() {
+        return this.loadLatency;
+    }
+
+    public long getCommandErrors() {
+        return this.commandErrors.get();
+    }
+
+    public long getDroppedCommands() {
+        return this.droppedCommands.get();
+    }
+
+    public long getCoalescedBatches() {
+        return this.coalescedBatches.get();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.get();
+    }
+
+    public long getLoadHits() {
+        return this.loadHits.get();
+    }
+
+    public long getLoadMisses() {
+        return this.loadMisses.get();
+    }
+
+    public long getNearCacheHits() {
+        return this.nearCacheHits.get();
+    }
+
+    public long getReplicaReads() {
+        return this.replicaReads.get();
+    }
+
+    public long getReplicaFallbacks() {
+        return this.replicaFallbacks.get();
+    }
+
+    public long getReservedSessionIds() {
+        return this.reservedSessionIds.get();
+    }
+
+    public long getRegisteredSessionIds() {
+        return this.registeredSessionIds.get();
+    }
+}
@@ -0,0 +1,138 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import java.io.Serializable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the values of another <code>IBinarySerializer</code> with Deflate once they reach a size threshold.
+ * <p>
+ * A compressed value starts with a header byte (0), followed by the codec and the uncompressed length.
+ * Neither Java serialization streams nor Base64 encoded values start with that byte, hence compressed and uncompressed values can coexist,
+ * e.g. the ones written before the compression was enabled. Values are stored uncompressed if compressing does not make them smaller.
+ */
+public final class CompressingSerializer implements IBinarySerializer {
+
+    static final byte HEADER = 0;
+    static final byte DEFLATE = 'D';
+
+    /**
+     * Header byte, codec and uncompressed length.
+     */
+    private static final int HEADER_LENGTH = 6;
+
+    /**
+     * Maximum ratio of the uncompressed length to the compressed one which Deflate can achieve.
+     */
+    private static final int MAX_RATIO = 1032;
+
+    /**
+     * Maximum uncompressed length, as the largest array most JVMs can allocate.
+     */
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final IBinarySerializer serializer;
+    private final int threshold;
+
+    /**
+     * Deflater and Inflater per thread, as they hold native memory which is costly to allocate per value.
+     */
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    /**
+     * @param serializer <code>IBinarySerializer</code> whose values are compressed.
+     * @param threshold Minimum size (in bytes) of a serialized value to be compressed. Values are never compressed if 0, yet are still de-compressed.
+     */
+    public CompressingSerializer(final IBinarySerializer serializer, final int threshold) {
+        this.serializer = serializer;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void setClassLoader(ClassLoader classLoader) {
+        this.serializer.setClassLoader(classLoader);
+    }
+
+    @Override
+    public byte[] serialize(Serializable object) throws SerializationException {
+        final byte[] serializedBytes = this.serializer.serialize(object);
+        if(this.threshold <= 0 || serializedBytes.length < this.threshold || serializedBytes.length <= HEADER_LENGTH) {
+            return serializedBytes;
+        }
+
+        final Deflater deflater = this.deflaters.get();
+        try {
+            deflater.setInput(serializedBytes);
+            deflater.finish();
+            // Not worth it unless the compressed value, along with the header, is smaller.
+            final byte[] compressed = new byte[serializedBytes.length];
+            final int length = deflater.deflate(compressed, HEADER_LENGTH, compressed.length - HEADER_LENGTH);
+            if(!deflater.finished()) {
+                return serializedBytes;
+            }
+
+            compressed[0] = HEADER;
+            compressed[1] = DEFLATE;
+            writeInt(compressed, 2, serializedBytes.length);
+            final byte[] value = new byte[HEADER_LENGTH + length];
+            System.arraycopy(compressed, 0, value, 0, value.length);
+            return value;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public Serializable deSerialize(byte[] serializedBytes) throws SerializationException {
+        if(serializedBytes.length < HEADER_LENGTH || serializedBytes[0] != HEADER) {
+            return this.serializer.deSerialize(serializedBytes);
+        }
+        if(serializedBytes[1] != DEFLATE) {
+            throw new SerializationException("Unknown compression codec " + (char) serializedBytes[1]);
+        }
+
+        // The length is checked before being allocated, as a corrupt or foreign value may hold anything.
+        final int length = readInt(serializedBytes, 2);
+        if(length < 0 || length > MAX_LENGTH || length > (long) (serializedBytes.length - HEADER_LENGTH) * MAX_RATIO) {
+            throw new SerializationException("Corrupted compressed value. Invalid uncompressed length " + length);
+        }
+
+        final Inflater inflater = this.inflaters.get();
+        try {
+            inflater.setInput(serializedBytes, HEADER_LENGTH, serializedBytes.length - HEADER_LENGTH);
+            final byte[] decompressed = new byte[length];
+            if(inflater.inflate(decompressed) != decompressed.length || !inflater.finished()) {
+                throw new SerializationException("Corrupted compressed value.");
+            }
+            return this.serializer.deSerialize(decompressed);
+        } catch (DataFormatException e) {
+            throw new SerializationException("Unexpected error during de-compression.", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+}
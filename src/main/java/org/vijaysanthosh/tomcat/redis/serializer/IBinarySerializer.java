@@ -0,0 +1,32 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import java.io.Serializable;
+
+/**
+ * Interface for Serializer which works on the raw bytes stored in redis.
+ * Implementations of the <code>String</code> based <code>ISerializer</code> are supported through <code>StringSerializerAdapter</code>.
+ */
+public interface IBinarySerializer {
+
+    /**
+     * Setting the <code>ClassLoader</code> to be used for serialization and de-serialization.
+     * @param classLoader
+     */
+    void setClassLoader(ClassLoader classLoader);
+
+    /**
+     * Serialize a <code>Serializable</code> object.
+     * @param object Object to be serialized.
+     * @return Serialized bytes of the Object.
+     * @throws SerializationException
+     */
+    byte[] serialize(final Serializable object) throws SerializationException;
+
+    /**
+     * Construct the <code>Serializable</code> object back from the serialized bytes.
+     * @param serializedBytes Serialized bytes of the <code>Serializable</code> object.
+     * @return <code>Serializable</code> object.
+     * @throws SerializationException
+     */
+    Serializable deSerialize(final byte[] serializedBytes) throws SerializationException;
+}
@@ -3,7 +3,8 @@ package org.vijaysanthosh.tomcat.redis.serializer;
 import java.io.Serializable;
 
 /**
- * Interface for Serializer.
+ * Interface for Serializer which works on <code>String</code>s.
+ * Implementations are stored in redis as UTF-8 bytes through <code>StringSerializerAdapter</code>. Prefer <code>IBinarySerializer</code> for new implementations.
  */
 public interface ISerializer {
 
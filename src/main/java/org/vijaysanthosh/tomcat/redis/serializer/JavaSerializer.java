@@ -2,18 +2,40 @@ package org.vijaysanthosh.tomcat.redis.serializer;
 
 import org.apache.catalina.util.CustomObjectInputStream;
 import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
- * JAXB implementation of <code>ISerializer</code>.
+ * Java serialization implementation of <code>IBinarySerializer</code>.
+ * <p>
+ * Values are written into a buffer kept per thread, hence the only array allocated per value is the returned one.
+ * The <code>ObjectOutputStream</code> itself is created per value, as it remembers the classes and objects already written.
  */
-public final class JavaSerializer implements ISerializer {
+public final class JavaSerializer implements IBinarySerializer {
+
+    /**
+     * Every Java serialization stream starts with these bytes.
+     * Values written by the earlier versions were Base64 encoded and hence do not.
+     */
+    private static final byte STREAM_MAGIC_0 = (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8);
+    private static final byte STREAM_MAGIC_1 = (byte) ObjectStreamConstants.STREAM_MAGIC;
 
-    private static final BASE64Encoder ENCODER = new BASE64Encoder();
     private static final BASE64Decoder DECODER = new BASE64Decoder();
 
+    /**
+     * Initial size of the buffer of a thread, and the size beyond which it is not retained after use.
+     */
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer(BUFFER_SIZE);
+        }
+    };
+
     protected ClassLoader classLoader = null;
 
     @Override
@@ -22,10 +44,16 @@ public final class JavaSerializer implements ISerializer {
     }
 
     @Override
-    public String serialize(Serializable object) throws SerializationException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    public byte[] serialize(Serializable object) throws SerializationException {
+        Buffer buffer = BUFFERS.get();
+        if(buffer.inUse) {
+            // Serializing from within the writeObject of a value being serialized.
+            buffer = new Buffer(BUFFER_SIZE);
+        }
+        buffer.inUse = true;
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos));
+            // ObjectOutputStream buffers the block data itself, hence no BufferedOutputStream.
+            ObjectOutputStream oos = new ObjectOutputStream(buffer);
             try {
                 oos.writeObject(object);
                 oos.flush();
@@ -33,18 +61,21 @@ public final class JavaSerializer implements ISerializer {
                 close(oos);
             }
 
-            return ENCODER.encode(bos.toByteArray());
+            return buffer.toByteArray();
         } catch (IOException e) {
             throw new SerializationException("Unexpected error during serialization.", e);
         } finally {
-            close(bos);
+            buffer.reset();
+            if(buffer.bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFERS.remove();
+            }
         }
     }
 
     @Override
-    public Serializable deSerialize(String serializedString) throws SerializationException {
+    public Serializable deSerialize(byte[] serializedBytes) throws SerializationException {
         try {
-            final InputStream bis = new ByteArrayInputStream(DECODER.decodeBuffer(serializedString));
+            final InputStream bis = new ByteArrayInputStream(isLegacy(serializedBytes) ? DECODER.decodeBuffer(new String(serializedBytes, "US-ASCII")) : serializedBytes);
             try {
                 ObjectInputStream ois = new CustomObjectInputStream(bis, classLoader);
                 try {
@@ -60,6 +91,10 @@ public final class JavaSerializer implements ISerializer {
         }
     }
 
+    private boolean isLegacy(byte[] serializedBytes) {
+        return serializedBytes.length < 2 || serializedBytes[0] != STREAM_MAGIC_0 || serializedBytes[1] != STREAM_MAGIC_1;
+    }
+
     private void close(Closeable closeable) {
         try {
             closeable.close();
@@ -67,4 +102,46 @@ public final class JavaSerializer implements ISerializer {
             // Do nothing
         }
     }
+
+    /**
+     * Growable, unsynchronized alternative to <code>ByteArrayOutputStream</code>, reused across the values serialized by a thread.
+     */
+    private static final class Buffer extends OutputStream {
+
+        private byte[] bytes;
+        private int count = 0;
+        private boolean inUse = false;
+
+        Buffer(final int size) {
+            this.bytes = new byte[size];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(this.count + 1);
+            this.bytes[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(this.count + len);
+            System.arraycopy(b, off, this.bytes, this.count, len);
+            this.count += len;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.count);
+        }
+
+        void reset() {
+            this.count = 0;
+            this.inUse = false;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if(capacity > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length << 1, capacity));
+            }
+        }
+    }
 }
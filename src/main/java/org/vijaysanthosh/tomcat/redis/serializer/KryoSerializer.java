@@ -0,0 +1,174 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.factories.ReflectionSerializerFactory;
+import com.esotericsoftware.kryo.factories.SerializerFactory;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * <a href="https://github.com/EsotericSoftware/kryo">Kryo</a> implementation of <code>IBinarySerializer</code>.
+ * Requires the optional Kryo dependency on the classpath.
+ * <p>
+ * A <code>Kryo</code> instance is kept per thread, as it is not thread-safe. Classes are written by name unless registered.
+ * The commonly used JDK classes are registered, and further classes can be registered by overriding <code>configure</code>,
+ * in which case the registrations have to be the same across all the servers sharing the sessions.
+ * Classes defining their own Java serialization, e.g. <code>writeObject</code> or <code>readResolve</code>, are written through Java serialization within Kryo.
+ * Values written by <code>JavaSerializer</code> are still read, to allow switching between the serializers.
+ */
+public class KryoSerializer implements IBinarySerializer {
+
+    private static final byte STREAM_MAGIC_0 = (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8);
+    private static final byte STREAM_MAGIC_1 = (byte) ObjectStreamConstants.STREAM_MAGIC;
+
+    /**
+     * Initial size of the buffer of a thread, and the size beyond which it is not retained after use.
+     */
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private final JavaSerializer javaSerializer = new JavaSerializer();
+
+    protected ClassLoader classLoader = null;
+
+    private volatile ThreadLocal<Kryo> kryos = newKryos();
+
+    private final ThreadLocal<Output> outputs = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output(BUFFER_SIZE, -1);
+        }
+    };
+
+    @Override
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.javaSerializer.setClassLoader(classLoader);
+        // The Kryo instances created so far hold the previous ClassLoader.
+        this.kryos = newKryos();
+    }
+
+    @Override
+    public byte[] serialize(Serializable object) throws SerializationException {
+        final Output output = this.outputs.get();
+        try {
+            output.clear();
+            this.kryos.get().writeClassAndObject(output, object);
+            return output.toBytes();
+        } catch (Exception e) {
+            throw new SerializationException("Unexpected error during serialization.", e);
+        } finally {
+            if(output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                this.outputs.remove();
+            }
+        }
+    }
+
+    @Override
+    public Serializable deSerialize(byte[] serializedBytes) throws SerializationException {
+        if(serializedBytes.length >= 2 && serializedBytes[0] == STREAM_MAGIC_0 && serializedBytes[1] == STREAM_MAGIC_1) {
+            // Written by JavaSerializer. Kryo never starts with these bytes as fewer classes are registered.
+            return this.javaSerializer.deSerialize(serializedBytes);
+        }
+
+        try {
+            return (Serializable) this.kryos.get().readClassAndObject(new Input(serializedBytes));
+        } catch (Exception e) {
+            throw new SerializationException("Unexpected error during de-serialization.", e);
+        }
+    }
+
+    /**
+     * Registers further classes, or serializers, with a newly created <code>Kryo</code> instance.
+     * The registrations are part of the serialized form, hence have to be the same across all the servers and only ever appended to.
+     *
+     * @param kryo <code>Kryo</code> instance to be configured.
+     */
+    protected void configure(final Kryo kryo) {
+        // Nothing more to register by default.
+    }
+
+    private ThreadLocal<Kryo> newKryos() {
+        return new ThreadLocal<Kryo>() {
+            @Override
+            protected Kryo initialValue() {
+                return newKryo();
+            }
+        };
+    }
+
+    private Kryo newKryo() {
+        final Kryo kryo = new Kryo();
+        kryo.setDefaultSerializer(new SerializerFactory() {
+            private final SerializerFactory fieldSerializers = new ReflectionSerializerFactory(FieldSerializer.class);
+
+            @Override
+            public Serializer<?> makeSerializer(final Kryo kryo, final Class<?> type) {
+                return hasJavaSerialization(type) ? new com.esotericsoftware.kryo.serializers.JavaSerializer() : this.fieldSerializers.makeSerializer(kryo, type);
+            }
+        });
+        if(this.classLoader != null) {
+            kryo.setClassLoader(this.classLoader);
+        }
+        // Session graphs may share objects and hold cycles.
+        kryo.setReferences(true);
+        kryo.setRegistrationRequired(false);
+        // Classes without a no-arg constructor are instantiated the way Java serialization does.
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+
+        // The order of the registrations decides the identifiers of the classes. Hence only ever appended to.
+        kryo.register(ArrayList.class);
+        kryo.register(LinkedList.class);
+        kryo.register(HashMap.class);
+        kryo.register(LinkedHashMap.class);
+        kryo.register(TreeMap.class);
+        kryo.register(HashSet.class);
+        kryo.register(LinkedHashSet.class);
+        kryo.register(TreeSet.class);
+        kryo.register(Date.class);
+        kryo.register(BigDecimal.class);
+        kryo.register(BigInteger.class);
+        kryo.register(Object[].class);
+        kryo.register(String[].class);
+        kryo.register(byte[].class);
+        kryo.register(int[].class);
+        kryo.register(long[].class);
+
+        configure(kryo);
+        return kryo;
+    }
+
+    /**
+     * @param type Class without a dedicated Kryo serializer.
+     * @return true if the class, or one of its super classes, customizes its Java serialization.
+     */
+    private static boolean hasJavaSerialization(final Class<?> type) {
+        for(Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            if(hasMethod(current, "writeObject", ObjectOutputStream.class) || hasMethod(current, "readObject", ObjectInputStream.class)
+                    || hasMethod(current, "writeReplace") || hasMethod(current, "readResolve")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasMethod(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+        try {
+            type.getDeclaredMethod(name, parameterTypes);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Adapts a <code>String</code> based <code>ISerializer</code> to <code>IBinarySerializer</code>.
+ * The serialized <code>String</code> is stored as its UTF-8 bytes.
+ */
+public final class StringSerializerAdapter implements IBinarySerializer {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final ISerializer serializer;
+
+    public StringSerializerAdapter(ISerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void setClassLoader(ClassLoader classLoader) {
+        this.serializer.setClassLoader(classLoader);
+    }
+
+    @Override
+    public byte[] serialize(Serializable object) throws SerializationException {
+        try {
+            return this.serializer.serialize(object).getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new SerializationException("Unexpected error during serialization.", e);
+        }
+    }
+
+    @Override
+    public Serializable deSerialize(byte[] serializedBytes) throws SerializationException {
+        try {
+            return this.serializer.deSerialize(new String(serializedBytes, CHARSET));
+        } catch (UnsupportedEncodingException e) {
+            throw new SerializationException("Unexpected error during de-serialization.", e);
+        }
+    }
+}
@@ -40,6 +40,113 @@ abstract class BaseRedisSessionManager extends ManagerBase {
         this.maxRegistrySize = maxRegistrySize;
     }
 
+    /**
+     * Whether the attributes are persisted only when their serialized form changes, including changes done in place.
+     */
+    protected boolean dirtyTracking = false;
+
+    public boolean isDirtyTracking() {
+        return dirtyTracking;
+    }
+
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+    }
+
+    /**
+     * Whether the attributes loaded from redis are de-serialized on their first access rather than when the session is loaded.
+     */
+    protected boolean lazyAttributes = false;
+
+    public boolean isLazyAttributes() {
+        return lazyAttributes;
+    }
+
+    public void setLazyAttributes(boolean lazyAttributes) {
+        this.lazyAttributes = lazyAttributes;
+    }
+
+    /**
+     * Whether only the names of the attributes are loaded along with the session, each attribute being loaded from redis on its first access.
+     */
+    protected boolean onDemandAttributes = false;
+
+    public boolean isOnDemandAttributes() {
+        return onDemandAttributes;
+    }
+
+    public void setOnDemandAttributes(boolean onDemandAttributes) {
+        this.onDemandAttributes = onDemandAttributes;
+    }
+
+    /**
+     * Comma separated names of the attributes loaded along with the session when the attributes are loaded on demand.
+     */
+    protected String hotAttributes = null;
+
+    public String getHotAttributes() {
+        return hotAttributes;
+    }
+
+    public void setHotAttributes(String hotAttributes) {
+        this.hotAttributes = hotAttributes;
+    }
+
+    /**
+     * Layout of the session data in redis. Either "multi", a hash per bucket of the session, "single", a hash per session,
+     * or "tagged", a hash per bucket of the session sharing the slot of a redis cluster.
+     */
+    protected String sessionLayout = "multi";
+
+    public String getSessionLayout() {
+        return sessionLayout;
+    }
+
+    public void setSessionLayout(String sessionLayout) {
+        this.sessionLayout = sessionLayout;
+    }
+
+    /**
+     * Maximum number of sessions held in the near-cache. The near-cache is disabled if 0.
+     */
+    protected int nearCacheSize = 0;
+
+    public int getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    public void setNearCacheSize(int nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    /**
+     * Maximum time (in milliseconds) a Redis Command is held in memory before a dedicated thread flushes it.
+     * Requests flush the Redis Commands themselves if 0.
+     */
+    protected int flushInterval = 0;
+
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(int flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Number of new session identifiers reserved in redis ahead of their use, from a dedicated thread.
+     * Each new session identifier is registered with a round trip of its own if 0.
+     */
+    protected int sessionIdReservation = 0;
+
+    public int getSessionIdReservation() {
+        return sessionIdReservation;
+    }
+
+    public void setSessionIdReservation(int sessionIdReservation) {
+        this.sessionIdReservation = sessionIdReservation;
+    }
+
     /**
      * Redis Store Manager
      */
@@ -53,6 +160,10 @@ abstract class BaseRedisSessionManager extends ManagerBase {
         this.storeManager.setSerializationStrategyClass(strategy);
     }
 
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.storeManager.setCompressionThreshold(compressionThreshold);
+    }
+
     public void setHost(String host) {
         this.storeManager.setHost(host);
     }
@@ -81,6 +192,22 @@ abstract class BaseRedisSessionManager extends ManagerBase {
         this.storeManager.setSentinelMaster(sentinelMaster);
     }
 
+    public void setClusterNodes(String clusterNodes) {
+        this.storeManager.setClusterNodes(clusterNodes);
+    }
+
+    public void setReplicas(String replicas) {
+        this.storeManager.setReplicas(replicas);
+    }
+
+    public void setReplicaMaxLag(long replicaMaxLag) {
+        this.storeManager.setReplicaMaxLag(replicaMaxLag);
+    }
+
+    public void setReplicaLagCheckInterval(long replicaLagCheckInterval) {
+        this.storeManager.setReplicaLagCheckInterval(replicaLagCheckInterval);
+    }
+
     public int getConnectionPoolMaxTotal() {
         return this.storeManager.getConnectionPoolConfig().getMaxTotal();
     }
@@ -229,6 +356,50 @@ abstract class BaseRedisSessionManager extends ManagerBase {
         this.storeManager.setExecutorPoolSize(executorPoolSize);
     }
 
+    public void setExecutorQueueSize(int executorQueueSize) {
+        this.storeManager.setExecutorQueueSize(executorQueueSize);
+    }
+
+    public void setExecutorMailboxes(int executorMailboxes) {
+        this.storeManager.setExecutorMailboxes(executorMailboxes);
+    }
+
+    public void setVirtualExecutorPoolSize(int virtualExecutorPoolSize) {
+        this.storeManager.setVirtualExecutorPoolSize(virtualExecutorPoolSize);
+    }
+
+    public void setExecutorThreads(String executorThreads) {
+        this.storeManager.setExecutorThreads(executorThreads);
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.storeManager.setOverflowPolicy(overflowPolicy);
+    }
+
+    public void setOverflowTimeout(long overflowTimeout) {
+        this.storeManager.setOverflowTimeout(overflowTimeout);
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.storeManager.setPipelined(pipelined);
+    }
+
+    public void setScripting(boolean scripting) {
+        this.storeManager.setScripting(scripting);
+    }
+
+    public void setBackend(String backend) {
+        this.storeManager.setBackend(backend);
+    }
+
+    public void setBackendConnections(int backendConnections) {
+        this.storeManager.setBackendConnections(backendConnections);
+    }
+
+    public void setBackendLatency(long backendLatency) {
+        this.storeManager.setBackendLatency(backendLatency);
+    }
+
     @Override
     protected synchronized void startInternal() throws LifecycleException {
         super.startInternal();
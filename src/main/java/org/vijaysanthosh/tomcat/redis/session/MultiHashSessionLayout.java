@@ -0,0 +1,55 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.vijaysanthosh.tomcat.redis.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * Layout storing each bucket of the <code>Session</code> in its own hash, e.g. <code>session:attributes:&lt;id&gt;</code>.
+ */
+class MultiHashSessionLayout extends RedisSessionLayout {
+
+    @Override
+    String getKey(final String sessionId, final String bucket) {
+        return (SESSION_BUCKETS.contains(bucket)) ? StringUtils.join(Arrays.asList(SESSION, bucket, sessionId), COLON) : null;
+    }
+
+    @Override
+    String getField(final String bucket, final String name) {
+        return name;
+    }
+
+    @Override
+    List<String> getKeys(final String sessionId) {
+        final List<String> keys = new ArrayList<String>(SESSION_BUCKETS.size());
+        for(String bucket : SESSION_BUCKETS) {
+            keys.add(getKey(sessionId, bucket));
+        }
+        return keys;
+    }
+
+    @Override
+    String getSessionId(final String key) {
+        for(String bucket : SESSION_BUCKETS) {
+            final String prefix = SESSION + COLON + bucket + COLON;
+            if(key.startsWith(prefix)) {
+                return key.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    boolean isSingleSlot() {
+        return false;
+    }
+
+    @Override
+    Map<String, Map<String, byte[]>> getBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data) {
+        final Map<String, Map<String, byte[]>> buckets = new HashMap<String, Map<String, byte[]>>(SESSION_BUCKETS.size());
+        for(String bucket : SESSION_BUCKETS) {
+            buckets.put(bucket, data.get(getKey(sessionId, bucket)));
+        }
+        return buckets;
+    }
+}
@@ -1,6 +1,7 @@
 package org.vijaysanthosh.tomcat.redis.session;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Redis Commands needed for the Action Handler
@@ -9,7 +10,8 @@ public class RedisCommand {
     public enum Command {
         DEL,
         HSET, HDEL,
-        EXPIRY
+        EXPIRY,
+        TOUCH
     }
 
     private final String sessionId;
@@ -17,7 +19,9 @@ public class RedisCommand {
     private String key;
     private String field;
     private Serializable value;
+    private byte[] serializedValue;
     private int expiryInterval;
+    private List<String> keys;
 
     public RedisCommand(String sessionId) {
         this.sessionId = sessionId;
@@ -43,10 +47,24 @@ public class RedisCommand {
         return value;
     }
 
+    /**
+     * @return Value already serialized by the registering party. null if the value is to be serialized on execution.
+     */
+    public byte[] getSerializedValue() {
+        return serializedValue;
+    }
+
     public int getExpiryInterval() {
         return expiryInterval;
     }
 
+    /**
+     * @return Keys whose expiry is reset together by a TOUCH command.
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
     public RedisCommand setCommand(Command command) {
         this.command = command;
         return this;
@@ -67,11 +85,21 @@ public class RedisCommand {
         return this;
     }
 
+    public RedisCommand setSerializedValue(byte[] serializedValue) {
+        this.serializedValue = serializedValue;
+        return this;
+    }
+
     public RedisCommand setExpiryInterval(int expiryInterval) {
         this.expiryInterval = expiryInterval;
         return this;
     }
 
+    public RedisCommand setKeys(List<String> keys) {
+        this.keys = keys;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "RedisCommand{" +
@@ -80,6 +108,7 @@ public class RedisCommand {
                 ", field='" + field + '\'' +
                 ", value=" + value +
                 ", expiryInterval=" + expiryInterval +
+                ", keys=" + keys +
                 '}';
     }
 }
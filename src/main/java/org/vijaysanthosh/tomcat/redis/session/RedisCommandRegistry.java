@@ -0,0 +1,205 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory registry of <code>RedisCommand</code>s, striped by <code>Session</code> the same way as the executors of <code>RedisStoreManager</code>.
+ * <p>
+ * Each stripe is a lock-free <code>RedisCommandRing</code>, hence registering neither locks nor contends with the other stripes.
+ * The commands of a stripe are coalesced as they are drained:
+ * <ul>
+ *     <li>The last HSET or HDEL registered for a key and field wins. Hence an HDEL cancels an earlier HSET.</li>
+ *     <li>EXPIRY commands for a key are de-duplicated.</li>
+ *     <li>A DEL of a key cancels all the commands registered earlier for that key.</li>
+ * </ul>
+ * An HSET or HDEL replacing an earlier one keeps the position of the earlier registration, whereas an EXPIRY or TOUCH is
+ * moved to the position of the latest registration. This retains the outcome of executing the commands in the order of
+ * registration, e.g. an EXPIRY is never moved before the HSET creating the key.
+ */
+class RedisCommandRegistry {
+
+    private final RedisCommandRing[] rings;
+
+    /**
+     * Coalesced commands per stripe, used by the thread draining the stripe only.
+     */
+    private final List<Map<Slot, RedisCommand>> coalesced;
+
+    /**
+     * Time (as by <code>System.nanoTime()</code>) of the first registration per stripe since it was last drained. 0 if none.
+     */
+    private final AtomicLongArray pendingSince;
+
+    /**
+     * @param stripes Number of stripes.
+     * @param capacity Maximum number of <code>RedisCommand</code>s held per stripe, rounded up to a power of two.
+     */
+    RedisCommandRegistry(final int stripes, final int capacity) {
+        this.rings = new RedisCommandRing[stripes];
+        this.coalesced = new ArrayList<Map<Slot, RedisCommand>>(stripes);
+        this.pendingSince = new AtomicLongArray(stripes);
+        for(int i = 0; i < stripes; i++) {
+            this.rings[i] = new RedisCommandRing(capacity);
+            this.coalesced.add(new LinkedHashMap<Slot, RedisCommand>());
+        }
+    }
+
+    public int getStripes() {
+        return this.rings.length;
+    }
+
+    /**
+     * @return Maximum number of <code>RedisCommand</code>s held per stripe.
+     */
+    public int getCapacity() {
+        return this.rings[0].getCapacity();
+    }
+
+    /**
+     * @param sessionId <code>Session</code> identifier.
+     * @return Stripe holding the <code>RedisCommand</code>s of the <code>Session</code>.
+     */
+    public int getStripe(final String sessionId) {
+        return RedisStoreManager.getStripe(sessionId, this.rings.length);
+    }
+
+    /**
+     * Registers the <code>RedisCommand</code> into the stripe of its <code>Session</code>. Can be called by any thread.
+     *
+     * @param command <code>RedisCommand</code> to be registered.
+     * @return false if the stripe is full, in which case it has to be drained first.
+     */
+    public boolean register(final RedisCommand command) {
+        final int stripe = getStripe(command.getSessionId());
+        if(!this.rings[stripe].offer(command)) {
+            return false;
+        }
+        if(this.pendingSince.get(stripe) == 0L) {
+            this.pendingSince.compareAndSet(stripe, 0L, System.nanoTime());
+        }
+        return true;
+    }
+
+    /**
+     * @param stripe Stripe.
+     * @return Time (as by <code>System.nanoTime()</code>) the oldest <code>RedisCommand</code> of the stripe was registered. 0 if not known,
+     * e.g. as the stripe has just been drained.
+     */
+    public long getPendingSince(final int stripe) {
+        return this.pendingSince.get(stripe);
+    }
+
+    /**
+     * @param stripe Stripe.
+     * @return Number of <code>RedisCommand</code>s registered into the stripe before coalescing.
+     */
+    public int size(final int stripe) {
+        return this.rings[stripe].size();
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s registered into all the stripes before coalescing.
+     */
+    public int size() {
+        int size = 0;
+        for(RedisCommandRing ring : this.rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s ever registered into all the stripes.
+     */
+    public long getRegistered() {
+        long registered = 0L;
+        for(RedisCommandRing ring : this.rings) {
+            registered += ring.getOffered();
+        }
+        return registered;
+    }
+
+    /**
+     * Removes all the <code>RedisCommand</code>s from the stripe. Must not be called concurrently for the same stripe.
+     *
+     * @param stripe Stripe.
+     * @return Coalesced <code>RedisCommand</code>s in the order they are to be executed.
+     */
+    public List<RedisCommand> drain(final int stripe) {
+        final RedisCommandRing ring = this.rings[stripe];
+        final Map<Slot, RedisCommand> commands = this.coalesced.get(stripe);
+        // Cleared first, so that the commands registered while draining are timed from their registration.
+        this.pendingSince.set(stripe, 0L);
+
+        RedisCommand command;
+        while ((command = ring.poll()) != null) {
+            if(command.getCommand() == Command.DEL) {
+                final Iterator<Slot> slots = commands.keySet().iterator();
+                while(slots.hasNext()) {
+                    if(slots.next().key.equals(command.getKey())) {
+                        slots.remove();
+                    }
+                }
+            }
+
+            final Slot slot = new Slot(command);
+            if(slot.command != Command.HSET) {
+                // Re-inserted, as a LinkedHashMap keeps the position of a key put again.
+                commands.remove(slot);
+            }
+            commands.put(slot, command);
+        }
+
+        final List<RedisCommand> drained = new ArrayList<RedisCommand>(commands.values());
+        commands.clear();
+        return drained;
+    }
+
+    /**
+     * Identifies the commands which can replace each other.
+     * HSET and HDEL of the same field share a slot, while EXPIRY and DEL have a slot per key.
+     */
+    private static final class Slot {
+        private final String key;
+        private final String field;
+        private final Command command;
+
+        private Slot(final RedisCommand command) {
+            this.key = command.getKey();
+            switch (command.getCommand()) {
+                case HSET:
+                case HDEL:
+                    this.field = command.getField();
+                    this.command = Command.HSET;
+                    break;
+                default:
+                    this.field = null;
+                    this.command = command.getCommand();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Slot that = (Slot) o;
+
+            return command == that.command &&
+                    key.equals(that.key) &&
+                    !(field != null ? !field.equals(that.field) : that.field != null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = key.hashCode();
+            result = 31 * result + (field != null ? field.hashCode() : 0);
+            result = 31 * result + command.hashCode();
+            return result;
+        }
+    }
+}
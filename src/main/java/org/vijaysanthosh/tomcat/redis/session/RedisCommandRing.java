@@ -0,0 +1,108 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer of <code>RedisCommand</code>s with multiple producers and a single consumer.
+ * <p>
+ * Every slot carries a sequence number. A producer claims the slot at the tail by a CAS on the tail, and publishes
+ * the <code>RedisCommand</code> by advancing the sequence of the slot. The consumer reads the published slots in order,
+ * hence the <code>RedisCommand</code>s are polled in the order their slots were claimed.
+ */
+class RedisCommandRing {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<RedisCommand> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Position of the next slot to be polled. Written by the consumer only.
+     */
+    private volatile long head = 0L;
+
+    /**
+     * @param capacity Minimum capacity, rounded up to a power of two.
+     */
+    RedisCommandRing(final int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<RedisCommand>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Adds the <code>RedisCommand</code> at the tail. Can be called by any thread.
+     *
+     * @param command <code>RedisCommand</code> to be added.
+     * @return false if the ring is full.
+     */
+    boolean offer(final RedisCommand command) {
+        long position;
+        int index;
+        while (true) {
+            position = this.tail.get();
+            index = (int) position & this.mask;
+            final long difference = this.sequences.get(index) - position;
+            if(difference == 0) {
+                if(this.tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if(difference < 0) {
+                // The slot has not been polled since the previous lap.
+                return false;
+            }
+            // Otherwise another producer has claimed the slot. Retrying with the new tail.
+        }
+        this.buffer.set(index, command);
+        this.sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the <code>RedisCommand</code> at the head. Must be called by a single thread at a time.
+     *
+     * @return <code>RedisCommand</code> at the head. null if the ring is empty, or if the head is claimed but not yet published.
+     */
+    RedisCommand poll() {
+        final long position = this.head;
+        final int index = (int) position & this.mask;
+        if(this.sequences.get(index) != position + 1) {
+            return null;
+        }
+        final RedisCommand command = this.buffer.get(index);
+        this.buffer.set(index, null);
+        this.sequences.set(index, position + this.capacity);
+        this.head = position + 1;
+        return command;
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s ever added to the ring.
+     */
+    long getOffered() {
+        return this.tail.get();
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s in the ring. Approximate while the ring is being used.
+     */
+    int size() {
+        final long size = this.tail.get() - this.head;
+        return (int) Math.max(0L, Math.min(size, this.capacity));
+    }
+}
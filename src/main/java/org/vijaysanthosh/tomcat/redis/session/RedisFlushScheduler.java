@@ -0,0 +1,188 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.vijaysanthosh.tomcat.redis.metrics.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flushes the stripes of the registry of a <code>RedisSessionActionHandler</code> from a dedicated thread, so that requests never flush themselves.
+ * <p>
+ * A stripe is flushed once its oldest <code>RedisCommand</code> has been pending for the flush interval, or once it holds a batch limit of them.
+ * The batch limit is at least the share of <code>maxRegistrySize</code> per stripe, hence a stripe is held until either is reached.
+ * It grows to the number of <code>RedisCommand</code>s registered per stripe during a round trip to redis, as redis slows down,
+ * bounded by half the capacity of a stripe to leave room for the registrations made while a batch is being executed.
+ * The round trip is observed as the moving average of the time taken to execute a batch.
+ */
+class RedisFlushScheduler implements Runnable {
+    private static final Log LOG = LogFactory.getLog(RedisFlushScheduler.class);
+
+    /**
+     * Weight of the latest observation in the moving averages.
+     */
+    private static final double ALPHA = 0.2d;
+
+    /**
+     * Number of checks per flush interval, adapting the batch limit. The scheduler also wakes up as the oldest stripe is due.
+     */
+    private static final int TICKS_PER_INTERVAL = 4;
+
+    private final RedisSessionActionHandler actionHandler;
+    private final Histogram flushLatency;
+    private final long flushIntervalNanos;
+    private final long tickNanos;
+    private final int minBatch;
+    private final int maxBatch;
+    private final Thread thread;
+
+    /**
+     * Whether the scheduler has been woken up since its last check, so that it is unparked once per check at most.
+     */
+    private final AtomicBoolean wokenUp = new AtomicBoolean(false);
+
+    private volatile boolean running = true;
+    private volatile int batchLimit;
+
+    // Used by the scheduler thread only.
+    private final int stripes;
+    private long lastTick;
+    private long lastRegistered;
+    private long lastFlushCount;
+    private long lastFlushSum;
+    private double registrationRate = -1d;
+    private double roundTrip = -1d;
+
+    /**
+     * @param actionHandler <code>RedisSessionActionHandler</code> whose registry is to be flushed.
+     * @param flushInterval Maximum time (in milliseconds) a <code>RedisCommand</code> is held before being flushed.
+     * @param minBatch Number of <code>RedisCommand</code>s in a stripe before it is flushed, unless redis slows down.
+     *                 Bounded by half the capacity of a stripe, which bounds the batch limit on its own.
+     */
+    RedisFlushScheduler(final RedisSessionActionHandler actionHandler, final int flushInterval, final int minBatch) {
+        this.actionHandler = actionHandler;
+        this.flushLatency = actionHandler.storeManager.getMetrics().getFlushLatency();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.tickNanos = Math.max(this.flushIntervalNanos / TICKS_PER_INTERVAL, TimeUnit.MILLISECONDS.toNanos(1));
+        this.maxBatch = Math.max(actionHandler.registry.getCapacity() / 2, 1);
+        this.minBatch = Math.min(Math.max(minBatch, 1), this.maxBatch);
+        this.batchLimit = this.minBatch;
+        this.stripes = actionHandler.registry.getStripes();
+        this.lastTick = System.nanoTime();
+        this.lastRegistered = actionHandler.registry.getRegistered();
+        this.lastFlushCount = this.flushLatency.getCount();
+        this.lastFlushSum = this.flushLatency.getSum();
+
+        this.thread = new Thread(this, "redis-flush-scheduler");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stops the scheduler. The <code>RedisCommand</code>s still pending are to be flushed by the caller.
+     */
+    void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s in a stripe beyond which it is to be flushed right away.
+     */
+    int getBatchLimit() {
+        return this.batchLimit;
+    }
+
+    /**
+     * @return Moving average of the time (in nanoseconds) taken to execute a batch. -1 until a batch has been executed.
+     */
+    double getRoundTrip() {
+        return this.roundTrip;
+    }
+
+    /**
+     * Wakes up the scheduler, e.g. as a stripe has reached the batch limit. Does nothing if already woken up since the last check.
+     */
+    void wakeUp() {
+        if(this.wokenUp.compareAndSet(false, true)) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        long delay = this.tickNanos;
+        while (this.running) {
+            LockSupport.parkNanos(this, delay);
+            this.wokenUp.set(false);
+            delay = this.tickNanos;
+            if(this.running) {
+                try {
+                    delay = tick(System.nanoTime());
+                } catch (Exception e) {
+                    LOG.error("Error flushing the redis actions", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adapts the batch limit to the latest observations and flushes the stripes which are due.
+     *
+     * @param now Current time (in nanoseconds), as by <code>System.nanoTime()</code>.
+     * @return Time (in nanoseconds) until the next check, i.e. the next tick or the time the oldest stripe left is due, whichever is first.
+     */
+    long tick(final long now) {
+        final long elapsed = now - this.lastTick;
+        if(elapsed > 0) {
+            final long registered = this.actionHandler.registry.getRegistered();
+            this.registrationRate = average(this.registrationRate, (double) (registered - this.lastRegistered) / elapsed);
+            this.lastRegistered = registered;
+            this.lastTick = now;
+        }
+
+        final long flushCount = this.flushLatency.getCount();
+        final long flushSum = this.flushLatency.getSum();
+        if(flushCount > this.lastFlushCount) {
+            this.roundTrip = average(this.roundTrip, (double) (flushSum - this.lastFlushSum) / (flushCount - this.lastFlushCount));
+            this.lastFlushCount = flushCount;
+            this.lastFlushSum = flushSum;
+        }
+
+        // The number of commands a stripe receives while a batch is being executed.
+        final double perRoundTrip = this.registrationRate * Math.max(this.roundTrip, 0d) / this.stripes;
+        this.batchLimit = (int) Math.max(this.minBatch, Math.min((long) Math.ceil(perRoundTrip), this.maxBatch));
+
+        long delay = this.tickNanos;
+        for(int stripe = 0; stripe < this.stripes; stripe++) {
+            final int size = this.actionHandler.registry.size(stripe);
+            if(size == 0) {
+                continue;
+            }
+            final long pendingSince = this.actionHandler.registry.getPendingSince(stripe);
+            // Not known while registered concurrently to the stripe being drained. Hence timed from now.
+            final long due = (pendingSince != 0L ? pendingSince : now) + this.flushIntervalNanos;
+            if((size >= this.batchLimit || now - due >= 0L) && this.actionHandler.flushActions(stripe)) {
+                continue;
+            }
+            if(due - now > 0L) {
+                delay = Math.min(delay, due - now);
+            }
+        }
+        return delay;
+    }
+
+    private static double average(final double average, final double observation) {
+        return average < 0d ? observation : ALPHA * observation + (1d - ALPHA) * average;
+    }
+}
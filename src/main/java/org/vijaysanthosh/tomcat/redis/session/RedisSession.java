@@ -1,9 +1,15 @@
 package org.vijaysanthosh.tomcat.redis.session;
 
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
 import org.apache.catalina.session.StandardSession;
 
+import javax.servlet.http.HttpSessionAttributeListener;
 import java.io.Serializable;
 import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * RedisSession which has the required hook to register <code>RedisCommand</code>s whenever any activity is happening on the <code>Session</code>.
@@ -13,6 +19,27 @@ class RedisSession extends StandardSession {
 
   protected RedisSessionActionHandler actionHandler = null;
 
+  /**
+   * Fingerprints of the serialized attributes as last persisted in redis. Used only when dirty-tracking is enabled.
+   */
+  protected final ConcurrentMap<String, Long> fingerprints = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * Serialized attributes as loaded from redis, which are yet to be accessed. Used only when lazy attributes are enabled.
+   * An attribute is de-serialized on its first access, and is never written back to redis unless it is set again.
+   */
+  protected final ConcurrentMap<String, byte[]> rawAttributes = new ConcurrentHashMap<String, byte[]>();
+
+  /**
+   * Version of the near-cache taken before the <code>Session</code> was loaded from redis, or created. Used only when the near-cache is enabled.
+   */
+  protected volatile long nearCacheVersion = 0L;
+
+  /**
+   * Marks an attribute of <code>rawAttributes</code> whose value is yet to be loaded from redis.
+   */
+  private static final byte[] NOT_LOADED = new byte[0];
+
   /**
    * Construct a new Session associated with the specified Manager.
    *
@@ -28,6 +55,8 @@ class RedisSession extends StandardSession {
   public void recycle() {
     super.recycle();
 
+    this.fingerprints.clear();
+    this.rawAttributes.clear();
     this.actionHandler.removeSession(this);
   }
 
@@ -74,23 +103,204 @@ class RedisSession extends StandardSession {
   public void removeAttribute(String name, boolean notify) {
     super.removeAttribute(name, notify);
 
+    this.fingerprints.remove(name);
+
     this.actionHandler.removeSessionAttribute(this, name);
   }
 
+  @Override
+  protected void removeAttributeInternal(String name, boolean notify) {
+    // Also on expiry, for every attribute.
+    resolveForListeners(name, notify);
+
+    super.removeAttributeInternal(name, notify);
+  }
+
   @Override
   public void setAttribute(String name, Object value, boolean notify) {
     assertSerializable(value);
 
+    resolveForListeners(name, notify);
+
     super.setAttribute(name, value, notify);
 
     this.actionHandler.registerSessionAttribute(this, name, value);
   }
 
+  @Override
+  public Object getAttribute(String name) {
+    if(isValidInternal()) {
+      resolveAttribute(name);
+    }
+
+    return super.getAttribute(name);
+  }
+
+  @Override
+  public Enumeration<String> getAttributeNames() {
+    final Enumeration<String> names = super.getAttributeNames();
+    if(this.rawAttributes.isEmpty()) {
+      return names;
+    }
+
+    final Set<String> allNames = new HashSet<String>(Collections.list(names));
+    allNames.addAll(this.rawAttributes.keySet());
+    return Collections.enumeration(allNames);
+  }
+
+  @Override
+  protected String[] keys() {
+    final String[] keys = super.keys();
+    if(this.rawAttributes.isEmpty()) {
+      return keys;
+    }
+
+    final Set<String> allKeys = new HashSet<String>(Arrays.asList(keys));
+    allKeys.addAll(this.rawAttributes.keySet());
+    return allKeys.toArray(new String[allKeys.size()]);
+  }
+
+  /**
+   * Holds an attribute loaded from redis, to be de-serialized on its first access.
+   *
+   * @param name name of the attribute.
+   * @param serializedValue Value of the attribute as stored in redis.
+   */
+  void setRawAttribute(String name, byte[] serializedValue) {
+    this.rawAttributes.put(name, serializedValue);
+  }
+
+  /**
+   * Holds an attribute whose value is to be loaded from redis on its first access.
+   *
+   * @param name name of the attribute.
+   */
+  void setUnloadedAttribute(String name) {
+    this.rawAttributes.put(name, NOT_LOADED);
+  }
+
+  /**
+   * @param name name of the attribute.
+   * @return Value of the attribute as stored in redis, if it has not been accessed since it was loaded. null otherwise, including when it is yet to be loaded.
+   */
+  byte[] getRawAttribute(String name) {
+    final byte[] serializedValue = this.rawAttributes.get(name);
+    return serializedValue != NOT_LOADED ? serializedValue : null;
+  }
+
+  /**
+   * @param name name of the attribute.
+   * @return true if the attribute has not been accessed since it was loaded, or is yet to be loaded.
+   */
+  boolean isRawAttribute(String name) {
+    return this.rawAttributes.containsKey(name);
+  }
+
+  /**
+   * @param name name of the attribute.
+   * @return Fingerprint of the attribute as last persisted in redis. null if unknown.
+   */
+  Long getFingerprint(String name) {
+    return this.fingerprints.get(name);
+  }
+
+  /**
+   * Records the fingerprint of the attribute as persisted in redis.
+   *
+   * @param name name of the attribute.
+   * @param fingerprint Fingerprint of the serialized attribute.
+   */
+  void setFingerprint(String name, long fingerprint) {
+    this.fingerprints.put(name, fingerprint);
+  }
+
   @Override
   public String toString() {
     return "RedisSession[" + id + "]";
   }
 
+  /**
+   * De-serializes the attribute if it is still held as loaded from redis, loading it first if it is yet to be loaded.
+   * The value is put in place without notifying the listeners or registering any change, as it is the one already in redis.
+   *
+   * @param name name of the attribute.
+   */
+  private void resolveAttribute(String name) {
+    if(name == null || this.rawAttributes.isEmpty()) {
+      return;
+    }
+
+    // Loaded outside of the lock, so that a round trip to redis does not hold up the accesses to the other attributes.
+    while (this.rawAttributes.get(name) == NOT_LOADED) {
+      publishLoadedAttribute(name, this.actionHandler.loadAttribute(this, name));
+    }
+
+    synchronized (this.rawAttributes) {
+      final byte[] serializedValue = this.rawAttributes.get(name);
+      if(serializedValue != null && serializedValue != NOT_LOADED) {
+        final Object value = this.actionHandler.deSerializeAttribute(this, name, serializedValue);
+        if(value != null) {
+          this.attributes.put(name, value);
+        }
+        this.rawAttributes.remove(name);
+      }
+    }
+  }
+
+  /**
+   * Holds the value loaded from redis in place of the marker, unless the attribute has been set, removed or loaded by another thread meanwhile.
+   * The fingerprint is recorded before, and withdrawn if the value is not held, so that it never outlives a change made meanwhile.
+   *
+   * @param name name of the attribute.
+   * @param serializedValue Value of the attribute as stored in redis. null if it has been removed from redis since the <code>Session</code> was loaded.
+   */
+  private void publishLoadedAttribute(String name, byte[] serializedValue) {
+    if(serializedValue == null) {
+      this.rawAttributes.remove(name, NOT_LOADED);
+      return;
+    }
+
+    final Long fingerprint = this.actionHandler.getLoadedFingerprint(serializedValue);
+    if(fingerprint != null) {
+      this.fingerprints.putIfAbsent(name, fingerprint);
+    }
+    if(!this.rawAttributes.replace(name, NOT_LOADED, serializedValue) && fingerprint != null) {
+      this.fingerprints.remove(name, fingerprint);
+    }
+  }
+
+  /**
+   * Resolves the attribute about to be replaced or removed if the <code>HttpSessionAttributeListener</code>s are to be notified of its value.
+   * Drops it as held otherwise, as de-serializing, or even loading, every attribute of an expiring <code>Session</code> is wasted.
+   * Hence a value not accessed since the <code>Session</code> was loaded is not notified as an <code>HttpSessionBindingListener</code>.
+   *
+   * @param name name of the attribute.
+   * @param notify true if the listeners are to be notified.
+   */
+  private void resolveForListeners(String name, boolean notify) {
+    if(notify && hasAttributeListeners()) {
+      resolveAttribute(name);
+    } else {
+      this.rawAttributes.remove(name);
+    }
+  }
+
+  /**
+   * @return true if the <code>Context</code> has any <code>HttpSessionAttributeListener</code>.
+   */
+  private boolean hasAttributeListeners() {
+    final Container container = this.manager.getContainer();
+    final Object[] listeners = container instanceof Context ? ((Context) container).getApplicationEventListeners() : null;
+    if(listeners != null) {
+      for(Object listener : listeners) {
+        if(listener instanceof HttpSessionAttributeListener) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * It is mandatory that all the values are <code>Serializable</code>. This method ensures this.
    * @param obj <code>Object</code> that is being asserted as <code>Serializable</code>.
@@ -7,12 +7,12 @@ import org.apache.juli.logging.LogFactory;
 import org.vijaysanthosh.tomcat.redis.serializer.SerializationException;
 import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
 import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+import org.vijaysanthosh.tomcat.redis.util.HashUtils;
 import org.vijaysanthosh.tomcat.redis.util.StringUtils;
 
 import java.io.Serializable;
 import java.security.Principal;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,15 +24,11 @@ public class RedisSessionActionHandler {
     private static final Log LOG = LogFactory.getLog(RedisSessionActionHandler.class);
 
     /**
-     * Session keys
+     * Session buckets
      */
-    private static final String SESSION = "session";
-    private static final String MAIN = "main";
-    private static final String NOTES = "notes";
-    private static final String ATTRIBUTES = "attributes";
-    private static final String COLON = ":";
-
-    private static final List<String> SESSION_BUCKETS = Arrays.asList(MAIN, NOTES, ATTRIBUTES);
+    private static final String MAIN = RedisSessionLayout.MAIN;
+    private static final String NOTES = RedisSessionLayout.NOTES;
+    private static final String ATTRIBUTES = RedisSessionLayout.ATTRIBUTES;
 
     /**
      * Session main map keys
@@ -43,11 +39,32 @@ public class RedisSessionActionHandler {
     private static final String CTIME = "ctime";
 
     /**
-     * Redis Command Registry
+     * Lower bound of the number of <code>RedisCommand</code>s held per stripe of the registry, leaving the flush scheduler room to grow the batches.
+     */
+    private static final int MIN_STRIPE_CAPACITY = 1 << 10;
+
+    /**
+     * Upper bound of the number of <code>RedisCommand</code>s held per stripe of the registry.
+     */
+    private static final int MAX_STRIPE_CAPACITY = 1 << 20;
+
+    /**
+     * Redis Command Registry, striped the same way as the executors of the <code>RedisStoreManager</code>.
+     * A stripe is drained by the thread holding its lock only.
      */
-    protected final Queue<RedisCommand> registry;
+    protected final RedisCommandRegistry registry;
     protected final int maxRegistrySize;
-    protected final Lock lock;
+
+    /**
+     * Share of <code>maxRegistrySize</code> held per stripe before it is flushed.
+     */
+    protected final int maxStripeSize;
+    protected final Lock[] locks;
+
+    /**
+     * Flushes the registry from a dedicated thread. null if the requests flush the registry themselves.
+     */
+    private volatile RedisFlushScheduler flushScheduler;
 
     /**
      * Redis Session Manager
@@ -64,30 +81,98 @@ public class RedisSessionActionHandler {
      */
     protected final int maxInactiveInterval;
 
+    /**
+     * Whether the attributes are persisted based on the changes in their serialized form.
+     */
+    protected final boolean dirtyTracking;
+
+    /**
+     * Whether the attributes are de-serialized on their first access rather than when the <code>Session</code> is loaded.
+     */
+    protected final boolean lazyAttributes;
+
+    /**
+     * Whether only the names of the attributes are loaded along with the <code>Session</code>, each attribute being loaded on its first access.
+     */
+    protected final boolean onDemandAttributes;
+
+    /**
+     * Fields of the attributes loaded along with the <code>Session</code> when the attributes are loaded on demand.
+     */
+    protected final List<String> hotAttributeFields;
+
+    /**
+     * Layout of the <code>Session</code> data in redis.
+     */
+    protected final RedisSessionLayout layout;
+
+    /**
+     * Whether the <code>Session</code> identifiers are reserved in redis ahead, in which case they are not registered again synchronously.
+     */
+    protected final boolean sessionIdReservation;
+
     /**
      * Threadlocal variable which can be used to temporarily disable <code>RedisCommand</code> registration.
      */
     private final ThreadLocal<Boolean> registrationFlag;
 
+    /**
+     * Sessions whose attributes have been set during the request being processed by the thread, which are checked for changes
+     * at the end of the request. Used only when dirty-tracking is enabled.
+     */
+    private final ThreadLocal<Set<RedisSession>> requestSessions = new ThreadLocal<Set<RedisSession>>();
+
     /**
      * RedisSessionActionHandler constructor. Initializes the ActionHandler
      * @param sessionManager <code>RedisSessionManager</code>
      * @param maxInactiveInterval MaximumInterval in seconds to use to set the expiry of objects in Redis.
-     * @param maxRegistrySize Maximum size of the in-memory registry beyond which the <code>RedisCommand</code>s are flushed to Redis.
+     * @param maxRegistrySize Maximum size of the in-memory registry beyond which the <code>RedisCommand</code>s are flushed to Redis,
+     *                        shared out evenly among its stripes.
      * @throws LifecycleException
      */
     public RedisSessionActionHandler(final RedisSessionManager sessionManager, final int maxInactiveInterval, final int maxRegistrySize) throws LifecycleException {
         this.sessionManager = sessionManager;
         this.storeManager = sessionManager.getStoreManager();
         this.maxInactiveInterval = maxInactiveInterval;
-        this.registry = new ConcurrentLinkedQueue<RedisCommand>();
-        this.lock = new ReentrantLock();
+        this.dirtyTracking = sessionManager.isDirtyTracking();
+        this.layout = RedisSessionLayout.getLayout(sessionManager.getSessionLayout());
+        this.sessionIdReservation = sessionManager.getSessionIdReservation() > 0;
+        if(sessionManager.isOnDemandAttributes() && !this.layout.hasAttributesHash()) {
+            LOG.warn("Loading attributes on demand is not supported along with the session layout " + sessionManager.getSessionLayout() + ". Hence loading them lazily");
+        }
+        this.onDemandAttributes = sessionManager.isOnDemandAttributes() && this.layout.hasAttributesHash();
+        // Attributes loaded on demand are de-serialized on demand as well.
+        this.lazyAttributes = sessionManager.isLazyAttributes() || sessionManager.isOnDemandAttributes();
+        this.hotAttributeFields = new ArrayList<String>();
+        for(String hotAttribute : StringUtils.splitString(sessionManager.getHotAttributes(), ",")) {
+            if(hotAttribute.trim().length() > 0) {
+                this.hotAttributeFields.add(getField(ATTRIBUTES, hotAttribute.trim()));
+            }
+        }
+        if(this.storeManager.isCluster() && !this.layout.isSingleSlot()) {
+            throw new LifecycleException("Session layout " + sessionManager.getSessionLayout() + " spreads a session over several slots of the redis cluster. Expected either `tagged` or `single` along with `clusterNodes`");
+        }
+        final int stripes = this.storeManager.getExecutorPoolSize();
         this.maxRegistrySize = maxRegistrySize;
+        this.maxStripeSize = (int) Math.max((Math.max(maxRegistrySize, 1L) + stripes - 1) / stripes, 1L);
+        // At least four times the flush threshold, leaving room for the registrations made while a stripe is being flushed.
+        this.registry = new RedisCommandRegistry(stripes, (int) Math.min(Math.max(4L * this.maxStripeSize, MIN_STRIPE_CAPACITY), MAX_STRIPE_CAPACITY));
+        this.locks = new Lock[this.registry.getStripes()];
+        for(int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
 
         this.registrationFlag = new ThreadLocal<Boolean>();
         this.registrationFlag.set(Boolean.TRUE);
     }
 
+    /**
+     * @return Layout of the <code>Session</code> data in redis.
+     */
+    RedisSessionLayout getLayout() {
+        return layout;
+    }
+
     /**
      * Registers the session Id in Redis Store.
      *
@@ -96,15 +181,47 @@ public class RedisSessionActionHandler {
      */
     public String regsisterSessionId(final String requestedSessionId, boolean overwrite) {
         final String key = getKey(requestedSessionId, MAIN);
+        final RedisSessionNearCache nearCache = this.sessionManager.nearCache;
+        if(nearCache != null) {
+            nearCache.beginWrite(key);
+        }
+        String registered = null;
         try {
-            return (String) this.storeManager.hset(key, ID, requestedSessionId, overwrite);
+            // The expiry is set along with the id to ensure that the key never remains in redis without one.
+            registered = (String) this.storeManager.hset(key, getField(MAIN, ID), requestedSessionId, overwrite, this.maxInactiveInterval);
         } catch (SerializationException e) {
             LOG.error("Error registering session in redis with id "+ requestedSessionId, e);
         } finally {
-            registerSessionAccess(requestedSessionId);
+            if(nearCache != null) {
+                // Only an HSET which took effect is notified. An HSETNX losing to another node is not.
+                nearCache.endWrite(key, RedisSessionNearCache.getEvent(RedisCommand.Command.HSET), registered != null);
+            }
         }
 
-        return null;
+        return registered;
+    }
+
+    /**
+     * Registers the given session Ids in Redis Store together, in a single round trip per node.
+     *
+     * @param sessionIds Session ids to be registered.
+     * @return Session ids registered, i.e. those for which no session existed.
+     * @throws SerializationException If any issues occur during serialization of the session ids.
+     */
+    public List<String> reserveSessionIds(final List<String> sessionIds) throws SerializationException {
+        final Map<String, String> ids = new LinkedHashMap<String, String>(sessionIds.size());
+        for(String sessionId : sessionIds) {
+            ids.put(getKey(sessionId, MAIN), sessionId);
+        }
+
+        final Set<String> registered = this.storeManager.hsetnx(getField(MAIN, ID), ids, this.maxInactiveInterval);
+        final List<String> reserved = new ArrayList<String>(registered.size());
+        for(Map.Entry<String, String> entry : ids.entrySet()) {
+            if(registered.contains(entry.getKey())) {
+                reserved.add(entry.getValue());
+            }
+        }
+        return reserved;
     }
 
     /**
@@ -116,7 +233,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(session.getPrincipal() == null ? Command.HDEL : Command.HSET)
                 .setKey(getKey(session.getId(), MAIN))
-                .setField(PRINCIPAL)
+                .setField(getField(MAIN, PRINCIPAL))
                 .setValue((Serializable) session.getPrincipal()));
     }
 
@@ -129,7 +246,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(Command.HSET)
                 .setKey(getKey(session.getId(), MAIN))
-                .setField(CTIME)
+                .setField(getField(MAIN, CTIME))
                 .setValue(session.getCreationTime()));
     }
 
@@ -142,7 +259,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(session.getAuthType() == null ? Command.HDEL : Command.HSET)
                 .setKey(getKey(session.getId(), MAIN))
-                .setField(AUTH_TYPE)
+                .setField(getField(MAIN, AUTH_TYPE))
                 .setValue(session.getAuthType()));
     }
 
@@ -156,7 +273,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(Command.HDEL)
                 .setKey(getKey(session.getId(), NOTES))
-                .setField(name));
+                .setField(getField(NOTES, name)));
     }
 
     /**
@@ -170,7 +287,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(value == null ? Command.HDEL : Command.HSET)
                 .setKey(getKey(session.getId(), NOTES))
-                .setField(name)
+                .setField(getField(NOTES, name))
                 .setValue((Serializable) value));
     }
 
@@ -184,7 +301,7 @@ public class RedisSessionActionHandler {
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(Command.HDEL)
                 .setKey(getKey(session.getId(), ATTRIBUTES))
-                .setField(name));
+                .setField(getField(ATTRIBUTES, name)));
     }
 
     /**
@@ -195,21 +312,119 @@ public class RedisSessionActionHandler {
      * @param value value of the attribute to be added in the <code>Session</code>.
      */
     public void registerSessionAttribute(final RedisSession session, final String name, final Object value) {
+        if(this.dirtyTracking && value != null && isRegistrationEnabled()) {
+            final Set<RedisSession> sessions = this.requestSessions.get();
+            if(sessions != null) {
+                // Checked for changes once at the end of the request, which also covers the changes made in place after this call.
+                sessions.add(session);
+            } else {
+                registerChangedAttribute(session, name, value, false);
+            }
+            return;
+        }
+
         registerCommand(new RedisCommand(session.getId())
                 .setCommand(value == null ? Command.HDEL : Command.HSET)
                 .setKey(getKey(session.getId(), ATTRIBUTES))
-                .setField(name)
+                .setField(getField(ATTRIBUTES, name))
                 .setValue((Serializable) value));
     }
 
+    /**
+     * Marks the start of a request processed by the current thread. When dirty-tracking is enabled, the attributes set until
+     * the end of the request are registered only if they have changed by then.
+     */
+    public void beginRequest() {
+        if(this.dirtyTracking) {
+            this.requestSessions.set(new HashSet<RedisSession>());
+        }
+    }
+
+    /**
+     * Marks the end of the request processed by the current thread, registering the changed attributes of its <code>Session</code>,
+     * and of the other <code>Session</code>s whose attributes have been set during the request.
+     *
+     * @param session <code>RedisSession</code> of the request. Can be null.
+     */
+    public void endRequest(final RedisSession session) {
+        final Set<RedisSession> sessions = this.requestSessions.get();
+        this.requestSessions.remove();
+
+        if(session != null) {
+            registerDirtyAttributes(session);
+        }
+        if(sessions != null) {
+            for(RedisSession setSession : sessions) {
+                if(setSession != session) {
+                    registerDirtyAttributes(setSession);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the attributes of the <code>Session</code> which have changed since they were last persisted.
+     * The change is detected by comparing the fingerprint of the serialized attribute. Hence attributes which are modified in place are persisted as well.
+     * Does nothing unless dirty-tracking is enabled.
+     *
+     * @param session <code>RedisSession</code> whose attributes are to be checked.
+     */
+    public void registerDirtyAttributes(final RedisSession session) {
+        if(!this.dirtyTracking || session.getId() == null || !session.isValid()) {
+            return;
+        }
+
+        final Enumeration<String> attributes = session.getAttributeNames();
+        while (attributes.hasMoreElements()) {
+            final String attribute = attributes.nextElement();
+            if(session.isRawAttribute(attribute)) {
+                // Not accessed since it was loaded, hence unchanged.
+                continue;
+            }
+
+            final Object value = session.getAttribute(attribute);
+            if(value != null) {
+                registerChangedAttribute(session, attribute, value, false);
+            }
+        }
+    }
+
+    /**
+     * Registers the attribute serialized upfront, and records its fingerprint.
+     *
+     * @param session <code>RedisSession</code> of the attribute.
+     * @param name name of the attribute.
+     * @param value value of the attribute. Not null.
+     * @param force true to register the attribute even if it has not changed since it was last persisted.
+     */
+    private void registerChangedAttribute(final RedisSession session, final String name, final Object value, final boolean force) {
+        try {
+            final byte[] serializedValue = this.storeManager.serialize((Serializable) value);
+            final long fingerprint = HashUtils.fingerprint(serializedValue);
+            final Long persisted = session.getFingerprint(name);
+            if(force || persisted == null || persisted != fingerprint) {
+                if(LOG.isDebugEnabled()) { LOG.debug("Attribute " + name + " of session " + session.getId() + " has changed"); }
+                registerCommand(new RedisCommand(session.getId())
+                        .setCommand(Command.HSET)
+                        .setKey(getKey(session.getId(), ATTRIBUTES))
+                        .setField(getField(ATTRIBUTES, name))
+                        .setValue((Serializable) value)
+                        .setSerializedValue(serializedValue));
+                session.setFingerprint(name, fingerprint);
+            }
+        } catch (SerializationException e) {
+            LOG.error("Error checking attribute " + name + " of session " + session.getId() + " for changes", e);
+        }
+    }
+
     /**
      * Registers the removal of the <code>RedisSession</code> completely from redis.
      *
      * @param session <code>RedisSession</code> that is registered for removal from redis.
      */
     public void removeSession(final RedisSession session) {
-        for(String keyType : SESSION_BUCKETS) {
-            registerCommand(new RedisCommand(session.getId()).setCommand(Command.DEL).setKey(getKey(session.getId(), keyType)));
+        for(String key : getKeys(session.getId())) {
+            registerCommand(new RedisCommand(session.getId()).setCommand(Command.DEL).setKey(key));
         }
     }
 
@@ -219,9 +434,18 @@ public class RedisSessionActionHandler {
      * @param session <code>RedisSession</code> that is registered for addition in redis.
      */
     public Session addSession(final RedisSession session) {
-        if(session.getId() != null) {
-            regsisterSessionId(session.getId(), true);
-            registerSessionAccess(session.getId());
+        // A session being loaded from redis is added to the manager as well. Nothing has to be written back for it.
+        if(session.getId() != null && isRegistrationEnabled()) {
+            if(this.sessionIdReservation) {
+                // Reserved in redis ahead, hence written along with the rest of the session rather than with a round trip of its own.
+                registerCommand(new RedisCommand(session.getId())
+                        .setCommand(Command.HSET)
+                        .setKey(getKey(session.getId(), MAIN))
+                        .setField(getField(MAIN, ID))
+                        .setValue(session.getId()));
+            } else {
+                regsisterSessionId(session.getId(), true);
+            }
             registerSessionPrincipal(session);
             registerSessionCreationTime(session);
             registerSessionAuthType(session);
@@ -236,9 +460,31 @@ public class RedisSessionActionHandler {
             final Enumeration<String> attributes = session.getAttributeNames();
             while (attributes.hasMoreElements()) {
                 final String attribute = attributes.nextElement();
-                final Object value = session.getAttribute(attribute);
-                registerSessionAttribute(session, attribute, value);
+                final byte[] serializedValue = session.getRawAttribute(attribute);
+                if(serializedValue != null) {
+                    // Not accessed since it was loaded, hence written back as it is.
+                    registerCommand(new RedisCommand(session.getId())
+                            .setCommand(Command.HSET)
+                            .setKey(getKey(session.getId(), ATTRIBUTES))
+                            .setField(getField(ATTRIBUTES, attribute))
+                            .setSerializedValue(serializedValue));
+                } else {
+                    final Object value = session.getAttribute(attribute);
+                    if(this.dirtyTracking && value != null) {
+                        // Written in full, recording the fingerprints for the later checks.
+                        registerChangedAttribute(session, attribute, value, true);
+                    } else {
+                        registerCommand(new RedisCommand(session.getId())
+                                .setCommand(value == null ? Command.HDEL : Command.HSET)
+                                .setKey(getKey(session.getId(), ATTRIBUTES))
+                                .setField(getField(ATTRIBUTES, attribute))
+                                .setValue((Serializable) value));
+                    }
+                }
             }
+
+            // Registered last, so that the expiry is reset after all the buckets are created.
+            registerSessionAccess(session.getId());
         }
 
         return session;
@@ -252,12 +498,41 @@ public class RedisSessionActionHandler {
      * @throws SerializationException If any issues occur during de-serialization of <code>Session</code> data.
      */
     public Session loadSession(final String sessionId) throws SerializationException {
+        RedisSession session = null;
+        boolean legacy = false;
+        boolean fromReplica = false;
+
+        final long start = System.nanoTime();
         this.registrationFlag.set(Boolean.FALSE); // Temporarily turn off registration for this thread.
         try {
             if(sessionId != null) {
-                final Map<String, Serializable> mainMap = this.storeManager.loadData(getKey(sessionId, MAIN));
-                RedisSession session = null;
                 if(LOG.isDebugEnabled()) { LOG.debug("Attempting to load session with id " + sessionId); }
+
+                // All the hashes are loaded and their expiry reset in a single round trip.
+                final List<String> keys = getKeys(sessionId);
+                // Only the names of the attributes, and the hot ones, are loaded if the attributes are loaded on demand.
+                final Set<String> partialKeys = this.onDemandAttributes ? Collections.singleton(getKey(sessionId, ATTRIBUTES)) : Collections.<String>emptySet();
+                Map<String, Map<String, byte[]>> data = loadFromReplica(sessionId, keys, partialKeys);
+                if(data != null) {
+                    fromReplica = true;
+                } else {
+                    data = this.storeManager.loadRawData(keys, partialKeys, this.hotAttributeFields, this.maxInactiveInterval);
+                }
+
+                Map<String, Map<String, byte[]>> buckets = this.layout.getBuckets(sessionId, data);
+                final List<String> legacyKeys = this.layout.getLegacyKeys(sessionId);
+                if(buckets.get(MAIN) == null && !legacyKeys.isEmpty()) {
+                    // Only a session missing from the configured layout may still be in the layout being migrated from.
+                    // Hence the hashes of that layout cost a round trip of their own, on a miss only.
+                    final Map<String, Map<String, byte[]>> legacyData = this.storeManager.loadRawData(legacyKeys, this.maxInactiveInterval);
+                    final Map<String, Map<String, byte[]>> legacyBuckets = this.layout.getLegacyBuckets(sessionId, legacyData);
+                    if(legacyBuckets != null && legacyBuckets.get(MAIN) != null) {
+                        buckets = legacyBuckets;
+                        legacy = true;
+                    }
+                }
+
+                final Map<String, Serializable> mainMap = this.storeManager.deSerialize(getKey(sessionId, MAIN), buckets.get(MAIN));
                 if(mainMap != null) {
                     if(LOG.isDebugEnabled()) { LOG.debug("Successfully loaded session with id " + sessionId); }
                     session = new RedisSession(this.sessionManager);
@@ -266,89 +541,296 @@ public class RedisSessionActionHandler {
                     session.setPrincipal((Principal) mainMap.get(PRINCIPAL));
                     session.setCreationTime((Long) mainMap.get(CTIME));
                     session.setId(sessionId); // This does a lot of things. Hence keeping it to the end. Refer to <code>StandardSession</code> implementation.
-                }
 
-                if(session != null) {
-                    final Map<String, Serializable> notesMap = this.storeManager.loadData(getKey(sessionId, NOTES));
+                    final Map<String, Serializable> notesMap = this.storeManager.deSerialize(getKey(sessionId, NOTES), buckets.get(NOTES));
                     if(notesMap != null) {
                         for(Map.Entry<String, Serializable> entry : notesMap.entrySet()) {
                             session.setNote(entry.getKey(), entry.getValue());
                         }
                     }
 
-                    final Map<String, Serializable> attributesMap = this.storeManager.loadData(getKey(sessionId, ATTRIBUTES));
-                    if(attributesMap != null) {
-                        for(Map.Entry<String, Serializable> entry : attributesMap.entrySet()) {
-                            session.setAttribute(entry.getKey(), entry.getValue());
+                    final Map<String, byte[]> rawAttributesMap = buckets.get(ATTRIBUTES);
+                    if(this.lazyAttributes) {
+                        // De-serialized, or loaded, on their first access.
+                        if(rawAttributesMap != null) {
+                            for(Map.Entry<String, byte[]> entry : rawAttributesMap.entrySet()) {
+                                if(entry.getValue() == null) {
+                                    session.setUnloadedAttribute(entry.getKey());
+                                    continue;
+                                }
+                                session.setRawAttribute(entry.getKey(), entry.getValue());
+                                if(this.dirtyTracking) {
+                                    session.setFingerprint(entry.getKey(), HashUtils.fingerprint(entry.getValue()));
+                                }
+                            }
+                        }
+                    } else {
+                        final Map<String, Serializable> attributesMap = this.storeManager.deSerialize(getKey(sessionId, ATTRIBUTES), rawAttributesMap);
+                        if(attributesMap != null) {
+                            for(Map.Entry<String, Serializable> entry : attributesMap.entrySet()) {
+                                session.setAttribute(entry.getKey(), entry.getValue());
+                                if(this.dirtyTracking) {
+                                    session.setFingerprint(entry.getKey(), HashUtils.fingerprint(rawAttributesMap.get(entry.getKey())));
+                                }
+                            }
                         }
                     }
-
-                    registerSessionAccess(sessionId);
                 }
             }
         } finally {
             this.registrationFlag.set(Boolean.TRUE);
+            this.storeManager.getMetrics().recordLoad(session != null, System.nanoTime() - start);
         }
 
+        if(legacy) {
+            migrateSession(session);
+        } else if(fromReplica && session != null) {
+            // Replicas are read-only, hence the expiry is reset through the master.
+            registerSessionAccess(sessionId);
+        }
+
+        return session;
+    }
+
+    /**
+     * Loads the hashes of a <code>Session</code> from a replica of redis, if any is within the allowed replication lag.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     * @param keys Keys of the hashes of the <code>Session</code>, including the ones of the layout being migrated from.
+     * @param partialKeys Keys of the hashes of which only the names of the fields, and the hot attributes, are to be loaded.
+     * @return Hashes loaded per key. null if they are to be loaded from the master, including when the <code>Session</code> is missing from the replica,
+     * e.g. as it has just been created.
+     */
+    private Map<String, Map<String, byte[]>> loadFromReplica(final String sessionId, final List<String> keys, final Set<String> partialKeys) {
+        if(!this.storeManager.isReplicaReads()) {
+            return null;
+        }
+
+        final Map<String, Map<String, byte[]>> data = this.storeManager.loadRawDataFromReplica(keys, partialKeys, this.hotAttributeFields);
+        if(data != null) {
+            if(this.layout.getBuckets(sessionId, data).get(MAIN) != null) {
+                this.storeManager.getMetrics().recordReplicaRead(true);
+                return data;
+            }
+        }
+        this.storeManager.getMetrics().recordReplicaRead(false);
         return null;
     }
 
+    /**
+     * Loads an attribute of which only the name has been loaded along with the <code>Session</code>, on its first access.
+     *
+     * @param session <code>RedisSession</code> holding the attribute.
+     * @param name name of the attribute.
+     * @return Serialized value of the attribute. null if it has been removed from redis since the <code>Session</code> was loaded.
+     */
+    byte[] loadAttribute(final RedisSession session, final String name) {
+        if(LOG.isDebugEnabled()) { LOG.debug("Loading attribute " + name + " of session " + session.getId()); }
+        return this.storeManager.loadRawField(getKey(session.getId(), ATTRIBUTES), getField(ATTRIBUTES, name));
+    }
+
+    /**
+     * @param serializedValue Value of an attribute loaded on its first access.
+     * @return Fingerprint to be recorded for the attribute. null if dirty-tracking is disabled.
+     */
+    Long getLoadedFingerprint(final byte[] serializedValue) {
+        return this.dirtyTracking ? HashUtils.fingerprint(serializedValue) : null;
+    }
+
+    /**
+     * De-serializes an attribute held as loaded from redis, on its first access.
+     *
+     * @param session <code>RedisSession</code> holding the attribute.
+     * @param name name of the attribute.
+     * @param serializedValue Value of the attribute as stored in redis.
+     * @return De-serialized value. null if it could not be de-serialized, in which case the attribute is treated as missing.
+     */
+    Object deSerializeAttribute(final RedisSession session, final String name, final byte[] serializedValue) {
+        try {
+            return this.storeManager.deSerialize(serializedValue);
+        } catch (SerializationException e) {
+            LOG.error("Error loading data from redis for key " + getKey(session.getId(), ATTRIBUTES) + " and field " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites a <code>Session</code> loaded from the layout being migrated from into the configured layout.
+     *
+     * @param session <code>RedisSession</code> loaded from the layout being migrated from.
+     */
+    private void migrateSession(final RedisSession session) {
+        if(LOG.isDebugEnabled()) { LOG.debug("Migrating session with id " + session.getId() + " to the configured layout"); }
+        addSession(session);
+        for(String key : this.layout.getLegacyKeys(session.getId())) {
+            registerCommand(new RedisCommand(session.getId()).setCommand(Command.DEL).setKey(key));
+        }
+    }
+
     /**
      * Attempts to flush the actions in memory.
-     * Will be successful if it was able to get hold of a lock.
+     * Skips the stripes being flushed by other threads.
      */
     public void flushActions() {
         if(LOG.isDebugEnabled()) { LOG.debug("Attempting to flush all redis actions "); }
 
-        if(this.lock.tryLock()) {
+        for(int stripe = 0; stripe < this.locks.length; stripe++) {
+            flushActions(stripe);
+        }
+    }
+
+    /**
+     * Attempts to flush the actions in memory of a stripe.
+     * Will be successful if it was able to get hold of the lock of the stripe.
+     * The lock is held until the actions are handed over to the <code>RedisStoreManager</code>, which retains their order.
+     *
+     * @param stripe Stripe of the registry.
+     * @return true if flushed.
+     */
+    boolean flushActions(final int stripe) {
+        if(this.locks[stripe].tryLock()) {
             try {
-                final List<RedisCommand> commands = new ArrayList<RedisCommand>(this.registry.size());
-                while(!this.registry.isEmpty()) {
-                    commands.add(this.registry.poll());
+                final List<RedisCommand> commands = this.registry.drain(stripe);
+                final RedisSessionNearCache nearCache = this.sessionManager.nearCache;
+                if(nearCache != null) {
+                    nearCache.beginWrites(commands);
                 }
                 this.storeManager.execute(commands);
             } finally {
-                this.lock.unlock();
+                this.locks[stripe].unlock();
             }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s registered and yet to be flushed.
+     */
+    public int getRegistrySize() {
+        return this.registry.size();
+    }
+
+    /**
+     * Hands the flushing of the registry over to a dedicated thread.
+     * A stripe is flushed once it has been pending for the flush interval, or once it reaches a batch limit of at least its share of
+     * <code>maxRegistrySize</code>, grown as the round trip to redis slows down.
+     *
+     * @param flushInterval Maximum time (in milliseconds) a <code>RedisCommand</code> is held before being flushed.
+     */
+    public synchronized void startFlushScheduler(final int flushInterval) {
+        if(this.flushScheduler == null) {
+            final RedisFlushScheduler scheduler = new RedisFlushScheduler(this, flushInterval, this.maxStripeSize);
+            scheduler.start();
+            this.flushScheduler = scheduler;
+        }
+    }
+
+    /**
+     * Stops the dedicated flushing thread, if any. The <code>RedisCommand</code>s still registered are to be flushed by the caller.
+     */
+    public synchronized void stopFlushScheduler() {
+        if(this.flushScheduler != null) {
+            this.flushScheduler.stop();
+            this.flushScheduler = null;
         }
     }
 
+    /**
+     * @return true if the registry is flushed by a dedicated thread rather than by the requests.
+     */
+    public boolean isFlushScheduled() {
+        return this.flushScheduler != null;
+    }
+
+    /**
+     * @return Number of <code>RedisCommand</code>s in a stripe beyond which the dedicated thread flushes it right away. 0 if there is no such thread.
+     */
+    public int getFlushBatchLimit() {
+        final RedisFlushScheduler scheduler = this.flushScheduler;
+        return scheduler != null ? scheduler.getBatchLimit() : 0;
+    }
+
     /**
      * Utility method to register a <code>RedisCommand</code> to the in-memory registry.
      *
      * @param command <code>RedisCommand</code> to be registered.
      */
     protected void registerCommand(final RedisCommand command) {
-        // If the registrationFlag is not set or if it set as true, proceed with registration.
-        if((this.registrationFlag.get() == null || this.registrationFlag.get())
-                && command.getSessionId() != null) {
-            this.registry.offer(command);
+        if(isRegistrationEnabled() && command.getSessionId() != null) {
+            final int stripe = this.registry.getStripe(command.getSessionId());
+            while (!this.registry.register(command)) {
+                // The stripe is full. Making room by flushing it, or waiting for the thread flushing it.
+                if(!flushActions(stripe)) {
+                    Thread.yield();
+                }
+            }
 
-            if(this.registry.size() > this.maxRegistrySize) {
-                flushActions();
+            final RedisFlushScheduler scheduler = this.flushScheduler;
+            if(scheduler != null) {
+                if(this.registry.size(stripe) >= scheduler.getBatchLimit()) {
+                    scheduler.wakeUp();
+                }
+            } else if(this.registry.size(stripe) > this.maxStripeSize) {
+                flushActions(stripe);
             }
         }
     }
 
+    /**
+     * Checks whether the registration of <code>RedisCommand</code>s is enabled for the current thread.
+     *
+     * @return true if the registrationFlag is not set or if it set as true.
+     */
+    private boolean isRegistrationEnabled() {
+        return this.registrationFlag.get() == null || this.registrationFlag.get();
+    }
+
     /**
      * Method to register the expiry reset of all the session objects in redis.
      *
      * @param sessionId <code>Session</code> identifier.
      */
     public void registerSessionAccess(final String sessionId) {
-        for(String keyType : SESSION_BUCKETS) {
-            this.registry.add(new RedisCommand(sessionId).setCommand(Command.EXPIRY).setKey(getKey(sessionId, keyType)).setExpiryInterval(this.maxInactiveInterval));
+        if(this.storeManager.isScripting()) {
+            // A single script resets the expiry of all the buckets atomically.
+            registerCommand(new RedisCommand(sessionId).setCommand(Command.TOUCH).setKey(getKey(sessionId, MAIN)).setKeys(getKeys(sessionId)).setExpiryInterval(this.maxInactiveInterval));
+        } else {
+            for(String key : getKeys(sessionId)) {
+                registerCommand(new RedisCommand(sessionId).setCommand(Command.EXPIRY).setKey(key).setExpiryInterval(this.maxInactiveInterval));
+            }
         }
     }
 
     /**
-     * Utility method to get the key of the hash bucket in redis.
+     * Utility method to get the keys of all the hashes of a <code>Session</code> in redis.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     * @return Keys of all the hashes of the <code>Session</code> in redis.
+     */
+    private List<String> getKeys(final String sessionId) {
+        return this.layout.getKeys(sessionId);
+    }
+
+    /**
+     * Utility method to get the key of the hash holding a bucket in redis.
      *
      * @param sessionId <code>Session</code> identifier.
-     * @param bucketType Bucket Type for the hash-map in redis.
-     * @return Key to be used to refer the bucketizied hash-map in redis.
+     * @param bucketType Bucket Type of the <code>Session</code> data.
+     * @return Key to be used to refer the hash in redis.
      */
     private String getKey(final String sessionId, final String bucketType) {
-        return (SESSION_BUCKETS.contains(bucketType)) ?  StringUtils.join(Arrays.asList(SESSION, bucketType, sessionId), COLON) : null;
+        return this.layout.getKey(sessionId, bucketType);
+    }
+
+    /**
+     * Utility method to get the field of an entry of a bucket in redis.
+     *
+     * @param bucketType Bucket Type of the <code>Session</code> data.
+     * @param name Name of the entry in the bucket.
+     * @return Field to be used to refer the entry in the hash in redis.
+     */
+    private String getField(final String bucketType, final String name) {
+        return this.layout.getField(bucketType, name);
     }
 }
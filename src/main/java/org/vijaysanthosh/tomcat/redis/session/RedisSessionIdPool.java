@@ -0,0 +1,150 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <code>Session</code> identifiers registered in redis ahead of their use, so that a new <code>Session</code> does not wait
+ * for the round trip registering its identifier.
+ * <p>
+ * A dedicated thread generates a batch of identifiers and registers them all with a single pipeline whenever fewer than a batch are left.
+ * An identifier already registered, i.e. a collision, is dropped from the batch. The registrations expire along with the
+ * <code>Session</code>s, hence an identifier is handed out only while its registration is younger than half the expiry.
+ */
+class RedisSessionIdPool implements Runnable {
+    private static final Log LOG = LogFactory.getLog(RedisSessionIdPool.class);
+
+    /**
+     * Interval (in milliseconds) at which the pool is checked for stale identifiers, and after which a failed reservation is retried.
+     */
+    private static final long CHECK_INTERVAL = 1000L;
+
+    private final RedisSessionManager sessionManager;
+    private final int batchSize;
+    private final long maxAgeNanos;
+    private final BlockingQueue<Reservation> reservations;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param sessionManager <code>RedisSessionManager</code> generating and registering the identifiers.
+     * @param batchSize Number of identifiers reserved at once.
+     * @param maxInactiveInterval Expiry (in seconds) of the registrations.
+     */
+    RedisSessionIdPool(final RedisSessionManager sessionManager, final int batchSize, final int maxInactiveInterval) {
+        this.sessionManager = sessionManager;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxAgeNanos = TimeUnit.SECONDS.toNanos(maxInactiveInterval) / 2;
+        // Refilled once fewer than a batch are left, hence never holding more than two batches.
+        this.reservations = new ArrayBlockingQueue<Reservation>(2 * this.batchSize);
+
+        this.thread = new Thread(this, "redis-session-id-reservation");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stops the reservations. The identifiers left expire in redis.
+     */
+    void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Identifier registered in redis, and not handed out before. null if none is left.
+     */
+    String poll() {
+        final long now = System.nanoTime();
+        Reservation reservation;
+        while ((reservation = this.reservations.poll()) != null && now - reservation.reservedAt > this.maxAgeNanos) {
+            // Stale, as its registration may expire before the session is written.
+        }
+        if(this.reservations.size() < this.batchSize) {
+            LockSupport.unpark(this.thread);
+        }
+        return reservation != null ? reservation.sessionId : null;
+    }
+
+    /**
+     * @return Number of identifiers left, including the stale ones.
+     */
+    int size() {
+        return this.reservations.size();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                if(this.reservations.size() < this.batchSize) {
+                    reserve();
+                    continue;
+                }
+            } catch (Exception e) {
+                LOG.warn("Error reserving session ids in redis. Hence registering them one by one meanwhile", e);
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL));
+            dropStale();
+        }
+    }
+
+    /**
+     * Reserves a batch of identifiers.
+     *
+     * @throws Exception If the identifiers could not be registered.
+     */
+    void reserve() throws Exception {
+        final List<String> sessionIds = new ArrayList<String>(this.batchSize);
+        for(int i = 0; i < this.batchSize; i++) {
+            sessionIds.add(this.sessionManager.generateUnregisteredSessionId());
+        }
+
+        final long reservedAt = System.nanoTime();
+        final List<String> reserved = this.sessionManager.getActionHandler().reserveSessionIds(sessionIds);
+        if(reserved.size() < sessionIds.size()) {
+            LOG.warn((sessionIds.size() - reserved.size()) + " of " + sessionIds.size() + " generated session ids were already registered in redis");
+        }
+        for(String sessionId : reserved) {
+            if(!this.reservations.offer(new Reservation(sessionId, reservedAt))) {
+                // Full, as identifiers are not being handed out. The registration expires.
+                break;
+            }
+        }
+        if(LOG.isDebugEnabled()) { LOG.debug("Reserved " + reserved.size() + " session ids in redis"); }
+    }
+
+    private void dropStale() {
+        final long now = System.nanoTime();
+        Reservation reservation;
+        while ((reservation = this.reservations.peek()) != null && now - reservation.reservedAt > this.maxAgeNanos) {
+            this.reservations.remove(reservation);
+        }
+    }
+
+    private static final class Reservation {
+        private final String sessionId;
+        private final long reservedAt;
+
+        private Reservation(final String sessionId, final long reservedAt) {
+            this.sessionId = sessionId;
+            this.reservedAt = reservedAt;
+        }
+    }
+}
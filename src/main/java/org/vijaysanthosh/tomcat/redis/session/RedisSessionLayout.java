@@ -0,0 +1,125 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.catalina.LifecycleException;
+
+import java.util.*;
+
+/**
+ * Layout of the <code>Session</code> data in redis.
+ * The data of a <code>Session</code> is divided into buckets (main, notes and attributes). The layout decides the hash and the field in which each entry of a bucket is stored.
+ */
+abstract class RedisSessionLayout {
+
+    /**
+     * Session buckets
+     */
+    static final String MAIN = "main";
+    static final String NOTES = "notes";
+    static final String ATTRIBUTES = "attributes";
+
+    static final List<String> SESSION_BUCKETS = Arrays.asList(MAIN, NOTES, ATTRIBUTES);
+
+    /**
+     * Layout names
+     */
+    static final String MULTI_HASH = "multi";
+    static final String SINGLE_HASH = "single";
+    static final String TAGGED_HASH = "tagged";
+
+    static final String SESSION = "session";
+    static final String COLON = ":";
+
+    /**
+     * Gets the layout for the given name.
+     *
+     * @param name Name of the layout, either "multi", "single" or "tagged".
+     * @return <code>RedisSessionLayout</code> for the name.
+     * @throws LifecycleException If the name is not known.
+     */
+    static RedisSessionLayout getLayout(final String name) throws LifecycleException {
+        if(name == null || MULTI_HASH.equals(name)) {
+            return new MultiHashSessionLayout();
+        } else if(SINGLE_HASH.equals(name)) {
+            return new SingleHashSessionLayout();
+        } else if(TAGGED_HASH.equals(name)) {
+            return new TaggedHashSessionLayout();
+        }
+        throw new LifecycleException("Unknown session layout " + name + ". Expected one of `" + MULTI_HASH + "`, `" + SINGLE_HASH + "` or `" + TAGGED_HASH + "`");
+    }
+
+    /**
+     * @param sessionId <code>Session</code> identifier.
+     * @param bucket Bucket of the <code>Session</code> data.
+     * @return Key of the hash in which the bucket is stored.
+     */
+    abstract String getKey(final String sessionId, final String bucket);
+
+    /**
+     * @param bucket Bucket of the <code>Session</code> data.
+     * @param name Name of the entry in the bucket.
+     * @return Field of the hash in which the entry is stored.
+     */
+    abstract String getField(final String bucket, final String name);
+
+    /**
+     * @param sessionId <code>Session</code> identifier.
+     * @return Keys of all the hashes of the <code>Session</code>.
+     */
+    abstract List<String> getKeys(final String sessionId);
+
+    /**
+     * Divides the hashes loaded for <code>getKeys</code> into buckets.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     * @param data Hashes loaded from redis per key.
+     * @return Entries per bucket. The value is null if the bucket is empty.
+     */
+    abstract Map<String, Map<String, byte[]>> getBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data);
+
+    /**
+     * @param key Key of a hash in redis.
+     * @return <code>Session</code> identifier of the hash. null if the key is not a hash of a <code>Session</code>.
+     */
+    abstract String getSessionId(final String key);
+
+    /**
+     * @return true if all the hashes of a <code>Session</code> belong to the same slot of a redis cluster,
+     * which is required to reset their expiry in a single script.
+     */
+    boolean isSingleSlot() {
+        return true;
+    }
+
+    /**
+     * @return true if the attributes bucket is stored in a hash of its own, which can then be loaded partially.
+     */
+    boolean hasAttributesHash() {
+        return true;
+    }
+
+    /**
+     * @return Glob-style pattern matching the keys of all the hashes of all the <code>Session</code>s.
+     */
+    String getKeyPattern() {
+        return SESSION + COLON + "*";
+    }
+
+    /**
+     * @param sessionId <code>Session</code> identifier.
+     * @return Keys of the hashes of the <code>Session</code> written in a layout this layout migrates from.
+     */
+    List<String> getLegacyKeys(final String sessionId) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Divides the hashes loaded for <code>getLegacyKeys</code> into buckets.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     * @param data Hashes loaded from redis per key.
+     * @return Entries per bucket. null if there is no layout this layout migrates from.
+     */
+    Map<String, Map<String, byte[]>> getLegacyBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data) {
+        return null;
+    }
+}
@@ -6,8 +6,10 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.vijaysanthosh.tomcat.redis.serializer.SerializationException;
 
+import javax.management.ObjectName;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 /**
  * Redis session manager.
@@ -28,6 +30,21 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
      */
     protected RedisSessionActionHandler actionHandler;
 
+    /**
+     * Near-cache of the sessions, invalidated through the keyspace notifications of redis. null if disabled.
+     */
+    protected RedisSessionNearCache nearCache;
+
+    /**
+     * <code>Session</code> identifiers reserved in redis ahead of their use. null if disabled.
+     */
+    protected RedisSessionIdPool sessionIdPool;
+
+    /**
+     * Name under which the <code>RedisSessionMetrics</code> are registered with JMX. null if not registered.
+     */
+    protected ObjectName metricsName;
+
     public RedisSessionActionHandler getActionHandler() {
         return actionHandler;
     }
@@ -77,6 +94,39 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
         this.actionHandler = new RedisSessionActionHandler(this, getMaxInactiveInterval(), this.maxRegistrySize);
     }
 
+    protected synchronized void attachFlushScheduler() {
+        if(getFlushInterval() > 0) {
+            LOG.info("Flushing redis actions every " + getFlushInterval() + " ms or " + this.maxRegistrySize + " actions in total, more as redis slows down");
+            this.actionHandler.startFlushScheduler(getFlushInterval());
+        }
+    }
+
+    protected synchronized void attachSessionIdPool() {
+        if(getSessionIdReservation() > 0 && getMaxInactiveInterval() <= 0) {
+            // The reserved identifiers left unused would never expire.
+            LOG.warn("Session id reservation requires the sessions to expire. Hence disabled");
+        } else if(getSessionIdReservation() > 0) {
+            LOG.info("Reserving session ids in redis by batches of " + getSessionIdReservation());
+            this.sessionIdPool = new RedisSessionIdPool(this, getSessionIdReservation(), getMaxInactiveInterval());
+            this.sessionIdPool.start();
+        }
+    }
+
+    protected synchronized void attachNearCache() {
+        if(getNearCacheSize() > 0 && getStoreManager().isCluster()) {
+            // The keyspace notifications are published by each node of the cluster to its own subscribers only.
+            LOG.warn("Near-cache is not supported along with a redis cluster. Hence disabled");
+        } else if(getNearCacheSize() > 0 && getStoreManager().isInMemory()) {
+            // The sessions are already in memory, and there are no keyspace notifications to keep a cache in sync with.
+            LOG.warn("Near-cache is not supported along with the memory backend. Hence disabled");
+        } else if(getNearCacheSize() > 0) {
+            LOG.info("Near-cache enabled for " + getNearCacheSize() + " sessions");
+            final RedisSessionLayout layout = this.actionHandler.getLayout();
+            this.nearCache = new RedisSessionNearCache(layout, getNearCacheSize());
+            getStoreManager().subscribeKeyspace(layout.getKeyPattern(), this.nearCache);
+        }
+    }
+
     @Override
     protected synchronized void startInternal() throws LifecycleException {
         super.startInternal();
@@ -87,6 +137,37 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
         setState(LifecycleState.STARTING);
         attachRedisSessionHandlerValve();
         attachRedisActionHandler();
+        attachFlushScheduler();
+        attachSessionIdPool();
+        attachNearCache();
+        registerMetrics();
+    }
+
+    /**
+     * Registers the <code>RedisSessionMetrics</code> with JMX next to this <code>Manager</code>,
+     * e.g. <code>Catalina:type=RedisSessionMetrics,context=/app,host=localhost</code>.
+     */
+    protected synchronized void registerMetrics() {
+        try {
+            final String domain = getDomain() != null ? getDomain() : "Catalina";
+            final ObjectName objectName = new ObjectName(domain + ":" + getObjectNameKeyProperties().replaceFirst("^type=Manager", "type=RedisSessionMetrics"));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new RedisSessionMetrics(this), objectName);
+            this.metricsName = objectName;
+        } catch (Exception e) {
+            // Metrics are not essential to the sessions. Hence not failing the start.
+            LOG.warn("Error registering the redis session metrics with JMX", e);
+        }
+    }
+
+    protected synchronized void unregisterMetrics() {
+        if(this.metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+            } catch (Exception e) {
+                LOG.warn("Error unregistering the redis session metrics from JMX", e);
+            }
+            this.metricsName = null;
+        }
     }
 
     @Override
@@ -95,6 +176,12 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
 
         LOG.info("Stopping " + name);
 
+        unregisterMetrics();
+        if(this.sessionIdPool != null) {
+            this.sessionIdPool.stop();
+            this.sessionIdPool = null;
+        }
+        this.actionHandler.stopFlushScheduler();
         this.actionHandler.flushActions();
         super.stopInternal();
     }
@@ -125,12 +212,28 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
         return (requestedSessionId != null) ? this.actionHandler.regsisterSessionId(getCompletedSessionId(requestedSessionId), false) : null;
     }
 
+    /**
+     * @return Completed <code>Session</code> identifier, not yet registered in redis.
+     */
+    String generateUnregisteredSessionId() {
+        return getCompletedSessionId(super.generateSessionId());
+    }
+
     @Override
     protected String generateSessionId() {
+        final RedisSessionIdPool sessionIdPool = this.sessionIdPool;
+        final String reserved = sessionIdPool != null ? sessionIdPool.poll() : null;
+        if(reserved != null) {
+            getStoreManager().getMetrics().recordSessionIdRegistration(true);
+            if(LOG.isDebugEnabled()) { LOG.debug("Generated reserved session Id " + reserved); }
+            return reserved;
+        }
+
         String key;
         do {
             key = _registerSessionId(super.generateSessionId());
         } while (key == null);
+        getStoreManager().getMetrics().recordSessionIdRegistration(false);
 
         if(LOG.isDebugEnabled()) { LOG.debug("Generated session Id " + key); }
 
@@ -146,10 +249,15 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
     public Session createSession(String requestedSessionId) {
 
         if(LOG.isDebugEnabled()) { LOG.debug("Attempting to create Session with Id " + requestedSessionId); }
+        final long version = this.nearCache != null ? this.nearCache.getVersion() : 0L;
         final Session session = super.createSession(requestedSessionId);
 
         if (session != null && session instanceof  RedisSession) {
             if(LOG.isDebugEnabled()) { LOG.debug("Created Session with Id " + requestedSessionId); }
+            if (this.nearCache != null) {
+                ((RedisSession) session).nearCacheVersion = version;
+                this.nearCache.put((RedisSession) session, version);
+            }
             return this.actionHandler.addSession((RedisSession) session);
         }
         return session;
@@ -175,17 +283,41 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
         super.remove(session, update);
         if (session instanceof RedisSession) {
             this.actionHandler.removeSession((RedisSession) session);
+            if (this.nearCache != null) {
+                this.nearCache.remove(session.getId());
+            }
         }
     }
 
     @Override
     public Session findSession(String id) throws IOException {
         if(LOG.isDebugEnabled()) { LOG.debug("Attempting to find session with id " + id); }
-        Session session = super.findSession(id);
-        if(session instanceof RedisSession) {
-            return session;
+
+        final boolean nearCacheActive = this.nearCache != null && this.nearCache.isActive();
+        long version = 0L;
+        if(nearCacheActive) {
+            // The in-memory session is used only as long as no change has been notified for it.
+            final RedisSession cached = id != null ? this.nearCache.get(id) : null;
+            if(cached != null) {
+                getStoreManager().getMetrics().recordNearCacheHit();
+                return cached;
+            }
+            version = this.nearCache.getVersion();
+
+            // Evicted from the cache only, or invalidated by this node's own writes. Else changed by another node since it was loaded.
+            final Session session = super.findSession(id);
+            if(session instanceof RedisSession && this.nearCache.put((RedisSession) session, ((RedisSession) session).nearCacheVersion)) {
+                getStoreManager().getMetrics().recordNearCacheHit();
+                return session;
+            }
+        } else {
+            final Session session = super.findSession(id);
+            if(session instanceof RedisSession) {
+                return session;
+            }
         }
 
+        final Session session;
         try {
             if(LOG.isDebugEnabled()) { LOG.debug("Attempting to load session from redis with id " + id); }
             session = this.actionHandler.loadSession(id);
@@ -195,7 +327,12 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
         }
 
         if(session != null) {
+            // Replaces the in-memory copy changed by another node, if any.
             super.add(session);
+            if(nearCacheActive) {
+                ((RedisSession) session).nearCacheVersion = version;
+                this.nearCache.put((RedisSession) session, version);
+            }
         }
         return session;
     }
@@ -212,6 +349,8 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
      * @param request <code>Request</code> object before processing.
      */
     public void preRequestProcessing(Request request) {
+        this.actionHandler.beginRequest();
+
         final HttpSession session = request.getSession(false);
         if(session != null && session.getId() != null) {
             this.actionHandler.registerSessionAccess(session.getId());
@@ -225,10 +364,19 @@ public class RedisSessionManager extends BaseRedisSessionManager implements Life
      */
     public void postRequestProcessing(Request request) {
         final HttpSession session = request.getSession(false);
+        RedisSession redisSession = null;
         if(session != null && session.getId() != null) {
             this.actionHandler.registerSessionAccess(session.getId());
+
+            final Session internalSession = request.getSessionInternal(false);
+            if(internalSession instanceof RedisSession) {
+                redisSession = (RedisSession) internalSession;
+            }
+        }
+        this.actionHandler.endRequest(redisSession);
+        if(!this.actionHandler.isFlushScheduled()) {
+            this.actionHandler.flushActions();
         }
-        this.actionHandler.flushActions();
     }
 
 }
@@ -0,0 +1,178 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.vijaysanthosh.tomcat.redis.metrics.RedisMetrics;
+
+/**
+ * <code>RedisSessionMetricsMBean</code> implementation reading the <code>RedisMetrics</code> of the <code>RedisStoreManager</code>
+ * and the current state of the <code>RedisSessionManager</code>.
+ */
+public class RedisSessionMetrics implements RedisSessionMetricsMBean {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    private final RedisSessionManager sessionManager;
+    private final RedisMetrics metrics;
+
+    public RedisSessionMetrics(final RedisSessionManager sessionManager) {
+        this.sessionManager = sessionManager;
+        this.metrics = sessionManager.getStoreManager().getMetrics();
+    }
+
+    @Override
+    public int getRegistrySize() {
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        return actionHandler != null ? actionHandler.getRegistrySize() : 0;
+    }
+
+    @Override
+    public int getFlushBatchLimit() {
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        return actionHandler != null ? actionHandler.getFlushBatchLimit() : 0;
+    }
+
+    @Override
+    public int[] getExecutorBacklog() {
+        return this.sessionManager.getStoreManager().getExecutorBacklog();
+    }
+
+    @Override
+    public int getExecutorBacklogTotal() {
+        int total = 0;
+        for(int backlog : getExecutorBacklog()) {
+            total += backlog;
+        }
+        return total;
+    }
+
+    @Override
+    public int[] getExecutorHighWaterMarks() {
+        return this.sessionManager.getStoreManager().getExecutorHighWaterMarks();
+    }
+
+    @Override
+    public long getDroppedCommands() {
+        return this.metrics.getDroppedCommands();
+    }
+
+    @Override
+    public long getCoalescedBatches() {
+        return this.metrics.getCoalescedBatches();
+    }
+
+    @Override
+    public long getFlushes() {
+        return this.metrics.getFlushSize().getCount();
+    }
+
+    @Override
+    public long getCommandsFlushed() {
+        return this.metrics.getFlushSize().getSum();
+    }
+
+    @Override
+    public double getCommandsPerFlushMean() {
+        return this.metrics.getFlushSize().getMean();
+    }
+
+    @Override
+    public long getCommandsPerFlushMax() {
+        return this.metrics.getFlushSize().getMax();
+    }
+
+    @Override
+    public double getFlushLatencyMeanMillis() {
+        return this.metrics.getFlushLatency().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getFlushLatency99thPercentileMillis() {
+        return this.metrics.getFlushLatency().getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getFlushLatencyMaxMillis() {
+        return this.metrics.getFlushLatency().getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCommandErrors() {
+        return this.metrics.getCommandErrors();
+    }
+
+    @Override
+    public long getSerializations() {
+        return this.metrics.getSerializationLatency().getCount();
+    }
+
+    @Override
+    public double getSerializationTimeMeanMicros() {
+        return this.metrics.getSerializationLatency().getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getSerializationTime99thPercentileMicros() {
+        return this.metrics.getSerializationLatency().getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.metrics.getBytesWritten();
+    }
+
+    @Override
+    public long getLoadHits() {
+        return this.metrics.getLoadHits();
+    }
+
+    @Override
+    public long getLoadMisses() {
+        return this.metrics.getLoadMisses();
+    }
+
+    @Override
+    public double getLoadLatencyMeanMillis() {
+        return this.metrics.getLoadLatency().getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadLatency99thPercentileMillis() {
+        return this.metrics.getLoadLatency().getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadLatencyMaxMillis() {
+        return this.metrics.getLoadLatency().getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getNearCacheHits() {
+        return this.metrics.getNearCacheHits();
+    }
+
+    @Override
+    public int getNearCacheSize() {
+        final RedisSessionNearCache nearCache = this.sessionManager.nearCache;
+        return nearCache != null ? nearCache.size() : 0;
+    }
+
+    @Override
+    public long getReplicaReads() {
+        return this.metrics.getReplicaReads();
+    }
+
+    @Override
+    public long getReplicaFallbacks() {
+        return this.metrics.getReplicaFallbacks();
+    }
+
+    @Override
+    public long getReservedSessionIds() {
+        return this.metrics.getReservedSessionIds();
+    }
+
+    @Override
+    public long getRegisteredSessionIds() {
+        return this.metrics.getRegisteredSessionIds();
+    }
+}
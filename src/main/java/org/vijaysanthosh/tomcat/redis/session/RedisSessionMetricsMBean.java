@@ -0,0 +1,112 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+/**
+ * JMX view of the persistence of sessions into redis, registered by <code>RedisSessionManager</code>.
+ * Latencies are in milliseconds, except for the serialization which is in microseconds.
+ */
+public interface RedisSessionMetricsMBean {
+
+    /**
+     * @return Number of <code>RedisCommand</code>s registered and yet to be flushed.
+     */
+    int getRegistrySize();
+
+    /**
+     * @return Number of <code>RedisCommand</code>s per stripe beyond which the flush scheduler flushes it, adapted to the round trip to redis.
+     * 0 if the flush scheduler is disabled.
+     */
+    int getFlushBatchLimit();
+
+    /**
+     * @return Number of batches of <code>RedisCommand</code>s waiting to be executed, per executor queue.
+     * Queue <code>i</code> holds the batches of the mailboxes <code>m</code> such that <code>m % executorPoolSize == i</code>, whichever executors run them.
+     */
+    int[] getExecutorBacklog();
+
+    int getExecutorBacklogTotal();
+
+    /**
+     * @return Highest number of batches of <code>RedisCommand</code>s seen queued, per executor queue, as by <code>getExecutorBacklog</code>.
+     */
+    int[] getExecutorHighWaterMarks();
+
+    /**
+     * @return Number of <code>RedisCommand</code>s dropped as their executor queue was full.
+     */
+    long getDroppedCommands();
+
+    /**
+     * @return Number of batches of <code>RedisCommand</code>s appended to a queued batch as their executor queue was full.
+     */
+    long getCoalescedBatches();
+
+    /**
+     * @return Number of batches of <code>RedisCommand</code>s executed against redis.
+     */
+    long getFlushes();
+
+    long getCommandsFlushed();
+
+    double getCommandsPerFlushMean();
+
+    long getCommandsPerFlushMax();
+
+    double getFlushLatencyMeanMillis();
+
+    double getFlushLatency99thPercentileMillis();
+
+    double getFlushLatencyMaxMillis();
+
+    long getCommandErrors();
+
+    long getSerializations();
+
+    double getSerializationTimeMeanMicros();
+
+    double getSerializationTime99thPercentileMicros();
+
+    long getBytesWritten();
+
+    /**
+     * @return Number of <code>Session</code>s found when loaded from redis.
+     */
+    long getLoadHits();
+
+    /**
+     * @return Number of <code>Session</code>s not found when loaded from redis, e.g. expired ones.
+     */
+    long getLoadMisses();
+
+    double getLoadLatencyMeanMillis();
+
+    double getLoadLatency99thPercentileMillis();
+
+    double getLoadLatencyMaxMillis();
+
+    /**
+     * @return Number of <code>Session</code>s served from the near-cache without a load from redis.
+     */
+    long getNearCacheHits();
+
+    int getNearCacheSize();
+
+    /**
+     * @return Number of <code>Session</code>s loaded from a replica.
+     */
+    long getReplicaReads();
+
+    /**
+     * @return Number of <code>Session</code>s loaded from the master after trying a replica, as the replica lagged, failed or missed the <code>Session</code>.
+     */
+    long getReplicaFallbacks();
+
+    /**
+     * @return Number of new <code>Session</code> identifiers taken from those reserved ahead.
+     */
+    long getReservedSessionIds();
+
+    /**
+     * @return Number of new <code>Session</code> identifiers registered with a round trip of their own, as none was reserved.
+     */
+    long getRegisteredSessionIds();
+}
@@ -0,0 +1,344 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.vijaysanthosh.tomcat.redis.store.KeyspaceListener;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded near-cache of the <code>RedisSession</code>s in use on this node.
+ * A cached <code>RedisSession</code> is invalidated as soon as redis notifies a change of any of its hashes made by another node.
+ * The notifications of the writes of this node are skipped, as its in-memory <code>RedisSession</code>s already hold them.
+ * A write is counted as in flight from the moment it is handed over to the <code>RedisStoreManager</code>,
+ * and its notification is expected only once redis has confirmed that it changed the hash, matched by the event (hset, hdel or del).
+ * A notification arriving while writes of the key are in flight is held until they complete, and invalidates the <code>RedisSession</code>
+ * if none of them turns out to account for it, e.g. as the batch was dropped, or the HSETNX of the id lost to another node.
+ * The least recently used <code>RedisSession</code>s are evicted once the cache is full.
+ * Invalidation and eviction only drop the entry of the cache, never the <code>RedisSession</code> of the <code>RedisSessionManager</code>,
+ * which may still be in use by a request.
+ * <p>
+ * Every invalidation increments a version. A <code>RedisSession</code> loaded from redis is cached along with the version taken before it was loaded,
+ * and is not cached if it has been invalidated in between. This ensures that a load racing with a change never caches stale data.
+ * Likewise, an in-memory <code>RedisSession</code> is cached again only if it has not been invalidated since it was loaded.
+ * <p>
+ * The cache is used only while the subscription to the keyspace notifications is active. It is cleared whenever the subscription is lost.
+ */
+class RedisSessionNearCache implements KeyspaceListener {
+    private static final Log LOG = LogFactory.getLog(RedisSessionNearCache.class);
+
+    /**
+     * Event of the keyspace notification when only the expiry is reset. This does not change the <code>Session</code>.
+     */
+    private static final String EXPIRE = "expire";
+
+    private static final String HSET = "hset";
+    private static final String HDEL = "hdel";
+    private static final String DEL = "del";
+
+    /**
+     * Time (in nanoseconds) after which the writes of a key that has not been accessed are forgotten.
+     * Notifications still held are then treated as changes of another node.
+     */
+    private static final long WRITE_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final RedisSessionLayout layout;
+    private final Map<String, Entry> entries;
+    private final Map<String, Long> invalidations;
+
+    /**
+     * Writes of this node, per key, in the order the keys were last accessed.
+     */
+    private final Map<String, Writes> writes = new LinkedHashMap<String, Writes>(16, 0.75f, true);
+
+    private long version = 0L;
+    private long invalidationsFloor = 0L;
+    private volatile boolean active = false;
+
+    /**
+     * @param layout Layout used to identify the <code>Session</code> of a key.
+     * @param maxSize Maximum number of <code>RedisSession</code>s to be cached.
+     */
+    RedisSessionNearCache(final RedisSessionLayout layout, final int maxSize) {
+        this.layout = layout;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.invalidations = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if(size() > maxSize) {
+                    // Loads started before this version can no longer be checked against the forgotten invalidation.
+                    invalidationsFloor = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return true if the cache can be used, i.e. the keyspace notifications are being received.
+     */
+    boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * @return Current version, to be taken before loading a <code>RedisSession</code> which is to be cached.
+     */
+    synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @param sessionId <code>Session</code> identifier.
+     * @return Cached <code>RedisSession</code>. null if not cached or if the cache is not active.
+     */
+    synchronized RedisSession get(final String sessionId) {
+        if(!this.active) {
+            return null;
+        }
+        final Entry entry = this.entries.get(sessionId);
+        return entry != null ? entry.session : null;
+    }
+
+    /**
+     * Caches the <code>RedisSession</code> unless it has been invalidated, or loaded again, after the given version.
+     *
+     * @param session <code>RedisSession</code> to be cached.
+     * @param version Version taken before the <code>RedisSession</code> was loaded or created.
+     * @return true if the <code>RedisSession</code> has been cached.
+     */
+    synchronized boolean put(final RedisSession session, final long version) {
+        final Long invalidation = this.invalidations.get(session.getId());
+        if(!this.active || this.invalidationsFloor > version || (invalidation != null && invalidation > version)) {
+            return false;
+        }
+        final Entry existing = this.entries.get(session.getId());
+        if(existing != null && existing.version > version) {
+            // A more recent load is already cached.
+            return false;
+        }
+        this.entries.put(session.getId(), new Entry(session, version));
+        return true;
+    }
+
+    /**
+     * Removes the <code>RedisSession</code> from the cache.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     */
+    synchronized void remove(final String sessionId) {
+        this.entries.remove(sessionId);
+    }
+
+    /**
+     * Invalidates the <code>RedisSession</code>. It has to be loaded from redis again.
+     *
+     * @param sessionId <code>Session</code> identifier.
+     */
+    synchronized void invalidate(final String sessionId) {
+        this.version++;
+        this.invalidations.put(sessionId, this.version);
+        if(this.entries.remove(sessionId) != null) {
+            if(LOG.isDebugEnabled()) { LOG.debug("Invalidated session with id " + sessionId); }
+        }
+    }
+
+    /**
+     * Invalidates all the cached <code>RedisSession</code>s.
+     */
+    synchronized void clear() {
+        this.version++;
+        this.invalidationsFloor = this.version;
+        this.invalidations.clear();
+        this.entries.clear();
+        this.writes.clear();
+    }
+
+    /**
+     * Records the writes about to be flushed by this node as in flight, until their outcome is handed to <code>onWritten</code>.
+     *
+     * @param commands <code>RedisCommand</code>s about to be flushed.
+     */
+    synchronized void beginWrites(final List<RedisCommand> commands) {
+        for(RedisCommand command : commands) {
+            if(getEvent(command.getCommand()) != null) {
+                beginWrite(command.getKey());
+            }
+        }
+    }
+
+    /**
+     * Records a write about to be executed by this node as in flight, until its outcome is handed to <code>endWrite</code>.
+     *
+     * @param key Key of the hash.
+     */
+    synchronized void beginWrite(final String key) {
+        if(!this.active) {
+            return;
+        }
+        final long now = System.nanoTime();
+        purge(now);
+        Writes pending = this.writes.get(key);
+        if(pending == null) {
+            pending = new Writes();
+            this.writes.put(key, pending);
+        }
+        pending.accessed = now;
+        pending.inFlight++;
+    }
+
+    /**
+     * Completes a write recorded by <code>beginWrite</code>.
+     *
+     * @param key Key of the hash.
+     * @param event Event of the keyspace notification published by the write.
+     * @param changed true if redis confirmed that the write changed the hash, hence published the notification.
+     */
+    synchronized void endWrite(final String key, final String event, final boolean changed) {
+        final Writes pending = this.writes.get(key);
+        if(pending == null || pending.inFlight == 0) {
+            // Forgotten in the meantime, its notification is then treated as that of a change of another node.
+            return;
+        }
+        pending.accessed = System.nanoTime();
+        pending.inFlight--;
+        if(changed && !pending.held.remove(event)) {
+            pending.expected.add(event);
+        }
+        if(pending.inFlight == 0) {
+            if(!pending.held.isEmpty()) {
+                // Notified changes which none of the writes accounts for.
+                pending.held.clear();
+                invalidateKey(key);
+            }
+            if(pending.expected.isEmpty()) {
+                this.writes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forgets the writes of the keys not accessed for <code>WRITE_TIMEOUT</code>, invalidating those with notifications still held.
+     */
+    private void purge(final long now) {
+        for(Iterator<Map.Entry<String, Writes>> iterator = this.writes.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<String, Writes> entry = iterator.next();
+            if(now - entry.getValue().accessed <= WRITE_TIMEOUT) {
+                break;
+            }
+            iterator.remove();
+            if(!entry.getValue().held.isEmpty()) {
+                invalidateKey(entry.getKey());
+            }
+        }
+    }
+
+    private void invalidateKey(final String key) {
+        final String sessionId = this.layout.getSessionId(key);
+        if(sessionId != null) {
+            invalidate(sessionId);
+        }
+    }
+
+    /**
+     * @return Event of the keyspace notification published by the command. null if it does not change the <code>Session</code>.
+     */
+    static String getEvent(final RedisCommand.Command command) {
+        switch (command) {
+            case HSET:
+                return HSET;
+            case HDEL:
+                return HDEL;
+            case DEL:
+                return DEL;
+            default:
+                return null;
+        }
+    }
+
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public void onSubscribe() {
+        this.active = true;
+    }
+
+    @Override
+    public synchronized void onKeyChanged(final String key, final String event) {
+        if(EXPIRE.equals(event)) {
+            return;
+        }
+        final long now = System.nanoTime();
+        purge(now);
+        final Writes pending = this.writes.get(key);
+        if(pending != null) {
+            pending.accessed = now;
+            if(pending.expected.remove(event)) {
+                if(pending.inFlight == 0 && pending.expected.isEmpty()) {
+                    this.writes.remove(key);
+                }
+                return;
+            }
+            if(pending.inFlight > 0) {
+                // May be that of a write whose outcome is not known yet.
+                pending.held.add(event);
+                return;
+            }
+        }
+        invalidateKey(key);
+    }
+
+    @Override
+    public synchronized void onWritten(final List<RedisCommand> commands, final Set<RedisCommand> changed) {
+        for(RedisCommand command : commands) {
+            final String event = getEvent(command.getCommand());
+            if(event != null) {
+                endWrite(command.getKey(), event, changed.contains(command));
+            }
+        }
+    }
+
+    @Override
+    public void onDisconnect() {
+        // Changes may be missed from now on.
+        this.active = false;
+        clear();
+    }
+
+    private static final class Writes {
+        /**
+         * Events of the notifications of the completed writes, yet to be received.
+         */
+        private final List<String> expected = new LinkedList<String>();
+        /**
+         * Events of the notifications received while writes were in flight, yet to be accounted for.
+         */
+        private final List<String> held = new LinkedList<String>();
+        private int inFlight;
+        private long accessed;
+    }
+
+    private static final class Entry {
+        private final RedisSession session;
+        private final long version;
+
+        private Entry(final RedisSession session, final long version) {
+            this.session = session;
+            this.version = version;
+        }
+    }
+}
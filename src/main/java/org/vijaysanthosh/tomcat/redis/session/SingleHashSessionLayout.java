@@ -0,0 +1,80 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import java.util.*;
+
+/**
+ * Layout storing the whole <code>Session</code> in a single hash, <code>session:&lt;id&gt;</code>.
+ * The bucket of an entry is identified by the prefix of its field, e.g. <code>m:ctime</code>, <code>n:&lt;note&gt;</code> and <code>a:&lt;attribute&gt;</code>.
+ * Sessions written in the <code>MultiHashSessionLayout</code> are read as well, to allow migrating between the layouts.
+ */
+class SingleHashSessionLayout extends RedisSessionLayout {
+
+    private static final Map<String, String> PREFIXES = new HashMap<String, String>();
+    static {
+        PREFIXES.put(MAIN, "m:");
+        PREFIXES.put(NOTES, "n:");
+        PREFIXES.put(ATTRIBUTES, "a:");
+    }
+
+    private final RedisSessionLayout legacyLayout = new MultiHashSessionLayout();
+
+    @Override
+    String getKey(final String sessionId, final String bucket) {
+        return (SESSION_BUCKETS.contains(bucket)) ? SESSION + COLON + sessionId : null;
+    }
+
+    @Override
+    String getField(final String bucket, final String name) {
+        return PREFIXES.get(bucket) + name;
+    }
+
+    @Override
+    List<String> getKeys(final String sessionId) {
+        return Collections.singletonList(SESSION + COLON + sessionId);
+    }
+
+    @Override
+    boolean hasAttributesHash() {
+        return false;
+    }
+
+    @Override
+    String getSessionId(final String key) {
+        final String legacySessionId = this.legacyLayout.getSessionId(key);
+        if(legacySessionId != null) {
+            return legacySessionId;
+        }
+        return key.startsWith(SESSION + COLON) ? key.substring(SESSION.length() + COLON.length()) : null;
+    }
+
+    @Override
+    Map<String, Map<String, byte[]>> getBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data) {
+        final Map<String, Map<String, byte[]>> buckets = new HashMap<String, Map<String, byte[]>>(SESSION_BUCKETS.size());
+        final Map<String, byte[]> hash = data.get(SESSION + COLON + sessionId);
+        if(hash != null) {
+            for(Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                for(String bucket : SESSION_BUCKETS) {
+                    final String prefix = PREFIXES.get(bucket);
+                    if(entry.getKey().startsWith(prefix)) {
+                        if(buckets.get(bucket) == null) {
+                            buckets.put(bucket, new HashMap<String, byte[]>());
+                        }
+                        buckets.get(bucket).put(entry.getKey().substring(prefix.length()), entry.getValue());
+                        break;
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+
+    @Override
+    List<String> getLegacyKeys(final String sessionId) {
+        return this.legacyLayout.getKeys(sessionId);
+    }
+
+    @Override
+    Map<String, Map<String, byte[]>> getLegacyBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data) {
+        return this.legacyLayout.getBuckets(sessionId, data);
+    }
+}
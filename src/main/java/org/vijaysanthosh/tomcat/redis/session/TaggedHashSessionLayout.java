@@ -0,0 +1,47 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import java.util.*;
+
+/**
+ * Layout storing each bucket of the <code>Session</code> in its own hash, with the <code>Session</code> identifier as the hash tag of the key,
+ * e.g. <code>session:{&lt;id&gt;}:attributes</code>. All the hashes of a <code>Session</code> hence belong to the same slot of a redis cluster.
+ * Sessions written in the <code>MultiHashSessionLayout</code> are read as well, to allow migrating between the layouts.
+ */
+class TaggedHashSessionLayout extends MultiHashSessionLayout {
+
+    private static final String TAG_START = "{";
+    private static final String TAG_END = "}";
+
+    private final RedisSessionLayout legacyLayout = new MultiHashSessionLayout();
+
+    @Override
+    String getKey(final String sessionId, final String bucket) {
+        return (SESSION_BUCKETS.contains(bucket)) ? SESSION + COLON + TAG_START + sessionId + TAG_END + COLON + bucket : null;
+    }
+
+    @Override
+    String getSessionId(final String key) {
+        final String legacySessionId = this.legacyLayout.getSessionId(key);
+        if(legacySessionId != null) {
+            return legacySessionId;
+        }
+        final String prefix = SESSION + COLON + TAG_START;
+        final int end = key.lastIndexOf(TAG_END + COLON);
+        return key.startsWith(prefix) && end >= prefix.length() ? key.substring(prefix.length(), end) : null;
+    }
+
+    @Override
+    boolean isSingleSlot() {
+        return true;
+    }
+
+    @Override
+    List<String> getLegacyKeys(final String sessionId) {
+        return this.legacyLayout.getKeys(sessionId);
+    }
+
+    @Override
+    Map<String, Map<String, byte[]>> getLegacyBuckets(final String sessionId, final Map<String, Map<String, byte[]>> data) {
+        return this.legacyLayout.getBuckets(sessionId, data);
+    }
+}
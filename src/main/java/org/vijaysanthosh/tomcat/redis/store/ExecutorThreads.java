@@ -0,0 +1,104 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.catalina.LifecycleException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of threads running the executors of the <code>RedisCommand</code>s.
+ */
+public enum ExecutorThreads {
+    /**
+     * Daemon platform threads. Each executor blocks its own operating system thread during a round trip to redis.
+     */
+    PLATFORM("platform"),
+    /**
+     * Virtual threads (Java 21+), which release their carrier thread while blocked on redis.
+     * Hence executors are cheap, and more of them can be afforded than there are processors.
+     */
+    VIRTUAL("virtual");
+
+    private final String name;
+
+    ExecutorThreads(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the running JVM supports these threads.
+     */
+    public boolean isSupported() {
+        return this == PLATFORM || getVirtualBuilder() != null;
+    }
+
+    /**
+     * @param prefix Prefix of the thread names, followed by a sequence number.
+     * @return Factory of the threads.
+     * @throws IllegalStateException If the running JVM does not support these threads, refer to <code>isSupported</code>.
+     */
+    public ThreadFactory newThreadFactory(final String prefix) {
+        if(this == VIRTUAL) {
+            return newVirtualThreadFactory(prefix);
+        }
+
+        final AtomicInteger sequence = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, prefix + sequence.getAndIncrement());
+                // The executors are drained on destroy. Hence they need not hold up the JVM.
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @param name Name of the threads as configured, e.g. <code>virtual</code>.
+     * @return Matching <code>ExecutorThreads</code>.
+     * @throws LifecycleException If no kind of threads has the name.
+     */
+    public static ExecutorThreads getThreads(final String name) throws LifecycleException {
+        for(ExecutorThreads threads : values()) {
+            if(threads.name.equals(name)) {
+                return threads;
+            }
+        }
+        throw new LifecycleException("Unknown executor threads " + name + ". Expected either platform or virtual");
+    }
+
+    /**
+     * Virtual threads are created through reflection, as the sources are to compile for older versions of Java.
+     *
+     * @return <code>Thread.ofVirtual()</code>. null before Java 21.
+     */
+    private static Object getVirtualBuilder() {
+        try {
+            return Thread.class.getMethod("ofVirtual").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(final String prefix) {
+        final Object builder = getVirtualBuilder();
+        if(builder == null) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later");
+        }
+        try {
+            // Through the public interface, as the implementing class is not accessible.
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method name = builderClass.getMethod("name", String.class, long.class);
+            final Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(name.invoke(builder, prefix, 0L));
+        } catch (Exception e) {
+            throw new IllegalStateException("Error creating virtual threads", e);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <code>RedisBackend</code> keeping the hashes in this JVM, in place of redis. Used to test and benchmark the session handling
+ * without a network, hence the sessions are neither shared with other servers nor kept across restarts.
+ * <p>
+ * Expiries are honoured: an expired hash reads as absent and is dropped on its next access. Every round trip to redis,
+ * i.e. each call, each pipeline of <code>RedisCommand</code>s or each <code>RedisCommand</code> when not pipelined,
+ * can be made to take a simulated latency, blocking the calling thread as a round trip to redis would.
+ */
+public class InMemoryRedisBackend implements RedisBackend {
+    private static final Log LOG = LogFactory.getLog(InMemoryRedisBackend.class);
+
+    private final RedisStoreManager storeManager;
+    private final long latencyNanos;
+    private final ConcurrentMap<String, Hash> hashes = new ConcurrentHashMap<String, Hash>();
+
+    /**
+     * @param storeManager <code>RedisStoreManager</code> serializing the values and recording the metrics.
+     * @param latency Simulated latency (in microseconds) of a round trip. None if 0 or less.
+     */
+    InMemoryRedisBackend(final RedisStoreManager storeManager, final long latency) {
+        this.storeManager = storeManager;
+        this.latencyNanos = Math.max(0L, TimeUnit.MICROSECONDS.toNanos(latency));
+    }
+
+    @Override
+    public RedisFuture<Boolean> hset(final String key, final String field, final byte[] value, final boolean overwrite, final int expiryInterval) {
+        roundTrip();
+        return RedisFuture.completed(set(key, field, value, overwrite, expiryInterval));
+    }
+
+    @Override
+    public RedisFuture<Set<String>> hsetnx(final String field, final Map<String, byte[]> values, final int expiryInterval) {
+        final Set<String> set = new HashSet<String>();
+        if(values.isEmpty()) {
+            return RedisFuture.completed(set);
+        }
+
+        roundTrip();
+        for(Map.Entry<String, byte[]> entry : values.entrySet()) {
+            if(set(entry.getKey(), field, entry.getValue(), false, expiryInterval)) {
+                set.add(entry.getKey());
+            }
+        }
+        return RedisFuture.completed(set);
+    }
+
+    @Override
+    public RedisFuture<Map<String, Map<String, byte[]>>> loadRawData(final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval) {
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        if(keys == null || keys.isEmpty()) {
+            return RedisFuture.completed(data);
+        }
+
+        roundTrip();
+        for(String key : keys) {
+            final Hash hash = lookup(key);
+            Map<String, byte[]> fieldsLoaded = null;
+            if(hash != null) {
+                synchronized (hash) {
+                    if(!hash.removed && !hash.fields.isEmpty()) {
+                        fieldsLoaded = new HashMap<String, byte[]>(hash.fields);
+                        if(partialKeys.contains(key)) {
+                            // Only the names, along with the values of the given fields.
+                            for(Map.Entry<String, byte[]> entry : fieldsLoaded.entrySet()) {
+                                if(!fields.contains(entry.getKey())) {
+                                    entry.setValue(null);
+                                }
+                            }
+                        }
+                        if(expiryInterval > 0) {
+                            hash.expire(expiryInterval);
+                        }
+                    }
+                }
+            }
+            data.put(key, fieldsLoaded);
+        }
+        return RedisFuture.completed(data);
+    }
+
+    @Override
+    public RedisFuture<byte[]> loadRawField(final String key, final String field) {
+        roundTrip();
+        final Hash hash = lookup(key);
+        if(hash == null) {
+            return RedisFuture.completed(null);
+        }
+        synchronized (hash) {
+            return RedisFuture.completed(hash.removed ? null : hash.fields.get(field));
+        }
+    }
+
+    @Override
+    public Set<RedisCommand> execute(final List<RedisCommand> commands) {
+        final boolean pipelined = this.storeManager.isPipelined();
+        if(pipelined) {
+            roundTrip();
+        }
+        for(RedisCommand command : commands) {
+            if(!pipelined) {
+                roundTrip();
+            }
+            try {
+                if(LOG.isDebugEnabled()) { LOG.debug("Executing RedisCommand " + command); }
+                switch (command.getCommand()) {
+                    case DEL:
+                        delete(command.getKey());
+                        break;
+                    case HSET:
+                        set(command.getKey(), command.getField(), this.storeManager.serialize(command), true, 0);
+                        break;
+                    case HDEL:
+                        hdel(command.getKey(), command.getField());
+                        break;
+                    case EXPIRY:
+                        expire(command.getKey(), command.getExpiryInterval());
+                        break;
+                    case TOUCH:
+                        for(String key : command.getKeys()) {
+                            expire(key, command.getExpiryInterval());
+                        }
+                        break;
+                }
+            } catch (Exception e) {
+                LOG.error("Error executing RedisCommand " + command, e);
+                this.storeManager.getMetrics().recordCommandErrors(1);
+            }
+        }
+        // No keyspace notifications are published in memory.
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void close() {
+        this.hashes.clear();
+    }
+
+    /**
+     * @param key Key of a hash.
+     * @return Copy of the hash stored against the key. null if absent or expired.
+     */
+    public Map<String, byte[]> getHash(final String key) {
+        final Hash hash = lookup(key);
+        if(hash == null) {
+            return null;
+        }
+        synchronized (hash) {
+            return hash.removed ? null : new HashMap<String, byte[]>(hash.fields);
+        }
+    }
+
+    /**
+     * @param key Key of a hash.
+     * @return Remaining time to live (in milliseconds). -1 if the hash has no expiry, -2 if absent or expired.
+     */
+    public long getTimeToLive(final String key) {
+        final Hash hash = lookup(key);
+        if(hash == null) {
+            return -2L;
+        }
+        final long expiresAt = hash.expiresAt;
+        return expiresAt == 0L ? -1L : Math.max(0L, expiresAt - System.currentTimeMillis());
+    }
+
+    /**
+     * @return Number of hashes stored. The expired hashes are dropped meanwhile.
+     */
+    public int size() {
+        int size = 0;
+        for(String key : this.hashes.keySet()) {
+            if(lookup(key) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private boolean set(final String key, final String field, final byte[] value, final boolean overwrite, final int expiryInterval) {
+        while (true) {
+            final Hash hash = lookupOrCreate(key);
+            synchronized (hash) {
+                if(hash.removed) {
+                    // Dropped meanwhile. Retrying on the hash which replaces it.
+                    continue;
+                }
+                if(!overwrite && hash.fields.containsKey(field)) {
+                    return false;
+                }
+                hash.fields.put(field, value);
+                if(expiryInterval > 0) {
+                    hash.expire(expiryInterval);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void hdel(final String key, final String field) {
+        final Hash hash = lookup(key);
+        if(hash != null) {
+            synchronized (hash) {
+                hash.fields.remove(field);
+                if(hash.fields.isEmpty()) {
+                    // Redis drops a hash along with its last field.
+                    remove(key, hash);
+                }
+            }
+        }
+    }
+
+    private void expire(final String key, final int expiryInterval) {
+        final Hash hash = lookup(key);
+        if(hash != null) {
+            synchronized (hash) {
+                hash.expire(expiryInterval);
+            }
+        }
+    }
+
+    private void delete(final String key) {
+        final Hash hash = this.hashes.get(key);
+        if(hash != null) {
+            synchronized (hash) {
+                remove(key, hash);
+            }
+        }
+    }
+
+    /**
+     * @return Hash stored against the key. null if absent, or if expired in which case it is dropped.
+     */
+    private Hash lookup(final String key) {
+        final Hash hash = this.hashes.get(key);
+        if(hash != null && hash.isExpired()) {
+            synchronized (hash) {
+                if(hash.isExpired()) {
+                    remove(key, hash);
+                }
+            }
+            return null;
+        }
+        return hash;
+    }
+
+    private Hash lookupOrCreate(final String key) {
+        final Hash hash = lookup(key);
+        if(hash != null) {
+            return hash;
+        }
+        final Hash created = new Hash();
+        final Hash existing = this.hashes.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Drops the hash. Has to be called holding the lock of the hash, so that no writer sets a field of a dropped hash.
+     */
+    private void remove(final String key, final Hash hash) {
+        hash.removed = true;
+        this.hashes.remove(key, hash);
+    }
+
+    /**
+     * Simulates the latency of a round trip to redis.
+     */
+    private void roundTrip() {
+        if(this.latencyNanos > 0L) {
+            final long deadline = System.nanoTime() + this.latencyNanos;
+            long remaining = this.latencyNanos;
+            while (remaining > 0L) {
+                LockSupport.parkNanos(remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Fields of a hash, guarded by the hash itself.
+     */
+    private static final class Hash {
+        private final Map<String, byte[]> fields = new HashMap<String, byte[]>();
+
+        /**
+         * Time (in milliseconds) at which the hash expires. 0 if it never does.
+         */
+        private volatile long expiresAt = 0L;
+
+        /**
+         * Whether the hash has been dropped from the store, after which it is not to be written to.
+         */
+        private boolean removed = false;
+
+        private void expire(final int expiryInterval) {
+            this.expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiryInterval);
+        }
+
+        private boolean isExpired() {
+            final long expiresAt = this.expiresAt;
+            return expiresAt != 0L && expiresAt <= System.currentTimeMillis();
+        }
+    }
+}
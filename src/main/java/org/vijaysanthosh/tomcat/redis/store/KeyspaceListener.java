@@ -0,0 +1,39 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Listener for the keyspace notifications of redis.
+ */
+public interface KeyspaceListener {
+
+    /**
+     * Invoked once the subscription is established. Notifications are received from this point on.
+     */
+    void onSubscribe();
+
+    /**
+     * Invoked for every keyspace notification.
+     *
+     * @param key Key which has been changed.
+     * @param event Event which changed the key, e.g. <code>hset</code>, <code>del</code> or <code>expired</code>.
+     */
+    void onKeyChanged(String key, String event);
+
+    /**
+     * Invoked once a batch of <code>RedisCommand</code>s flushed by the executors has been executed, or dropped,
+     * so that the listener can tell the notifications of its own writes from those of other nodes.
+     *
+     * @param commands <code>RedisCommand</code>s of the batch.
+     * @param changed <code>RedisCommand</code>s, among those of the batch, which redis confirmed to have changed their key.
+     */
+    void onWritten(List<RedisCommand> commands, Set<RedisCommand> changed);
+
+    /**
+     * Invoked when the subscription is lost. Notifications may be missed until <code>onSubscribe</code> is invoked again.
+     */
+    void onDisconnect();
+}
@@ -0,0 +1,127 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.List;
+
+/**
+ * Subscribes to the keyspace notifications of redis over a dedicated connection and forwards them to a <code>KeyspaceListener</code>.
+ * The subscription is established again whenever the connection is lost.
+ */
+public class KeyspaceSubscriber extends JedisPubSub implements Runnable {
+    private static final Log LOG = LogFactory.getLog(KeyspaceSubscriber.class);
+
+    private static final String NOTIFY_KEYSPACE_EVENTS = "notify-keyspace-events";
+    private static final String CHANNEL_SEPARATOR = "__:";
+    private static final long RETRY_INTERVAL = 1000L;
+
+    private final RedisStoreManager storeManager;
+    private final String pattern;
+    private final KeyspaceListener listener;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile Jedis jedis;
+
+    KeyspaceSubscriber(final RedisStoreManager storeManager, final String pattern, final KeyspaceListener listener) {
+        this.storeManager = storeManager;
+        this.pattern = pattern;
+        this.listener = listener;
+
+        this.thread = new Thread(this, "redis-keyspace-subscriber");
+        this.thread.setDaemon(true);
+    }
+
+    KeyspaceListener getListener() {
+        return this.listener;
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stops the subscription and closes the dedicated connection.
+     */
+    public void stop() {
+        this.running = false;
+        try {
+            if(isSubscribed()) {
+                punsubscribe();
+            }
+        } catch (Exception e) {
+            // Do nothing to prevent anything untoward from happening
+        }
+        close();
+        this.thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.jedis = this.storeManager.createConnection();
+                checkConfiguration(this.jedis);
+                this.jedis.psubscribe(this, this.pattern); // Blocks as long as the subscription is active.
+            } catch (Exception e) {
+                if(this.running) {
+                    LOG.warn("Subscription to the keyspace notifications " + this.pattern + " lost. Retrying in " + RETRY_INTERVAL + " ms", e);
+                }
+            } finally {
+                close();
+                this.listener.onDisconnect();
+            }
+
+            if(this.running) {
+                try {
+                    Thread.sleep(RETRY_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+        if(LOG.isDebugEnabled()) { LOG.debug("Subscribed to the keyspace notifications " + pattern); }
+        this.listener.onSubscribe();
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+        // Channel is of the form __keyspace@<db>__:<key>
+        final int index = channel.indexOf(CHANNEL_SEPARATOR);
+        if(index >= 0) {
+            this.listener.onKeyChanged(channel.substring(index + CHANNEL_SEPARATOR.length()), message);
+        }
+    }
+
+    private void checkConfiguration(final Jedis jedis) {
+        try {
+            final List<String> config = jedis.configGet(NOTIFY_KEYSPACE_EVENTS);
+            final String flags = (config != null && config.size() > 1) ? config.get(1) : "";
+            if(!flags.contains("K") || !((flags.contains("g") && flags.contains("h")) || flags.contains("A"))) {
+                LOG.warn("Redis is configured with " + NOTIFY_KEYSPACE_EVENTS + " '" + flags + "'. Expected at least 'Kgh' for the notifications to be received");
+            }
+        } catch (Exception e) {
+            // CONFIG may be disabled. The notifications are expected to be configured in that case.
+            if(LOG.isDebugEnabled()) { LOG.debug("Unable to check " + NOTIFY_KEYSPACE_EVENTS, e); }
+        }
+    }
+
+    private void close() {
+        final Jedis jedis = this.jedis;
+        if(jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (Exception e) {
+                // Do nothing to prevent anything untoward from happening
+            }
+        }
+    }
+}
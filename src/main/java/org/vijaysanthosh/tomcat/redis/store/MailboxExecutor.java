@@ -0,0 +1,209 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes tasks in FIFO order per mailbox, in the style of actors. A mailbox with pending tasks is run by whichever worker
+ * is idle, and by a single worker at a time. Hence a busy mailbox does not hold up the other mailboxes behind it, as a
+ * single threaded executor per stripe would.
+ * <p>
+ * The set of mailboxes is fixed, the callers hashing their tasks onto them. The mailboxes are split into groups, by default
+ * as many as there are workers, mailbox <code>m</code> belonging to group <code>m % groups</code>. Each group holds at most
+ * <code>capacity</code> pending tasks, over all its mailboxes, whichever workers run them.
+ *
+ * @param <T> Type of the tasks.
+ */
+class MailboxExecutor<T extends Runnable> {
+    private static final Log LOG = LogFactory.getLog(MailboxExecutor.class);
+
+    /**
+     * Tasks run from a mailbox before the worker moves on to the next mailbox, so that a busy mailbox cannot starve the others.
+     */
+    private static final int TASKS_PER_TURN = 8;
+
+    private final ThreadPoolExecutor workers;
+    private final List<Mailbox> mailboxes;
+    private final Semaphore[] permits;
+    private final int capacity;
+
+    /**
+     * @param threads Number of workers, hence of groups.
+     * @param mailboxesPerGroup Number of mailboxes per group.
+     * @param capacity Maximum number of pending tasks per group.
+     * @param threadFactory Factory of the workers.
+     */
+    MailboxExecutor(final int threads, final int mailboxesPerGroup, final int capacity, final ThreadFactory threadFactory) {
+        this(threads, mailboxesPerGroup, capacity, threads, threadFactory);
+    }
+
+    /**
+     * @param groups Number of groups.
+     * @param mailboxesPerGroup Number of mailboxes per group.
+     * @param capacity Maximum number of pending tasks per group.
+     * @param threads Number of workers, independent of the groups.
+     * @param threadFactory Factory of the workers.
+     */
+    MailboxExecutor(final int groups, final int mailboxesPerGroup, final int capacity, final int threads, final ThreadFactory threadFactory) {
+        // The queue holds the mailboxes with pending tasks, hence never more than there are mailboxes.
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        this.mailboxes = new ArrayList<Mailbox>(groups * mailboxesPerGroup);
+        for(int i = 0; i < groups * mailboxesPerGroup; i++) {
+            this.mailboxes.add(new Mailbox(i % groups));
+        }
+        this.permits = new Semaphore[groups];
+        for(int i = 0; i < this.permits.length; i++) {
+            this.permits[i] = new Semaphore(capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    int getMailboxes() {
+        return this.mailboxes.size();
+    }
+
+    int getWorkers() {
+        return this.workers.getCorePoolSize();
+    }
+
+    int getGroups() {
+        return this.permits.length;
+    }
+
+    int getGroup(final int mailbox) {
+        return this.mailboxes.get(mailbox).group;
+    }
+
+    /**
+     * Queues the task if its group has room.
+     *
+     * @return true if queued.
+     */
+    boolean offer(final int mailbox, final T task) {
+        if(!this.permits[getGroup(mailbox)].tryAcquire()) {
+            return false;
+        }
+        this.mailboxes.get(mailbox).post(task);
+        return true;
+    }
+
+    /**
+     * Queues the task, waiting up to the timeout for room in its group.
+     *
+     * @return true if queued. false on timeout.
+     */
+    boolean offer(final int mailbox, final T task, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if(!this.permits[getGroup(mailbox)].tryAcquire(timeout, unit)) {
+            return false;
+        }
+        this.mailboxes.get(mailbox).post(task);
+        return true;
+    }
+
+    /**
+     * @return Tasks pending in the mailbox, in their order of execution.
+     */
+    Collection<T> getQueued(final int mailbox) {
+        return Collections.unmodifiableCollection(this.mailboxes.get(mailbox).tasks);
+    }
+
+    /**
+     * Removes a pending task, unless a worker has already taken it.
+     *
+     * @return true if removed.
+     */
+    boolean remove(final int mailbox, final T task) {
+        final Mailbox box = this.mailboxes.get(mailbox);
+        if(!box.tasks.remove(task)) {
+            return false;
+        }
+        this.permits[box.group].release();
+        return true;
+    }
+
+    /**
+     * @return Number of pending tasks in the group.
+     */
+    int size(final int group) {
+        return this.capacity - this.permits[group].availablePermits();
+    }
+
+    boolean isShutdown() {
+        return this.workers.isShutdown();
+    }
+
+    /**
+     * Accepts no more mailboxes to run. The pending tasks are still executed.
+     */
+    void shutdown() {
+        this.workers.shutdown();
+    }
+
+    boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return this.workers.awaitTermination(timeout, unit);
+    }
+
+    private final class Mailbox implements Runnable {
+        private final int group;
+        private final Queue<T> tasks = new ConcurrentLinkedQueue<T>();
+
+        /**
+         * Whether the mailbox is queued for, or being run by, a worker.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Mailbox(final int group) {
+            this.group = group;
+        }
+
+        private void post(final T task) {
+            this.tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if(!this.tasks.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Shut down while draining. Hence the caller runs the tasks left.
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                T task;
+                // Drained in one turn once shut down, as the mailbox can no longer be queued again.
+                for(int i = 0; (i < TASKS_PER_TURN || workers.isShutdown()) && (task = this.tasks.poll()) != null; i++) {
+                    permits[this.group].release();
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.error("Error executing a task of mailbox group " + this.group, e);
+                    }
+                }
+            } finally {
+                this.scheduled.set(false);
+                // Tasks posted while the flag was set, or left after the turn, queue the mailbox again behind the others.
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>RedisBackend</code> sharing a few <code>MultiplexedRedisConnection</code>s between all the threads.
+ * The commands of concurrent threads are pipelined automatically, hence a handful of connections serves any number of threads,
+ * which only wait for their replies, not for a pooled connection. The commands of a single call are sent on the same connection.
+ * The <code>RedisCommand</code>s flushed by the executors are still pipelined over the pooled connections.
+ * <p>
+ * Not supported in cluster mode, as the connections are to the master only.
+ */
+class MultiplexedRedisBackend implements RedisBackend {
+
+    private static final byte[] ONE = SafeEncoder.encode("1");
+    private static final byte[] ZERO = SafeEncoder.encode("0");
+
+    private final RedisStoreManager storeManager;
+    private final PooledRedisBackend pooled;
+    private final MultiplexedRedisConnection[] connections;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    MultiplexedRedisBackend(final RedisStoreManager storeManager, final int connectionCount) {
+        this.storeManager = storeManager;
+        this.pooled = new PooledRedisBackend(storeManager);
+        this.connections = new MultiplexedRedisConnection[Math.max(1, connectionCount)];
+        for(int i = 0; i < this.connections.length; i++) {
+            this.connections[i] = new MultiplexedRedisConnection(storeManager, "redis-multiplexed-" + i);
+            this.connections[i].start();
+        }
+    }
+
+    @Override
+    public RedisFuture<Boolean> hset(final String key, final String field, final byte[] value, final boolean overwrite, final int expiryInterval) {
+        final MultiplexedRedisConnection connection = nextConnection();
+        final byte[] rawKey = SafeEncoder.encode(key);
+        final byte[] rawField = SafeEncoder.encode(field);
+        final RedisFuture<Boolean> result = new RedisFuture<Boolean>();
+
+        if(expiryInterval > 0 && this.storeManager.isScripting()) {
+            final RedisScript script = RedisStoreManager.HSET_EXPIRE_SCRIPT;
+            final byte[] rawExpiry = Protocol.toByteArray(expiryInterval);
+            final RedisFuture<Object> reply = connection.send(Protocol.Command.EVALSHA,
+                    script.getRawSha(), ONE, rawKey, rawField, value, rawExpiry, overwrite ? ONE : ZERO);
+            reply.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final Throwable failure = reply.getFailure();
+                    if(failure instanceof Exception && RedisScript.isNoScript((Exception) failure)) {
+                        // Redis does not know the script, e.g. after a restart. Sending the whole script instead.
+                        final RedisFuture<Object> evalReply = connection.send(Protocol.Command.EVAL,
+                                script.getRawScript(), ONE, rawKey, rawField, value, rawExpiry, overwrite ? ONE : ZERO);
+                        evalReply.addListener(new Runnable() {
+                            @Override
+                            public void run() {
+                                completeScript(evalReply, result);
+                            }
+                        });
+                    } else {
+                        completeScript(reply, result);
+                    }
+                }
+            });
+            return result;
+        }
+
+        final RedisFuture<Object> reply = connection.send(overwrite ? Protocol.Command.HSET : Protocol.Command.HSETNX, rawKey, rawField, value);
+        reply.addListener(new Runnable() {
+            @Override
+            public void run() {
+                final boolean set;
+                try {
+                    set = overwrite || !Long.valueOf(0L).equals(reply.await(0));
+                } catch (RuntimeException e) {
+                    result.fail(e);
+                    return;
+                }
+                if(!set || expiryInterval <= 0) {
+                    result.complete(set);
+                    return;
+                }
+
+                final RedisFuture<Object> expireReply = connection.send(Protocol.Command.EXPIRE, rawKey, Protocol.toByteArray(expiryInterval));
+                expireReply.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            expireReply.await(0);
+                            result.complete(Boolean.TRUE);
+                        } catch (RuntimeException e) {
+                            result.fail(e);
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    private static void completeScript(final RedisFuture<Object> reply, final RedisFuture<Boolean> result) {
+        try {
+            result.complete(!Long.valueOf(0L).equals(reply.await(0)));
+        } catch (RuntimeException e) {
+            result.fail(e);
+        }
+    }
+
+    @Override
+    public RedisFuture<Set<String>> hsetnx(final String field, final Map<String, byte[]> values, final int expiryInterval) {
+        final Set<String> set = Collections.synchronizedSet(new HashSet<String>());
+        if(values.isEmpty()) {
+            return RedisFuture.completed(set);
+        }
+
+        // The commands of concurrent calls are pipelined anyway, hence one call per hash.
+        final RedisFuture<Set<String>> result = new RedisFuture<Set<String>>();
+        final AtomicInteger remaining = new AtomicInteger(values.size());
+        for(final Map.Entry<String, byte[]> entry : values.entrySet()) {
+            final RedisFuture<Boolean> reply = hset(entry.getKey(), field, entry.getValue(), false, expiryInterval);
+            reply.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if(reply.await(0)) {
+                            set.add(entry.getKey());
+                        }
+                    } catch (RuntimeException e) {
+                        result.fail(e);
+                    }
+                    if(remaining.decrementAndGet() == 0) {
+                        result.complete(set);
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RedisFuture<Map<String, Map<String, byte[]>>> loadRawData(final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval) {
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        if(keys == null || keys.isEmpty()) {
+            return RedisFuture.completed(data);
+        }
+
+        final byte[][] rawFields = new byte[fields.size()][];
+        for(int i = 0; i < rawFields.length; i++) {
+            rawFields[i] = SafeEncoder.encode(fields.get(i));
+        }
+
+        // All the commands on the same connection, hence pipelined with each other.
+        final MultiplexedRedisConnection connection = nextConnection();
+        final List<RedisFuture<Object>> replies = new ArrayList<RedisFuture<Object>>();
+        final List<RedisFuture<Object>> hashes = new ArrayList<RedisFuture<Object>>(keys.size());
+        final List<RedisFuture<Object>> fieldNames = new ArrayList<RedisFuture<Object>>(keys.size());
+        final List<RedisFuture<Object>> fieldValues = new ArrayList<RedisFuture<Object>>(keys.size());
+        for(String key : keys) {
+            final byte[] rawKey = SafeEncoder.encode(key);
+            RedisFuture<Object> hash = null;
+            RedisFuture<Object> names = null;
+            RedisFuture<Object> values = null;
+            if(partialKeys.contains(key)) {
+                names = connection.send(Protocol.Command.HKEYS, rawKey);
+                replies.add(names);
+                if(rawFields.length > 0) {
+                    final byte[][] args = new byte[rawFields.length + 1][];
+                    args[0] = rawKey;
+                    System.arraycopy(rawFields, 0, args, 1, rawFields.length);
+                    values = connection.send(Protocol.Command.HMGET, args);
+                    replies.add(values);
+                }
+            } else {
+                hash = connection.send(Protocol.Command.HGETALL, rawKey);
+                replies.add(hash);
+            }
+            hashes.add(hash);
+            fieldNames.add(names);
+            fieldValues.add(values);
+            if(expiryInterval > 0) {
+                replies.add(connection.send(Protocol.Command.EXPIRE, rawKey, Protocol.toByteArray(expiryInterval)));
+            }
+        }
+
+        final RedisFuture<Map<String, Map<String, byte[]>>> result = new RedisFuture<Map<String, Map<String, byte[]>>>();
+        final AtomicInteger remaining = new AtomicInteger(replies.size());
+        final Runnable onReply = new Runnable() {
+            @Override
+            public void run() {
+                if(remaining.decrementAndGet() != 0) {
+                    return;
+                }
+                try {
+                    for(RedisFuture<Object> reply : replies) {
+                        reply.await(0);
+                    }
+                    for(int i = 0; i < keys.size(); i++) {
+                        final Map<String, byte[]> fieldsLoaded = new HashMap<String, byte[]>();
+                        if(hashes.get(i) != null) {
+                            final List<byte[]> rawData = (List<byte[]>) hashes.get(i).await(0);
+                            for(int j = 0; j + 1 < rawData.size(); j += 2) {
+                                fieldsLoaded.put(SafeEncoder.encode(rawData.get(j)), rawData.get(j + 1));
+                            }
+                        } else {
+                            for(byte[] name : (List<byte[]>) fieldNames.get(i).await(0)) {
+                                fieldsLoaded.put(SafeEncoder.encode(name), null);
+                            }
+                            if(fieldValues.get(i) != null) {
+                                final List<byte[]> values = (List<byte[]>) fieldValues.get(i).await(0);
+                                for(int j = 0; j < rawFields.length; j++) {
+                                    if(values.get(j) != null) {
+                                        fieldsLoaded.put(fields.get(j), values.get(j));
+                                    }
+                                }
+                            }
+                        }
+                        data.put(keys.get(i), fieldsLoaded.isEmpty() ? null : fieldsLoaded);
+                    }
+                    result.complete(data);
+                } catch (RuntimeException e) {
+                    result.fail(e);
+                }
+            }
+        };
+        for(RedisFuture<Object> reply : replies) {
+            reply.addListener(onReply);
+        }
+        return result;
+    }
+
+    @Override
+    public RedisFuture<byte[]> loadRawField(final String key, final String field) {
+        final RedisFuture<Object> reply = nextConnection().send(Protocol.Command.HGET, SafeEncoder.encode(key), SafeEncoder.encode(field));
+        final RedisFuture<byte[]> result = new RedisFuture<byte[]>();
+        reply.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.complete((byte[]) reply.await(0));
+                } catch (RuntimeException e) {
+                    result.fail(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Set<RedisCommand> execute(final List<RedisCommand> commands) {
+        // The executors are few and each flushes a whole pipeline, hence do not gain from sharing a connection.
+        return this.pooled.execute(commands);
+    }
+
+    @Override
+    public void close() {
+        for(MultiplexedRedisConnection connection : this.connections) {
+            connection.close();
+        }
+    }
+
+    private MultiplexedRedisConnection nextConnection() {
+        return this.connections[(this.cursor.getAndIncrement() & Integer.MAX_VALUE) % this.connections.length];
+    }
+}
@@ -0,0 +1,300 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.RedisInputStream;
+import redis.clients.util.RedisOutputStream;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection to the redis master shared by any number of threads, none of which blocks on the socket.
+ * <p>
+ * The commands are queued and written by a dedicated writer thread, which writes whatever has been queued meanwhile with a single flush.
+ * Hence the commands of concurrent threads are pipelined automatically. The replies, which redis sends in the order of the commands,
+ * are read by a dedicated reader thread completing the <code>RedisFuture</code> of each command in turn.
+ * <p>
+ * Once the socket fails, the commands awaiting their replies fail and the connection is established again for the next commands.
+ */
+class MultiplexedRedisConnection implements Runnable {
+    private static final Log LOG = LogFactory.getLog(MultiplexedRedisConnection.class);
+
+    /**
+     * Maximum number of commands written with a single flush.
+     */
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long POLL_INTERVAL = 1000L;
+
+    private final RedisStoreManager storeManager;
+    private final String name;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * Socket in use, only ever replaced by the writer thread.
+     */
+    private volatile Channel channel;
+
+    MultiplexedRedisConnection(final RedisStoreManager storeManager, final String name) {
+        this.storeManager = storeManager;
+        this.name = name;
+
+        this.writer = new Thread(this, name + "-writer");
+        this.writer.setDaemon(true);
+    }
+
+    void start() {
+        this.writer.start();
+    }
+
+    /**
+     * Queues the command to be written.
+     *
+     * @param command Command to be sent.
+     * @param args Arguments of the command.
+     * @return Reply of the command. Fails with a <code>JedisDataException</code> upon an error reply,
+     * and with a <code>JedisConnectionException</code> if the connection fails.
+     */
+    RedisFuture<Object> send(final Protocol.Command command, final byte[]... args) {
+        final Request request = new Request(command, args);
+        if(!this.running) {
+            request.reply.fail(new JedisConnectionException("Connection " + this.name + " is closed"));
+            return request.reply;
+        }
+
+        this.queue.add(request);
+        if(!this.running) {
+            // Closed meanwhile. Not to be left waiting in the queue.
+            failAll(this.queue, new JedisConnectionException("Connection " + this.name + " is closed"));
+        }
+        return request.reply;
+    }
+
+    /**
+     * Closes the socket. The commands not yet replied to fail.
+     */
+    void close() {
+        this.running = false;
+        this.writer.interrupt();
+        final Channel channel = this.channel;
+        if(channel != null) {
+            channel.disconnect(new JedisConnectionException("Connection " + this.name + " is closed"));
+        }
+        failAll(this.queue, new JedisConnectionException("Connection " + this.name + " is closed"));
+    }
+
+    @Override
+    public void run() {
+        final List<Request> batch = new ArrayList<Request>();
+        while (this.running) {
+            try {
+                final Request first = this.queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // Do nothing to prevent anything untoward from happening. The failure has been handed to the requests.
+            } finally {
+                batch.clear();
+            }
+        }
+        final Channel channel = this.channel;
+        if(channel != null) {
+            channel.disconnect(new JedisConnectionException("Connection " + this.name + " is closed"));
+        }
+        failAll(this.queue, new JedisConnectionException("Connection " + this.name + " is closed"));
+    }
+
+    private void write(final List<Request> batch) {
+        Channel channel = this.channel;
+        if(channel == null || channel.broken) {
+            try {
+                channel = connect();
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to connect " + this.name + " to redis", e);
+                failAll(batch, e);
+                return;
+            }
+            this.channel = channel;
+        }
+
+        // Queued as in flight before writing, as the replies may be read before the write returns.
+        channel.inFlight.addAll(batch);
+        try {
+            for(Request request : batch) {
+                Protocol.sendCommand(channel.out, request.command, request.args);
+            }
+            channel.out.flush();
+        } catch (IOException e) {
+            channel.disconnect(new JedisConnectionException(e));
+        } catch (JedisConnectionException e) {
+            channel.disconnect(e);
+        }
+        if(channel.broken) {
+            // Disconnected while writing, possibly after the reader failed the requests then in flight.
+            failAll(channel.inFlight, new JedisConnectionException("Connection " + this.name + " to redis lost"));
+        }
+    }
+
+    private Channel connect() {
+        final HostAndPort master = this.storeManager.getMaster();
+        final Socket socket = new Socket();
+        try {
+            socket.setReuseAddress(true);
+            socket.setKeepAlive(true);
+            socket.setTcpNoDelay(true);
+            socket.setSoLinger(true, 0);
+            socket.connect(new InetSocketAddress(master.getHost(), master.getPort()), this.storeManager.getTimeout());
+            // The handshake is read by the writer, which must not hang on a server accepting the connection yet not replying.
+            socket.setSoTimeout(this.storeManager.getTimeout());
+
+            final Channel channel = new Channel(socket, new RedisOutputStream(socket.getOutputStream()), new RedisInputStream(socket.getInputStream()));
+            if(this.storeManager.getPassword() != null) {
+                channel.call(Protocol.Command.AUTH, SafeEncoder.encode(this.storeManager.getPassword()));
+            }
+            if(this.storeManager.getDatabase() != 0) {
+                channel.call(Protocol.Command.SELECT, Protocol.toByteArray(this.storeManager.getDatabase()));
+            }
+
+            // The reader blocks until the next reply. The callers time out on their own.
+            socket.setSoTimeout(0);
+            final Thread reader = new Thread(channel, this.name + "-reader");
+            reader.setDaemon(true);
+            reader.start();
+            if(LOG.isDebugEnabled()) { LOG.debug("Connected " + this.name + " to redis " + master); }
+            return channel;
+        } catch (Exception e) {
+            try {
+                socket.close();
+            } catch (Exception ce) {
+                // Do nothing to prevent anything untoward from happening
+            }
+            if(e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new JedisConnectionException(e);
+        }
+    }
+
+    private static void failAll(final Queue<Request> requests, final Exception failure) {
+        Request request;
+        while ((request = requests.poll()) != null) {
+            request.reply.fail(failure);
+        }
+    }
+
+    private static void failAll(final List<Request> requests, final Exception failure) {
+        for(Request request : requests) {
+            request.reply.fail(failure);
+        }
+    }
+
+    private static final class Request {
+        private final Protocol.Command command;
+        private final byte[][] args;
+        private final RedisFuture<Object> reply = new RedisFuture<Object>();
+
+        private Request(final Protocol.Command command, final byte[][] args) {
+            this.command = command;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Socket along with the requests written to it and awaiting their replies, in order.
+     * Runs as the reader of the replies.
+     */
+    private final class Channel implements Runnable {
+        private final Socket socket;
+        private final RedisOutputStream out;
+        private final RedisInputStream in;
+        private final Queue<Request> inFlight = new ConcurrentLinkedQueue<Request>();
+
+        private volatile boolean broken;
+
+        private Channel(final Socket socket, final RedisOutputStream out, final RedisInputStream in) {
+            this.socket = socket;
+            this.out = out;
+            this.in = in;
+        }
+
+        /**
+         * Sends a command and reads its reply on the calling thread, before the reader is started.
+         */
+        private Object call(final Protocol.Command command, final byte[]... args) {
+            Protocol.sendCommand(this.out, command, args);
+            try {
+                this.out.flush();
+            } catch (IOException e) {
+                throw new JedisConnectionException(e);
+            }
+            return Protocol.read(this.in);
+        }
+
+        @Override
+        public void run() {
+            while (!this.broken) {
+                final Object reply;
+                try {
+                    reply = Protocol.read(this.in);
+                } catch (JedisConnectionException e) {
+                    disconnect(e);
+                    return;
+                } catch (JedisDataException e) {
+                    // Error reply, of which the whole line has been read.
+                    final Request request = this.inFlight.poll();
+                    if(request != null) {
+                        request.reply.fail(e);
+                    }
+                    continue;
+                } catch (RuntimeException e) {
+                    disconnect(new JedisConnectionException(e));
+                    return;
+                }
+
+                final Request request = this.inFlight.poll();
+                if(request == null) {
+                    disconnect(new JedisConnectionException("Unexpected reply from redis on " + MultiplexedRedisConnection.this.name));
+                    return;
+                }
+                request.reply.complete(reply);
+            }
+        }
+
+        private void disconnect(final JedisConnectionException cause) {
+            if(!this.broken) {
+                this.broken = true;
+                if(MultiplexedRedisConnection.this.running) {
+                    LOG.warn("Connection " + MultiplexedRedisConnection.this.name + " to redis lost", cause);
+                }
+                try {
+                    this.socket.close();
+                } catch (Exception e) {
+                    // Do nothing to prevent anything untoward from happening
+                }
+            }
+            failAll(this.inFlight, cause);
+        }
+    }
+}
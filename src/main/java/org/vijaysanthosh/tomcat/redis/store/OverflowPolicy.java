@@ -0,0 +1,46 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.catalina.LifecycleException;
+
+/**
+ * What to do with a batch of <code>RedisCommand</code>s when the queue of its executor is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Blocks the caller until the queue has room, up to the overflow timeout. The batch is dropped on timeout.
+     */
+    BLOCK("block"),
+    /**
+     * Appends the batch to the last queued batch of its mailbox if it has not started yet. Blocks otherwise.
+     */
+    COALESCE("coalesce"),
+    /**
+     * Drops the batch if it only resets expiries, otherwise makes room by dropping a queued batch which only resets expiries.
+     * Blocks if there is none. The expiries are reset again on the next access of the <code>Session</code>s.
+     */
+    DROP_EXPIRY("dropExpiry");
+
+    private final String name;
+
+    OverflowPolicy(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name Name of the policy as configured, e.g. <code>dropExpiry</code>.
+     * @return Matching <code>OverflowPolicy</code>.
+     * @throws LifecycleException If no policy has the name.
+     */
+    public static OverflowPolicy getPolicy(final String name) throws LifecycleException {
+        for(OverflowPolicy policy : values()) {
+            if(policy.name.equals(name)) {
+                return policy;
+            }
+        }
+        throw new LifecycleException("Unknown overflow policy " + name + ". Expected one of block, coalesce or dropExpiry");
+    }
+}
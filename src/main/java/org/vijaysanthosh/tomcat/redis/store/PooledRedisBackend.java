@@ -0,0 +1,450 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+
+/**
+ * <code>RedisBackend</code> executing each call on a connection borrowed from the pool of the <code>RedisStoreManager</code>,
+ * blocking the calling thread for the whole round trip. The replies are hence always completed upon return.
+ * Supports a redis cluster, pipelining the commands per node.
+ */
+class PooledRedisBackend implements RedisBackend {
+    private static final Log LOG = LogFactory.getLog(PooledRedisBackend.class);
+
+    private final RedisStoreManager storeManager;
+
+    PooledRedisBackend(final RedisStoreManager storeManager) {
+        this.storeManager = storeManager;
+    }
+
+    @Override
+    public RedisFuture<Boolean> hset(final String key, final String field, final byte[] value, final boolean overwrite, final int expiryInterval) {
+        try {
+            try {
+                return RedisFuture.completed(hsetOnce(key, field, value, overwrite, expiryInterval));
+            } catch (JedisMovedDataException e) {
+                // The slot of the key has moved to another node of the cluster. Retrying once on that node.
+                if(!this.storeManager.isCluster()) {
+                    throw e;
+                }
+                this.storeManager.refreshSlots();
+                return RedisFuture.completed(hsetOnce(key, field, value, overwrite, expiryInterval));
+            }
+        } catch (RuntimeException e) {
+            return RedisFuture.failed(e);
+        }
+    }
+
+    private boolean hsetOnce(final String key, final String field, final byte[] value, final boolean overwrite, final int expiryInterval) {
+        // This has to be synchronous call
+        // Hence getting Jedis instance and operating on it.
+        final Jedis jedis = this.storeManager.acquireConnection(key);
+        try {
+            final byte[] rawKey = SafeEncoder.encode(key);
+            if(expiryInterval > 0 && this.storeManager.isScripting()) {
+                final Object result = RedisStoreManager.HSET_EXPIRE_SCRIPT.eval(jedis,
+                        Collections.singletonList(rawKey),
+                        Arrays.asList(SafeEncoder.encode(field), value, SafeEncoder.encode(String.valueOf(expiryInterval)), SafeEncoder.encode(overwrite ? "1" : "0")));
+                return !Long.valueOf(0L).equals(result);
+            }
+
+            final boolean set;
+            if(overwrite) {
+                jedis.hset(rawKey, SafeEncoder.encode(field), value);
+                set = true;
+            } else {
+                set = jedis.hsetnx(rawKey, SafeEncoder.encode(field), value) != 0L;
+            }
+            if(set && expiryInterval > 0) {
+                jedis.expire(rawKey, expiryInterval);
+            }
+            return set;
+        } finally {
+            this.storeManager.returnConnection(jedis);
+        }
+    }
+
+    @Override
+    public RedisFuture<Set<String>> hsetnx(final String field, final Map<String, byte[]> values, final int expiryInterval) {
+        final Set<String> set = new HashSet<String>();
+        if(values.isEmpty()) {
+            return RedisFuture.completed(set);
+        }
+
+        try {
+            // A pipeline per node, in a single round trip when not in cluster mode.
+            for(List<String> nodeKeys : this.storeManager.groupByNode(new ArrayList<String>(values.keySet()))) {
+                try {
+                    hsetnx(nodeKeys, field, values, expiryInterval, set);
+                } catch (JedisMovedDataException e) {
+                    // The slots have moved to other nodes of the cluster. Retrying once with the new assignment.
+                    if(!this.storeManager.isCluster()) {
+                        throw e;
+                    }
+                    this.storeManager.refreshSlots();
+                    for(List<String> movedKeys : this.storeManager.groupByNode(nodeKeys)) {
+                        hsetnx(movedKeys, field, values, expiryInterval, set);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            return RedisFuture.failed(e);
+        }
+        return RedisFuture.completed(set);
+    }
+
+    /**
+     * Sets the field of the hashes of the same node in a single pipeline, or two without scripting: the expiries are reset
+     * only once it is known which fields have been set.
+     */
+    private void hsetnx(final List<String> keys, final String field, final Map<String, byte[]> values, final int expiryInterval, final Set<String> set) {
+        final byte[] rawField = SafeEncoder.encode(field);
+        final byte[] rawExpiry = SafeEncoder.encode(String.valueOf(expiryInterval));
+        final boolean scripted = expiryInterval > 0 && this.storeManager.isScripting();
+
+        final Jedis jedis = this.storeManager.acquireConnection(keys.get(0));
+        try {
+            final Pipeline pipeline = jedis.pipelined();
+            final List<Response<?>> responses = new ArrayList<Response<?>>(keys.size());
+            for(String key : keys) {
+                final byte[] rawKey = SafeEncoder.encode(key);
+                responses.add(scripted
+                        ? RedisStoreManager.HSET_EXPIRE_SCRIPT.queue(pipeline, Collections.singletonList(rawKey), Arrays.asList(rawField, values.get(key), rawExpiry, SafeEncoder.encode("0")))
+                        : pipeline.hsetnx(rawKey, rawField, values.get(key)));
+            }
+            pipeline.sync();
+
+            final List<String> expiring = new ArrayList<String>();
+            for(int i = 0; i < keys.size(); i++) {
+                Object result;
+                try {
+                    result = responses.get(i).get();
+                } catch (RuntimeException e) {
+                    if(!RedisScript.isNoScript(e)) {
+                        throw e;
+                    }
+                    // Redis has lost the script, e.g. after a restart. Executing it directly loads it again.
+                    result = RedisStoreManager.HSET_EXPIRE_SCRIPT.eval(jedis, Collections.singletonList(SafeEncoder.encode(keys.get(i))),
+                            Arrays.asList(rawField, values.get(keys.get(i)), rawExpiry, SafeEncoder.encode("0")));
+                }
+                if(!Long.valueOf(0L).equals(result)) {
+                    set.add(keys.get(i));
+                    if(!scripted && expiryInterval > 0) {
+                        expiring.add(keys.get(i));
+                    }
+                }
+            }
+
+            if(!expiring.isEmpty()) {
+                final Pipeline expiryPipeline = jedis.pipelined();
+                for(String key : expiring) {
+                    expiryPipeline.expire(SafeEncoder.encode(key), expiryInterval);
+                }
+                expiryPipeline.sync();
+            }
+        } finally {
+            this.storeManager.returnConnection(jedis);
+        }
+    }
+
+    @Override
+    public RedisFuture<Map<String, Map<String, byte[]>>> loadRawData(final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval) {
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        if(keys == null || keys.isEmpty()) {
+            return RedisFuture.completed(data);
+        }
+
+        try {
+            // A pipeline per node, in a single round trip when not in cluster mode.
+            for(List<String> nodeKeys : this.storeManager.groupByNode(keys)) {
+                try {
+                    loadRawData(nodeKeys, partialKeys, fields, expiryInterval, data);
+                } catch (JedisMovedDataException e) {
+                    // The slots have moved to other nodes of the cluster. Retrying once with the new assignment.
+                    if(!this.storeManager.isCluster()) {
+                        throw e;
+                    }
+                    this.storeManager.refreshSlots();
+                    for(List<String> movedKeys : this.storeManager.groupByNode(nodeKeys)) {
+                        loadRawData(movedKeys, partialKeys, fields, expiryInterval, data);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            return RedisFuture.failed(e);
+        }
+        return RedisFuture.completed(data);
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys of the same node in a single pipeline.
+     */
+    private void loadRawData(final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval, final Map<String, Map<String, byte[]>> data) {
+        final Jedis jedis = this.storeManager.acquireConnection(keys.get(0));
+        try {
+            loadRawData(jedis, keys, partialKeys, fields, expiryInterval, data);
+        } finally {
+            this.storeManager.returnConnection(jedis);
+        }
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys in a single pipeline over the given connection.
+     *
+     * @param jedis Connection to be used, of the master or of a replica.
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param partialKeys Keys, among the given keys, of the hash-maps to be loaded partially.
+     * @param fields Fields whose values are loaded from the partially loaded hash-maps.
+     * @param expiryInterval Expiry (in seconds) to be reset on each of the keys. Not reset if 0 or less.
+     * @param data Serialized hash-map per key, into which the hash-maps are loaded.
+     */
+    static void loadRawData(final Jedis jedis, final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval, final Map<String, Map<String, byte[]>> data) {
+        final byte[][] rawFields = new byte[fields.size()][];
+        for(int i = 0; i < rawFields.length; i++) {
+            rawFields[i] = SafeEncoder.encode(fields.get(i));
+        }
+
+        final List<Response<Map<byte[], byte[]>>> responses = new ArrayList<Response<Map<byte[], byte[]>>>(keys.size());
+        final Map<String, Response<Set<byte[]>>> fieldNames = new HashMap<String, Response<Set<byte[]>>>();
+        final Map<String, Response<List<byte[]>>> fieldValues = new HashMap<String, Response<List<byte[]>>>();
+        final Pipeline pipeline = jedis.pipelined();
+        for(String key : keys) {
+            final byte[] rawKey = SafeEncoder.encode(key);
+            if(partialKeys.contains(key)) {
+                responses.add(null);
+                fieldNames.put(key, pipeline.hkeys(rawKey));
+                if(rawFields.length > 0) {
+                    fieldValues.put(key, pipeline.hmget(rawKey, rawFields));
+                }
+            } else {
+                responses.add(pipeline.hgetAll(rawKey));
+            }
+            if(expiryInterval > 0) {
+                pipeline.expire(rawKey, expiryInterval);
+            }
+        }
+        pipeline.sync();
+
+        for(int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+            final Map<String, byte[]> fieldsLoaded = new HashMap<String, byte[]>();
+            if(responses.get(i) != null) {
+                final Map<byte[], byte[]> rawData = responses.get(i).get();
+                if(rawData != null) {
+                    for(Map.Entry<byte[], byte[]> rawEntry : rawData.entrySet()) {
+                        fieldsLoaded.put(SafeEncoder.encode(rawEntry.getKey()), rawEntry.getValue());
+                    }
+                }
+            } else {
+                final Set<byte[]> names = fieldNames.get(key).get();
+                if(names != null) {
+                    for(byte[] name : names) {
+                        fieldsLoaded.put(SafeEncoder.encode(name), null);
+                    }
+                }
+                if(fieldValues.get(key) != null) {
+                    final List<byte[]> values = fieldValues.get(key).get();
+                    for(int j = 0; j < rawFields.length; j++) {
+                        if(values.get(j) != null) {
+                            fieldsLoaded.put(fields.get(j), values.get(j));
+                        }
+                    }
+                }
+            }
+            data.put(key, fieldsLoaded.isEmpty() ? null : fieldsLoaded);
+        }
+    }
+
+    @Override
+    public RedisFuture<byte[]> loadRawField(final String key, final String field) {
+        try {
+            try {
+                return RedisFuture.completed(loadRawFieldOnce(key, field));
+            } catch (JedisMovedDataException e) {
+                // The slot of the key has moved to another node of the cluster. Retrying once on that node.
+                if(!this.storeManager.isCluster()) {
+                    throw e;
+                }
+                this.storeManager.refreshSlots();
+                return RedisFuture.completed(loadRawFieldOnce(key, field));
+            }
+        } catch (RuntimeException e) {
+            return RedisFuture.failed(e);
+        }
+    }
+
+    private byte[] loadRawFieldOnce(final String key, final String field) {
+        final Jedis jedis = this.storeManager.acquireConnection(key);
+        try {
+            return jedis.hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+        } finally {
+            this.storeManager.returnConnection(jedis);
+        }
+    }
+
+    @Override
+    public Set<RedisCommand> execute(final List<RedisCommand> commands) {
+        final Set<RedisCommand> changed = Collections.newSetFromMap(new IdentityHashMap<RedisCommand, Boolean>());
+        // A connection, and a pipeline, per node of the cluster. A single one otherwise.
+        for(List<RedisCommand> nodeCommands : this.storeManager.groupCommandsByNode(commands)) {
+            final Jedis jedis = this.storeManager.acquireConnection(nodeCommands.get(0).getKey());
+            try {
+                if(this.storeManager.isPipelined()) {
+                    executePipelined(nodeCommands, jedis, changed);
+                } else {
+                    for(RedisCommand command : nodeCommands) {
+                        if(isChanged(command, executeCommand(command, jedis))) {
+                            changed.add(command);
+                        }
+                    }
+                }
+            } finally {
+                this.storeManager.returnConnection(jedis);
+            }
+        }
+        return changed;
+    }
+
+    private void executePipelined(final List<RedisCommand> commands, final Jedis jedis, final Set<RedisCommand> changed) {
+        // The commands are written in order on a single connection, hence the ordering within a session is retained.
+        // The replies are read back in one go and the failures are reported per command.
+        final Pipeline pipeline = jedis.pipelined();
+        final List<Response<?>> responses = new ArrayList<Response<?>>(commands.size());
+        for(RedisCommand command : commands) {
+            responses.add(queueCommand(command, pipeline));
+        }
+
+        try {
+            pipeline.sync();
+        } catch (Exception e) {
+            LOG.error("Error executing pipeline of " + commands.size() + " RedisCommands", e);
+            this.storeManager.getMetrics().recordCommandErrors(commands.size());
+            return;
+        }
+
+        for(int i = 0; i < responses.size(); i++) {
+            final Response<?> response = responses.get(i);
+            if(response != null) {
+                Object reply = null;
+                try {
+                    reply = response.get();
+                } catch (Exception e) {
+                    if(RedisScript.isNoScript(e)) {
+                        // Redis has lost the script, e.g. after a restart. Executing it directly loads it again.
+                        reply = executeCommand(commands.get(i), jedis);
+                    } else if(e instanceof JedisMovedDataException && this.storeManager.isCluster()) {
+                        reply = executeMoved(commands.get(i));
+                    } else {
+                        LOG.error("Error executing RedisCommand " + commands.get(i), e);
+                        this.storeManager.getMetrics().recordCommandErrors(1);
+                    }
+                }
+                if(isChanged(commands.get(i), reply)) {
+                    changed.add(commands.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param command Executed <code>RedisCommand</code>.
+     * @param reply Reply of redis. null if failed.
+     * @return true if the reply confirms the key has been changed. An HSET always changes it, while an HDEL or a DEL may find nothing to remove.
+     */
+    private static boolean isChanged(final RedisCommand command, final Object reply) {
+        switch (command.getCommand()) {
+            case HSET:
+                return reply != null;
+            case HDEL:
+            case DEL:
+                return reply instanceof Long && (Long) reply > 0L;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Executes a <code>RedisCommand</code> whose slot has moved to another node of the cluster, e.g. on resharding.
+     *
+     * @return Reply of redis. null if failed.
+     */
+    private Object executeMoved(final RedisCommand command) {
+        this.storeManager.refreshSlots();
+        final Jedis jedis = this.storeManager.acquireConnection(command.getKey());
+        try {
+            return executeCommand(command, jedis);
+        } finally {
+            this.storeManager.returnConnection(jedis);
+        }
+    }
+
+    private Response<?> queueCommand(final RedisCommand command, final Pipeline pipeline) {
+        try {
+            if(LOG.isDebugEnabled()) { LOG.debug("Pipelining RedisCommand " + command); }
+            switch (command.getCommand()) {
+                case DEL:
+                    return pipeline.del(SafeEncoder.encode(command.getKey()));
+                case HSET:
+                    return pipeline.hset(SafeEncoder.encode(command.getKey()), SafeEncoder.encode(command.getField()), this.storeManager.serialize(command));
+                case HDEL:
+                    return pipeline.hdel(SafeEncoder.encode(command.getKey()), SafeEncoder.encode(command.getField()));
+                case EXPIRY:
+                    return pipeline.expire(SafeEncoder.encode(command.getKey()), command.getExpiryInterval());
+                case TOUCH:
+                    return RedisStoreManager.TOUCH_SCRIPT.queue(pipeline, encode(command.getKeys()), Collections.singletonList(SafeEncoder.encode(String.valueOf(command.getExpiryInterval()))));
+            }
+        } catch (Exception e) {
+            LOG.error("Error executing RedisCommand " + command, e);
+            this.storeManager.getMetrics().recordCommandErrors(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Reply of redis. null if failed.
+     */
+    private Object executeCommand(final RedisCommand command, final Jedis jedis) {
+        try {
+            if(LOG.isDebugEnabled()) { LOG.debug("Executing RedisCommand " + command); }
+            switch (command.getCommand()) {
+                case DEL:
+                    return jedis.del(SafeEncoder.encode(command.getKey()));
+                case HSET:
+                    return jedis.hset(SafeEncoder.encode(command.getKey()), SafeEncoder.encode(command.getField()), this.storeManager.serialize(command));
+                case HDEL:
+                    return jedis.hdel(SafeEncoder.encode(command.getKey()), SafeEncoder.encode(command.getField()));
+                case EXPIRY:
+                    return jedis.expire(SafeEncoder.encode(command.getKey()), command.getExpiryInterval());
+                case TOUCH:
+                    return RedisStoreManager.TOUCH_SCRIPT.eval(jedis, encode(command.getKeys()), Collections.singletonList(SafeEncoder.encode(String.valueOf(command.getExpiryInterval()))));
+            }
+
+        } catch (Exception e) {
+            LOG.error("Error executing RedisCommand " + command, e);
+            this.storeManager.getMetrics().recordCommandErrors(1);
+        }
+        return null;
+    }
+
+    private static List<byte[]> encode(final List<String> keys) {
+        final List<byte[]> encoded = new ArrayList<byte[]>(keys.size());
+        for(String key : keys) {
+            encoded.add(SafeEncoder.encode(key));
+        }
+        return encoded;
+    }
+
+    @Override
+    public void close() {
+        // The connections belong to the pool of the RedisStoreManager.
+    }
+}
@@ -0,0 +1,75 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store behind the <code>RedisStoreManager</code>: executes the commands issued by the request threads, i.e. registering the session ids
+ * and loading the sessions, as well as the <code>RedisCommand</code>s flushed by the executors.
+ * <p>
+ * Selected with the <code>backend</code> attribute: "pooled" blocks the calling thread on a pooled connection for the whole round trip,
+ * "multiplexed" shares a few connections between all the threads, refer to <code>MultiplexedRedisBackend</code>,
+ * and "memory" keeps the data in this JVM without any redis, refer to <code>InMemoryRedisBackend</code>.
+ */
+public interface RedisBackend {
+
+    /**
+     * Sets the field of the hash, resetting the expiry of the hash if the field is set.
+     *
+     * @param key Key of the hash.
+     * @param field Field to be set.
+     * @param value Serialized value to be set.
+     * @param overwrite Whether an existing value of the field is to be overwritten.
+     * @param expiryInterval Expiry (in seconds) to be set on the hash. Not set if 0 or less.
+     * @return true if the field has been set.
+     */
+    RedisFuture<Boolean> hset(String key, String field, byte[] value, boolean overwrite, int expiryInterval);
+
+    /**
+     * Sets the field of each of the given hashes if absent, resetting the expiry of the hashes whose field is set.
+     * The hashes are set together, in a single round trip per node.
+     *
+     * @param field Field to be set.
+     * @param values Serialized value to be set, per key of the hash.
+     * @param expiryInterval Expiry (in seconds) to be set on the hashes. Not set if 0 or less.
+     * @return Keys of the hashes whose field has been set.
+     */
+    RedisFuture<Set<String>> hsetnx(String field, Map<String, byte[]> values, int expiryInterval);
+
+    /**
+     * Loads the hash-maps stored against the given keys, refer to <code>RedisStoreManager.loadRawData</code>.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param partialKeys Keys, among the given keys, of the hash-maps to be loaded partially.
+     * @param fields Fields whose values are loaded from the partially loaded hash-maps.
+     * @param expiryInterval Expiry (in seconds) to be reset on each of the keys. Not reset if 0 or less.
+     * @return Serialized hash-map per key. The value is null if nothing is stored against the key.
+     */
+    RedisFuture<Map<String, Map<String, byte[]>>> loadRawData(List<String> keys, Collection<String> partialKeys, List<String> fields, int expiryInterval);
+
+    /**
+     * @param key Key of the hash-map.
+     * @param field Field to be loaded.
+     * @return Serialized value. null if nothing is stored against the field.
+     */
+    RedisFuture<byte[]> loadRawField(String key, String field);
+
+    /**
+     * Executes a batch of <code>RedisCommand</code>s in order, blocking the calling executor until done.
+     * A failing <code>RedisCommand</code> is logged and counted by the metrics, and does not prevent the others from being executed.
+     *
+     * @param commands <code>RedisCommand</code>s to be executed.
+     * @return <code>RedisCommand</code>s which redis confirmed to have changed their key, hence to have published a keyspace notification,
+     * e.g. an HDEL which removed its field. Those which failed or whose outcome is unknown are left out.
+     */
+    Set<RedisCommand> execute(List<RedisCommand> commands);
+
+    /**
+     * Releases the connections. The commands not yet replied to fail.
+     */
+    void close();
+}
@@ -0,0 +1,56 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.Set;
+
+/**
+ * Connections to the nodes of a redis cluster, routed by the hash slot of the keys.
+ * Unlike <code>JedisCluster</code>, hands out the connection of a node so that the commands for the node can be pipelined.
+ */
+class RedisClusterConnectionHandler extends JedisSlotBasedConnectionHandler {
+
+    RedisClusterConnectionHandler(final Set<HostAndPort> nodes, final GenericObjectPoolConfig poolConfig, final int timeout) {
+        super(nodes, poolConfig, timeout);
+    }
+
+    /**
+     * @param key Key, whose hash tag, if any, decides the slot.
+     * @return Connection to the node serving the slot of the key. Has to be closed by the caller.
+     */
+    Jedis getConnection(final String key) {
+        return getConnectionFromSlot(JedisClusterCRC16.getSlot(key));
+    }
+
+    /**
+     * @param key Key, whose hash tag, if any, decides the slot.
+     * @return Pool of the node serving the slot of the key. null if no node is known to serve the slot.
+     */
+    JedisPool getNode(final String key) {
+        final int slot = JedisClusterCRC16.getSlot(key);
+        JedisPool pool = this.cache.getSlotPool(slot);
+        if(pool == null) {
+            renewSlotCache();
+            pool = this.cache.getSlotPool(slot);
+        }
+        return pool;
+    }
+
+    /**
+     * Closes the connections to all the nodes.
+     */
+    void close() {
+        for(JedisPool pool : getNodes().values()) {
+            try {
+                pool.destroy();
+            } catch (Exception e) {
+                // Do nothing to prevent anything untoward from happening
+            }
+        }
+    }
+}
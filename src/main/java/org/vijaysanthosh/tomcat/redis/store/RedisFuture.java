@@ -0,0 +1,169 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Reply of a redis command which is completed asynchronously, e.g. by the thread reading the replies of a connection.
+ * Listeners can be added to act upon the reply without blocking, in which case they are run by the completing thread and hence have to be quick.
+ *
+ * @param <T> Type of the reply.
+ */
+public class RedisFuture<T> implements Future<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private List<Runnable> listeners = new ArrayList<Runnable>(1);
+    private T value;
+    private Throwable failure;
+
+    /**
+     * @param value Reply.
+     * @return <code>RedisFuture</code> completed with the reply.
+     */
+    public static <T> RedisFuture<T> completed(final T value) {
+        final RedisFuture<T> future = new RedisFuture<T>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * @param failure Cause of the failure.
+     * @return <code>RedisFuture</code> completed with the failure.
+     */
+    public static <T> RedisFuture<T> failed(final Throwable failure) {
+        final RedisFuture<T> future = new RedisFuture<T>();
+        future.fail(failure);
+        return future;
+    }
+
+    /**
+     * Completes with the reply. Does nothing if already completed.
+     *
+     * @param value Reply.
+     * @return true if completed by this call.
+     */
+    public boolean complete(final T value) {
+        return finish(value, null);
+    }
+
+    /**
+     * Completes with a failure. Does nothing if already completed.
+     *
+     * @param failure Cause of the failure.
+     * @return true if completed by this call.
+     */
+    public boolean fail(final Throwable failure) {
+        return finish(null, failure);
+    }
+
+    /**
+     * Runs the listener once completed, right away if already completed.
+     *
+     * @param listener Listener to be run by the completing thread.
+     */
+    public void addListener(final Runnable listener) {
+        synchronized (this) {
+            if(this.listeners != null) {
+                this.listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * @return Cause of the failure. null if completed with a reply, or not yet completed.
+     */
+    public synchronized Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Waits for the reply, re-throwing the failure as it is if it is a <code>RuntimeException</code>.
+     *
+     * @param timeout Maximum time (in milliseconds) to wait. Waits indefinitely if 0 or less.
+     * @return Reply.
+     * @throws JedisConnectionException If not completed in time.
+     */
+    public T await(final long timeout) {
+        try {
+            if(timeout > 0) {
+                if(!this.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new JedisConnectionException("No reply from redis in " + timeout + " ms");
+                }
+            } else {
+                this.done.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException("Interrupted while waiting for the reply from redis");
+        }
+
+        synchronized (this) {
+            if(this.failure instanceof RuntimeException) {
+                throw (RuntimeException) this.failure;
+            } else if(this.failure != null) {
+                throw new IllegalStateException(this.failure);
+            }
+            return this.value;
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // A command once sent to redis cannot be cancelled.
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return getNow();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!this.done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getNow();
+    }
+
+    private synchronized T getNow() throws ExecutionException {
+        if(this.failure != null) {
+            throw new ExecutionException(this.failure);
+        }
+        return this.value;
+    }
+
+    private boolean finish(final T value, final Throwable failure) {
+        final List<Runnable> toRun;
+        synchronized (this) {
+            if(this.listeners == null) {
+                return false;
+            }
+            this.value = value;
+            this.failure = failure;
+            toRun = this.listeners;
+            this.listeners = null;
+        }
+        this.done.countDown();
+        for(Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+}
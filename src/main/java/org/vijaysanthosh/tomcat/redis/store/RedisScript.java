@@ -0,0 +1,105 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Lua script executed in redis through EVALSHA.
+ * The SHA1 digest of the script is computed locally and the script is loaded with SCRIPT LOAD whenever redis does not know it.
+ */
+public class RedisScript {
+
+    private static final String NOSCRIPT = "NOSCRIPT";
+
+    private final byte[] script;
+    private final String sha;
+    private final byte[] rawSha;
+
+    public RedisScript(String script) {
+        this.script = SafeEncoder.encode(script);
+        this.sha = sha1Hex(this.script);
+        this.rawSha = SafeEncoder.encode(this.sha);
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+    byte[] getRawSha() {
+        return rawSha;
+    }
+
+    byte[] getRawScript() {
+        return script;
+    }
+
+    /**
+     * Loads the script into the script cache of redis.
+     *
+     * @param jedis Connection to be used.
+     */
+    public void load(final Jedis jedis) {
+        jedis.scriptLoad(this.script);
+    }
+
+    /**
+     * Executes the script, loading it first if redis does not know it.
+     *
+     * @param jedis Connection to be used.
+     * @param keys Keys passed to the script.
+     * @param args Arguments passed to the script.
+     * @return Reply of the script.
+     */
+    public Object eval(final Jedis jedis, final List<byte[]> keys, final List<byte[]> args) {
+        try {
+            return jedis.evalsha(this.rawSha, keys, args);
+        } catch (JedisDataException e) {
+            if(!isNoScript(e)) {
+                throw e;
+            }
+            load(jedis);
+            return jedis.evalsha(this.rawSha, keys, args);
+        }
+    }
+
+    /**
+     * Queues the execution of the script in a pipeline.
+     * The reply fails with a NOSCRIPT error if redis does not know the script, refer to <code>isNoScript</code>.
+     *
+     * @param pipeline Pipeline to be used.
+     * @param keys Keys passed to the script.
+     * @param args Arguments passed to the script.
+     * @return Reply of the script.
+     */
+    public Response<Object> queue(final Pipeline pipeline, final List<byte[]> keys, final List<byte[]> args) {
+        return pipeline.evalsha(this.rawSha, keys, args);
+    }
+
+    /**
+     * @param e Exception raised while executing a script.
+     * @return true if the exception was raised since redis did not know the script.
+     */
+    public static boolean isNoScript(final Exception e) {
+        return e instanceof JedisDataException && e.getMessage() != null && e.getMessage().startsWith(NOSCRIPT);
+    }
+
+    private static String sha1Hex(final byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for(byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,8 +3,12 @@ package org.vijaysanthosh.tomcat.redis.store;
 import org.apache.catalina.LifecycleException;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.vijaysanthosh.tomcat.redis.metrics.RedisMetrics;
+import org.vijaysanthosh.tomcat.redis.serializer.CompressingSerializer;
+import org.vijaysanthosh.tomcat.redis.serializer.IBinarySerializer;
 import org.vijaysanthosh.tomcat.redis.serializer.ISerializer;
 import org.vijaysanthosh.tomcat.redis.serializer.SerializationException;
+import org.vijaysanthosh.tomcat.redis.serializer.StringSerializerAdapter;
 import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
 import org.vijaysanthosh.tomcat.redis.util.StringUtils;
 import redis.clients.jedis.*;
@@ -12,9 +16,10 @@ import redis.clients.util.Pool;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class RedisStoreManager {
 
@@ -22,12 +27,34 @@ public class RedisStoreManager {
 
     private static final String COMMA = ",";
 
+    /**
+     * Resets the expiry (ARGV[1]) of all the given keys atomically.
+     */
+    static final RedisScript TOUCH_SCRIPT = new RedisScript(
+            "for i = 1, #KEYS do redis.call('expire', KEYS[i], ARGV[1]) end " +
+            "return #KEYS");
+
+    /**
+     * Sets the field (ARGV[1]) of the hash (KEYS[1]) to the value (ARGV[2]) if absent, or always if ARGV[4] is 1,
+     * and resets the expiry (ARGV[3]) of the hash. Returns 0 if the field was present and has not been set, 1 otherwise.
+     */
+    static final RedisScript HSET_EXPIRE_SCRIPT = new RedisScript(
+            "if ARGV[4] == '1' then redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+            "elseif redis.call('hsetnx', KEYS[1], ARGV[1], ARGV[2]) == 0 then return 0 end " +
+            "redis.call('expire', KEYS[1], ARGV[3]) " +
+            "return 1");
+
     /**
      * Serializer initialization
      */
-    protected ISerializer serializer;
+    protected IBinarySerializer serializer;
     protected String serializationStrategyClass = "org.vijaysanthosh.tomcat.redis.serializer.JavaSerializer";
 
+    /**
+     * Minimum size (in bytes) of a serialized value to be compressed. Values are never compressed if 0.
+     */
+    protected int compressionThreshold = 0;
+
     protected String host = "localhost";
     protected int port = 6379;
     protected int database = 0;
@@ -38,14 +65,131 @@ public class RedisStoreManager {
     protected String sentinelMaster = null;
     protected Set<String> sentinelSet = null;
 
+    /**
+     * Nodes of the redis cluster to discover the cluster from, e.g. <code>host-1:port,host-2:port</code>. null unless in cluster mode.
+     */
+    protected String clusterNodes = null;
+    protected Set<HostAndPort> clusterNodeSet = null;
+
     protected Pool<Jedis> connectionPool;
+
+    /**
+     * Connections to the nodes of the redis cluster. null unless in cluster mode.
+     */
+    protected RedisClusterConnectionHandler clusterConnectionHandler;
+
     protected JedisPoolConfig connectionPoolConfig = new JedisPoolConfig();
 
-    protected ExecutorService[] executors = null;
+    /**
+     * Replicas of the redis master to load the sessions from, e.g. <code>host-1:port,host-2:port</code>. null if the sessions are loaded from the master.
+     */
+    protected String replicas = null;
+    protected Set<HostAndPort> replicaSet = null;
+
+    /**
+     * Maximum number of bytes of the replication stream a replica may be behind the master to be read from.
+     */
+    protected long replicaMaxLag = 65536L;
+
+    /**
+     * Interval (in milliseconds) at which the replication lag of the replicas is checked.
+     */
+    protected long replicaLagCheckInterval = 1000L;
+
+    protected List<JedisPool> replicaPools = null;
+
+    /**
+     * Replicas which were within <code>replicaMaxLag</code> of the master when last checked.
+     */
+    protected volatile List<JedisPool> freshReplicas = Collections.emptyList();
+    protected final AtomicInteger replicaCursor = new AtomicInteger();
+    protected ScheduledExecutorService replicaMonitor = null;
+
+    protected MailboxExecutor<PersistTask> executor = null;
     protected int executorPoolSize = Runtime.getRuntime().availableProcessors();
 
+    /**
+     * Maximum number of batches of <code>RedisCommand</code>s queued per executor queue, i.e. over the mailboxes <code>m</code>
+     * such that <code>m % executorPoolSize</code> is the index of the queue, whichever executors run them.
+     */
+    protected int executorQueueSize = 1000;
+
+    /**
+     * Number of mailboxes per executor queue. The sessions are hashed onto a fixed set of <code>executorPoolSize * executorMailboxes</code> mailboxes.
+     * The batches of a mailbox are executed in order, whereas any idle executor takes on any mailbox.
+     */
+    protected int executorMailboxes = 8;
+
+    /**
+     * Number of virtual threads running the mailboxes when <code>executorThreads</code> is "virtual", in place of <code>executorPoolSize</code>.
+     * Independent of the number of processors, as the virtual threads release their carrier thread while waiting on redis.
+     * There are then at least as many mailboxes, as a mailbox is run by a single thread at a time.
+     */
+    protected int virtualExecutorPoolSize = 256;
+
+    /**
+     * Kind of threads running the executors. Either "platform" or "virtual".
+     */
+    protected String executorThreadsName = ExecutorThreads.PLATFORM.getName();
+    protected ExecutorThreads executorThreads = ExecutorThreads.PLATFORM;
+
+    /**
+     * What to do with a batch of <code>RedisCommand</code>s when the queue of its executor is full.
+     */
+    protected String overflowPolicyName = OverflowPolicy.BLOCK.getName();
+    protected OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * Maximum time (in milliseconds) a caller is blocked waiting for room in a full queue, after which the batch is dropped.
+     */
+    protected long overflowTimeout = 1000L;
+
+    /**
+     * Last batch queued per mailbox, into which the later batches can be coalesced.
+     */
+    protected AtomicReferenceArray<PersistTask> lastTasks = null;
+
+    /**
+     * Highest number of batches seen queued per executor queue.
+     */
+    protected AtomicIntegerArray highWaterMarks = null;
+
+    /**
+     * Whether the <code>RedisCommand</code>s of a bucket are sent in a single pipeline instead of one round trip each.
+     */
+    protected boolean pipelined = true;
+
+    /**
+     * Whether Lua scripts are used to combine the commands which have to be executed together.
+     */
+    protected boolean scripting = true;
+
     protected ClassLoader classLoader = null;
 
+    /**
+     * Copy-on-write, as the executors notify the listeners of the subscribers after each batch.
+     */
+    protected final List<KeyspaceSubscriber> subscribers = new CopyOnWriteArrayList<KeyspaceSubscriber>();
+
+    protected final RedisMetrics metrics = new RedisMetrics();
+
+    /**
+     * Store behind the manager. Either "pooled", "multiplexed" or "memory".
+     */
+    protected String backendName = "pooled";
+
+    /**
+     * Number of connections shared by all the threads with the "multiplexed" backend.
+     */
+    protected int backendConnections = 1;
+
+    /**
+     * Simulated latency (in microseconds) of a round trip with the "memory" backend.
+     */
+    protected long backendLatency = 0L;
+
+    protected RedisBackend backend;
+
     public String getHost() {
         return host;
     }
@@ -54,6 +198,14 @@ public class RedisStoreManager {
         this.serializationStrategyClass = strategy;
     }
 
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public void setHost(String host) {
         this.host = host;
     }
@@ -112,14 +264,185 @@ public class RedisStoreManager {
         return this.sentinelSet;
     }
 
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+
+    public void setClusterNodes(String clusterNodes) {
+        this.clusterNodeSet = new LinkedHashSet<HostAndPort>();
+        if (clusterNodes != null) {
+            for (String node : StringUtils.splitString(clusterNodes, COMMA)) {
+                this.clusterNodeSet.add(parseHostAndPort(node));
+            }
+        }
+
+        this.clusterNodes = StringUtils.join(this.clusterNodeSet, COMMA);
+    }
+
+    /**
+     * @return true if the sessions are spread over the nodes of a redis cluster.
+     */
+    public boolean isCluster() {
+        return this.clusterNodeSet != null && !this.clusterNodeSet.isEmpty();
+    }
+
+    public String getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(String replicas) {
+        this.replicaSet = new LinkedHashSet<HostAndPort>();
+        if (replicas != null) {
+            for (String replica : StringUtils.splitString(replicas, COMMA)) {
+                this.replicaSet.add(parseHostAndPort(replica));
+            }
+        }
+
+        this.replicas = StringUtils.join(this.replicaSet, COMMA);
+    }
+
+    public long getReplicaMaxLag() {
+        return replicaMaxLag;
+    }
+
+    public void setReplicaMaxLag(long replicaMaxLag) {
+        this.replicaMaxLag = replicaMaxLag;
+    }
+
+    public long getReplicaLagCheckInterval() {
+        return replicaLagCheckInterval;
+    }
+
+    public void setReplicaLagCheckInterval(long replicaLagCheckInterval) {
+        this.replicaLagCheckInterval = replicaLagCheckInterval;
+    }
+
+    /**
+     * @return true if the sessions are loaded from the replicas, as long as they keep up with the master.
+     */
+    public boolean isReplicaReads() {
+        return this.replicaPools != null;
+    }
+
+    private static HostAndPort parseHostAndPort(final String hostAndPort) {
+        final String[] parts = hostAndPort.trim().split(":");
+        return new HostAndPort(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : Protocol.DEFAULT_PORT);
+    }
+
     public JedisPoolConfig getConnectionPoolConfig() {
         return this.connectionPoolConfig;
     }
 
+    public int getExecutorPoolSize() {
+        return executorPoolSize;
+    }
+
     public void setExecutorPoolSize(int executorPoolSize) {
         this.executorPoolSize = executorPoolSize;
     }
 
+    public int getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    public void setExecutorQueueSize(int executorQueueSize) {
+        this.executorQueueSize = executorQueueSize;
+    }
+
+    public int getExecutorMailboxes() {
+        return executorMailboxes;
+    }
+
+    public void setExecutorMailboxes(int executorMailboxes) {
+        this.executorMailboxes = executorMailboxes;
+    }
+
+    public int getVirtualExecutorPoolSize() {
+        return virtualExecutorPoolSize;
+    }
+
+    public void setVirtualExecutorPoolSize(int virtualExecutorPoolSize) {
+        this.virtualExecutorPoolSize = virtualExecutorPoolSize;
+    }
+
+    public String getExecutorThreads() {
+        return executorThreadsName;
+    }
+
+    public void setExecutorThreads(String executorThreads) {
+        this.executorThreadsName = executorThreads;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicyName;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicyName = overflowPolicy;
+    }
+
+    public long getOverflowTimeout() {
+        return overflowTimeout;
+    }
+
+    public void setOverflowTimeout(long overflowTimeout) {
+        this.overflowTimeout = overflowTimeout;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isScripting() {
+        return scripting;
+    }
+
+    public void setScripting(boolean scripting) {
+        this.scripting = scripting;
+    }
+
+    public String getBackend() {
+        return backendName;
+    }
+
+    public void setBackend(String backend) {
+        this.backendName = backend;
+    }
+
+    public int getBackendConnections() {
+        return backendConnections;
+    }
+
+    public void setBackendConnections(int backendConnections) {
+        this.backendConnections = backendConnections;
+    }
+
+    public long getBackendLatency() {
+        return backendLatency;
+    }
+
+    public void setBackendLatency(long backendLatency) {
+        this.backendLatency = backendLatency;
+    }
+
+    /**
+     * @return Store behind the manager. null if not initialized.
+     */
+    public RedisBackend getRedisBackend() {
+        return this.backend;
+    }
+
+    /**
+     * @return true if the data is kept in this JVM rather than in redis.
+     */
+    public boolean isInMemory() {
+        return "memory".equals(this.backendName);
+    }
+
     public void setClassLoader(ClassLoader classLoader) {
         this.classLoader = classLoader;
     }
@@ -127,17 +450,44 @@ public class RedisStoreManager {
     public void init() throws LifecycleException {
 
         // Need to ensure that the Commands belonging to the same session
-        // are executed serially. Hence creating multiple executors of size 1
-        // for different buckets of commands.
-        this.executors = new ExecutorService[this.executorPoolSize];
-        for(int i = 0; i< this.executors.length; i++) {
-            this.executors[i] = Executors.newSingleThreadExecutor();
+        // are executed serially. Hence queuing the commands of a session
+        // into the mailbox it hashes to, run by one executor at a time.
+        this.overflowPolicy = OverflowPolicy.getPolicy(this.overflowPolicyName);
+        this.executorThreads = ExecutorThreads.getThreads(this.executorThreadsName);
+        if(!this.executorThreads.isSupported()) {
+            LOG.warn("Executor threads " + this.executorThreadsName + " are not supported by this JVM. Hence running the executors on platform threads");
+            this.executorThreads = ExecutorThreads.PLATFORM;
+        }
+        // executorPoolSize still sets the executor queues, hence the stripes of the registry.
+        int threads = this.executorPoolSize;
+        int mailboxes = Math.max(this.executorMailboxes, 1);
+        if(this.executorThreads == ExecutorThreads.VIRTUAL) {
+            threads = Math.max(this.virtualExecutorPoolSize, 1);
+            mailboxes = Math.max(mailboxes, (threads + this.executorPoolSize - 1) / this.executorPoolSize);
         }
+        LOG.info("Running " + threads + " executors on " + this.executorThreads.getName() + " threads");
+        this.executor = new MailboxExecutor<PersistTask>(this.executorPoolSize, mailboxes, this.executorQueueSize,
+                threads, this.executorThreads.newThreadFactory("redis-executor-"));
+        this.lastTasks = new AtomicReferenceArray<PersistTask>(this.executor.getMailboxes());
+        this.highWaterMarks = new AtomicIntegerArray(this.executor.getGroups());
 
-        try {
-            this.serializer = getSerializer();
+        this.serializer = getSerializer();
 
-            if (getSentinelMaster() != null) {
+        if (isInMemory()) {
+            // Nothing to connect to, hence neither scripts nor replicas.
+            LOG.warn("Keeping the sessions in memory rather than in redis. Not to be used beyond tests and benchmarks");
+            this.backend = new InMemoryRedisBackend(this, this.backendLatency);
+            return;
+        }
+
+        try {
+            if (isCluster()) {
+                // Redis cluster supports neither databases nor, through Jedis, passwords.
+                if (getDatabase() != 0 || getPassword() != null) {
+                    throw new LifecycleException("Error configuring Redis Cluster connections: `database` and `password` are not supported along with `clusterNodes`");
+                }
+                this.clusterConnectionHandler = new RedisClusterConnectionHandler(this.clusterNodeSet, this.connectionPoolConfig, getTimeout());
+            } else if (getSentinelMaster() != null) {
                 Set<String> sentinelSet = getSentinelSet();
                 if (sentinelSet != null && sentinelSet.size() > 0) {
                     this.connectionPool = new JedisSentinelPool(getSentinelMaster(), sentinelSet, this.connectionPoolConfig, getTimeout(), getPassword());
@@ -147,46 +497,238 @@ public class RedisStoreManager {
             } else {
                 this.connectionPool = new JedisPool(this.connectionPoolConfig, getHost(), getPort(), getTimeout(), getPassword());
             }
+        } catch (LifecycleException e) {
+            throw e;
         } catch (Exception e) {
             throw new LifecycleException("Error connecting to Redis", e);
         }
+
+        if(isScripting()) {
+            loadScripts();
+        }
+
+        this.backend = createBackend();
+
+        if (this.replicaSet != null && !this.replicaSet.isEmpty()) {
+            if (isCluster()) {
+                LOG.warn("Replicas are not supported along with a redis cluster. Hence the sessions are loaded from the masters");
+            } else {
+                startReplicaMonitor();
+            }
+        }
+    }
+
+    private RedisBackend createBackend() throws LifecycleException {
+        if ("pooled".equals(this.backendName)) {
+            return new PooledRedisBackend(this);
+        } else if ("multiplexed".equals(this.backendName)) {
+            if (isCluster()) {
+                throw new LifecycleException("Backend multiplexed is not supported along with `clusterNodes`. Expected `pooled`");
+            }
+            LOG.info("Sharing " + this.backendConnections + " multiplexed connection(s) to redis between the request threads");
+            return new MultiplexedRedisBackend(this, this.backendConnections);
+        }
+        throw new LifecycleException("Unknown backend " + this.backendName + ". Expected one of `pooled`, `multiplexed` or `memory`");
+    }
+
+    private void startReplicaMonitor() {
+        this.replicaPools = new ArrayList<JedisPool>(this.replicaSet.size());
+        for (HostAndPort replica : this.replicaSet) {
+            this.replicaPools.add(new JedisPool(this.connectionPoolConfig, replica.getHost(), replica.getPort(), getTimeout(), getPassword(), getDatabase()));
+        }
+        checkReplicas();
+
+        this.replicaMonitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "redis-replica-monitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.replicaMonitor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkReplicas();
+            }
+        }, this.replicaLagCheckInterval, this.replicaLagCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks the replication offset of each replica against the one of the master,
+     * and reads from the replicas which are connected to the master and within <code>replicaMaxLag</code> bytes of it only.
+     */
+    protected void checkReplicas() {
+        final long masterOffset;
+        try {
+            final Jedis jedis = acquireConnection();
+            try {
+                masterOffset = Long.parseLong(getInfoField(jedis.info("replication"), "master_repl_offset"));
+            } finally {
+                returnConnection(jedis);
+            }
+        } catch (Exception e) {
+            LOG.warn("Error checking the replication offset of the redis master. Hence not reading from the replicas", e);
+            this.freshReplicas = Collections.emptyList();
+            return;
+        }
+
+        final List<JedisPool> fresh = new ArrayList<JedisPool>(this.replicaPools.size());
+        for (JedisPool replicaPool : this.replicaPools) {
+            try {
+                final Jedis jedis = replicaPool.getResource();
+                try {
+                    final String info = jedis.info("replication");
+                    final String offset = getInfoField(info, "slave_repl_offset");
+                    if ("up".equals(getInfoField(info, "master_link_status")) && offset != null
+                            && masterOffset - Long.parseLong(offset) <= this.replicaMaxLag) {
+                        fresh.add(replicaPool);
+                    }
+                } finally {
+                    returnConnection(jedis);
+                }
+            } catch (Exception e) {
+                LOG.warn("Error checking the replication offset of a redis replica. Hence not reading from it", e);
+            }
+        }
+        this.freshReplicas = fresh;
+    }
+
+    /**
+     * @param info Reply of the INFO command.
+     * @param field Field of the reply, e.g. <code>master_repl_offset</code>.
+     * @return Value of the field. null if absent.
+     */
+    static String getInfoField(final String info, final String field) {
+        for (String line : info.split("\r?\n")) {
+            if (line.startsWith(field + ":")) {
+                return line.substring(field.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private void loadScripts() {
+        // The scripts are loaded again on demand if redis does not know them. Hence a failure here is not fatal.
+        final List<Pool<Jedis>> pools = isCluster()
+                ? new ArrayList<Pool<Jedis>>(this.clusterConnectionHandler.getNodes().values())
+                : Collections.singletonList(this.connectionPool);
+        for (Pool<Jedis> pool : pools) {
+            try {
+                final Jedis jedis = pool.getResource();
+                try {
+                    if (!isCluster() && getDatabase() != 0) {
+                        jedis.select(getDatabase());
+                    }
+                    TOUCH_SCRIPT.load(jedis);
+                    HSET_EXPIRE_SCRIPT.load(jedis);
+                } finally {
+                    returnConnection(jedis);
+                }
+            } catch (Exception e) {
+                LOG.warn("Error loading the scripts into redis", e);
+            }
+        }
     }
 
     public void destroy() {
 
+        stopSubscribers();
+
+        if (this.replicaMonitor != null) {
+            this.replicaMonitor.shutdownNow();
+        }
+        if (this.replicaPools != null) {
+            for (JedisPool replicaPool : this.replicaPools) {
+                try {
+                    replicaPool.destroy();
+                } catch (Exception e) {
+                    // Do nothing to prevent anything untoward from happening
+                }
+            }
+        }
+
         shutdownExecutors(); // Shutdown Executors. This ensures that no new tasks are accepted.
         awaitTermination(2, TimeUnit.MINUTES); // Ensures previous tasks are completed. Taking 2 mins as the timeout
 
         // After completion of all tasks, the Redis connection pool can be destroyed.
         try {
-            this.connectionPool.destroy();
+            if (this.backend != null) {
+                this.backend.close();
+            }
+
+            if (this.clusterConnectionHandler != null) {
+                this.clusterConnectionHandler.close();
+            } else if (this.connectionPool != null) {
+                this.connectionPool.destroy();
+            }
         } catch (Exception e) {
             // Do nothing to prevent anything untoward from happening
         }
     }
 
+    private synchronized void stopSubscribers() {
+        for (KeyspaceSubscriber subscriber : this.subscribers) {
+            subscriber.stop();
+        }
+        this.subscribers.clear();
+    }
+
     private void shutdownExecutors() {
-        for (ExecutorService executor : this.executors) {
-            try {
-                if (executor != null && !executor.isShutdown()) {
-                    executor.shutdown();
-                }
-            } catch (Exception e) {
-                // Do nothing to prevent anything untoward from happening
+        try {
+            if (this.executor != null && !this.executor.isShutdown()) {
+                this.executor.shutdown();
             }
+        } catch (Exception e) {
+            // Do nothing to prevent anything untoward from happening
         }
     }
 
     private void awaitTermination(long timeout, TimeUnit unit) {
-        for (ExecutorService executor : this.executors) {
-            try {
-                if (executor != null && !executor.isShutdown()) {
-                    executor.awaitTermination(timeout, unit);
-                }
-            } catch (Exception e) {
-                // Do nothing to prevent anything untoward from happening
+        try {
+            if (this.executor != null) {
+                this.executor.awaitTermination(timeout, unit);
             }
+        } catch (Exception e) {
+            // Do nothing to prevent anything untoward from happening
+        }
+    }
+
+    /**
+     * @return Metrics of the persistence into redis.
+     */
+    public RedisMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return Highest number of batches of <code>RedisCommand</code>s seen queued, per executor queue. Empty if not initialized.
+     */
+    public int[] getExecutorHighWaterMarks() {
+        final AtomicIntegerArray highWaterMarks = this.highWaterMarks;
+        if(highWaterMarks == null) {
+            return new int[0];
+        }
+        final int[] marks = new int[highWaterMarks.length()];
+        for(int i = 0; i < marks.length; i++) {
+            marks[i] = highWaterMarks.get(i);
         }
+        return marks;
+    }
+
+    /**
+     * @return Number of batches of <code>RedisCommand</code>s waiting to be executed, per executor queue. Empty if not initialized.
+     */
+    public int[] getExecutorBacklog() {
+        final MailboxExecutor<PersistTask> executor = this.executor;
+        if(executor == null) {
+            return new int[0];
+        }
+        final int[] backlog = new int[executor.getGroups()];
+        for(int i = 0; i < backlog.length; i++) {
+            backlog[i] = executor.size(i);
+        }
+        return backlog;
     }
 
     protected Jedis acquireConnection() {
@@ -199,28 +741,164 @@ public class RedisStoreManager {
         return jedis;
     }
 
+    /**
+     * @param key Key to be operated upon.
+     * @return Connection to the redis node holding the key. The master in case of a single node.
+     */
+    protected Jedis acquireConnection(final String key) {
+        return isCluster() ? this.clusterConnectionHandler.getConnection(key) : acquireConnection();
+    }
+
     protected void returnConnection(Jedis jedis) {
         jedis.close();
     }
 
+    /**
+     * Re-discovers which node serves which slot of the redis cluster, e.g. after a resharding.
+     */
+    protected void refreshSlots() {
+        if (isCluster()) {
+            LOG.info("Refreshing the slots of the redis cluster");
+            this.clusterConnectionHandler.renewSlotCache();
+        }
+    }
+
+    /**
+     * Groups the keys by the redis node holding them, retaining their order within a node.
+     *
+     * @param keys Keys to be grouped.
+     * @return Keys per node. A single group unless in cluster mode.
+     */
+    protected Collection<List<String>> groupByNode(final List<String> keys) {
+        if (!isCluster()) {
+            return Collections.singletonList(keys);
+        }
+        final Map<JedisPool, List<String>> groups = new LinkedHashMap<JedisPool, List<String>>();
+        for (String key : keys) {
+            final JedisPool node = this.clusterConnectionHandler.getNode(key);
+            if (groups.get(node) == null) {
+                groups.put(node, new ArrayList<String>());
+            }
+            groups.get(node).add(key);
+        }
+        return groups.values();
+    }
+
+    /**
+     * Groups the <code>RedisCommand</code>s by the redis node holding their keys, retaining their order within a node.
+     *
+     * @param commands <code>RedisCommand</code>s to be grouped.
+     * @return <code>RedisCommand</code>s per node. A single group unless in cluster mode.
+     */
+    protected Collection<List<RedisCommand>> groupCommandsByNode(final List<RedisCommand> commands) {
+        if (!isCluster()) {
+            return Collections.singletonList(commands);
+        }
+        final Map<JedisPool, List<RedisCommand>> groups = new LinkedHashMap<JedisPool, List<RedisCommand>>();
+        for (RedisCommand command : commands) {
+            final JedisPool node = this.clusterConnectionHandler.getNode(command.getKey());
+            if (groups.get(node) == null) {
+                groups.put(node, new ArrayList<RedisCommand>());
+            }
+            groups.get(node).add(command);
+        }
+        return groups.values();
+    }
+
+    /**
+     * @return Address of the redis master, as currently known to the sentinels if any.
+     */
+    protected HostAndPort getMaster() {
+        return (this.connectionPool instanceof JedisSentinelPool)
+                ? ((JedisSentinelPool) this.connectionPool).getCurrentHostMaster()
+                : new HostAndPort(getHost(), getPort());
+    }
+
+    /**
+     * Creates a connection to the redis master outside of the connection pool. Used for long-lived connections such as subscriptions.
+     *
+     * @return Connected <code>Jedis</code> instance which has to be closed by the caller.
+     */
+    protected Jedis createConnection() {
+        final HostAndPort master = getMaster();
+        final Jedis jedis = new Jedis(master.getHost(), master.getPort(), getTimeout());
+        if (getPassword() != null) {
+            jedis.auth(getPassword());
+        }
+        return jedis;
+    }
+
+    /**
+     * Subscribes to the keyspace notifications of the configured database over a dedicated connection.
+     * The subscription is stopped when the <code>RedisStoreManager</code> is destroyed.
+     *
+     * @param keyPattern Glob-style pattern of the keys to be notified about, e.g. <code>session:*</code>.
+     * @param listener <code>KeyspaceListener</code> receiving the notifications.
+     * @return <code>KeyspaceSubscriber</code> which can be used to stop the subscription.
+     */
+    public synchronized KeyspaceSubscriber subscribeKeyspace(final String keyPattern, final KeyspaceListener listener) {
+        final KeyspaceSubscriber subscriber = new KeyspaceSubscriber(this, "__keyspace@" + getDatabase() + "__:" + keyPattern, listener);
+        this.subscribers.add(subscriber);
+        subscriber.start();
+        return subscriber;
+    }
+
     public Serializable hset(final String key, final String field, final Serializable value, final boolean overwrite) throws SerializationException {
+        return hset(key, field, value, overwrite, 0);
+    }
+
+    /**
+     * Sets the field of the hash and resets the expiry of the hash in a single round trip, unless scripting is disabled.
+     *
+     * @param key Key of the hash.
+     * @param field Field to be set.
+     * @param value Value to be set.
+     * @param overwrite Whether an existing value of the field is to be overwritten.
+     * @param expiryInterval Expiry (in seconds) to be set on the hash. Not set if 0 or less.
+     * @return value if it has been set. null otherwise.
+     * @throws SerializationException If any issues occur during serialization of the value.
+     */
+    public Serializable hset(final String key, final String field, final Serializable value, final boolean overwrite, final int expiryInterval) throws SerializationException {
         if(key == null || field == null || value == null) {
             return null;
         }
 
-        // This has to be synchronous call
-        // Hence getting Jedis instance and operating on it.
-        final Jedis jedis = acquireConnection();
-        try {
-            final String serializedValue = this.serializer.serialize(value);
-            if(overwrite) {
-                jedis.hset(key, field, serializedValue);
-                return value;
-            }
-            return jedis.hsetnx(key, field, serializedValue) == 0L ? null : value;
-        } finally {
-            returnConnection(jedis);
+        final byte[] serializedValue = serialize(value);
+        this.metrics.recordBytesWritten(serializedValue.length);
+        return this.backend.hset(key, field, serializedValue, overwrite, expiryInterval).await(getTimeout()) ? value : null;
+    }
+
+    /**
+     * Sets the field of each of the given hashes if absent, resetting the expiry of the hashes whose field is set.
+     * The hashes are set together, in a single round trip per node.
+     *
+     * @param field Field to be set.
+     * @param values Value to be set, per key of the hash.
+     * @param expiryInterval Expiry (in seconds) to be set on the hashes. Not set if 0 or less.
+     * @return Keys of the hashes whose field has been set.
+     * @throws SerializationException If any issues occur during serialization of the values.
+     */
+    public Set<String> hsetnx(final String field, final Map<String, ? extends Serializable> values, final int expiryInterval) throws SerializationException {
+        final Map<String, byte[]> serializedValues = new HashMap<String, byte[]>(values.size());
+        for(Map.Entry<String, ? extends Serializable> entry : values.entrySet()) {
+            final byte[] serializedValue = serialize(entry.getValue());
+            this.metrics.recordBytesWritten(serializedValue.length);
+            serializedValues.put(entry.getKey(), serializedValue);
         }
+        return this.backend.hsetnx(field, serializedValues, expiryInterval).await(getTimeout());
+    }
+
+    /**
+     * All the <code>RedisCommand</code>s of a <code>Session</code> belong to the same stripe, and are hence executed serially.
+     * The <code>Session</code>s are hashed onto the mailboxes, and the executor queue of a mailbox is its index modulo the number of executors.
+     *
+     * @param sessionId <code>Session</code> identifier. Can be null.
+     * @param stripes Number of stripes.
+     * @return Stripe of the <code>Session</code>, between 0 and stripes - 1.
+     */
+    public static int getStripe(final String sessionId, final int stripes) {
+        // Masking the sign bit, as Math.abs(Integer.MIN_VALUE) is negative.
+        return sessionId != null ? (sessionId.hashCode() & Integer.MAX_VALUE) % stripes : 0;
     }
 
     public void execute(List<RedisCommand> commands) {
@@ -230,7 +908,7 @@ public class RedisStoreManager {
         if(commands != null && !commands.isEmpty()) {
             final Map<Integer, List<RedisCommand>> orderMap = new HashMap<Integer, List<RedisCommand>>();
             for(RedisCommand command : commands) {
-                final int hashkey = (command.getSessionId() != null ? Math.abs(command.getSessionId().hashCode()) : 0) % this.executors.length;
+                final int hashkey = getStripe(command.getSessionId(), this.executor.getMailboxes());
                 if(orderMap.get(hashkey) == null) {
                     orderMap.put(hashkey, new ArrayList<RedisCommand>());
                 }
@@ -238,40 +916,279 @@ public class RedisStoreManager {
             }
 
             for(Map.Entry<Integer, List<RedisCommand>> entry : orderMap.entrySet()) {
-                this.executors[entry.getKey()].execute(new PersistTask(entry.getValue(), this, this.serializer));
+                submit(entry.getKey(), new PersistTask(entry.getValue(), this));
+            }
+        }
+    }
+
+    /**
+     * Queues the batch of <code>RedisCommand</code>s into its mailbox, applying the <code>OverflowPolicy</code> if the queue of its executor is full.
+     *
+     * @param mailbox Index of the mailbox.
+     * @param task Batch of <code>RedisCommand</code>s.
+     */
+    private void submit(final int mailbox, final PersistTask task) {
+        final MailboxExecutor<PersistTask> executor = this.executor;
+        if(executor.isShutdown()) {
+            LOG.error("Dropping " + task.size() + " RedisCommands as the store manager is destroyed");
+            this.metrics.recordDroppedCommands(task.size());
+            written(task.commands, Collections.<RedisCommand>emptySet());
+            return;
+        }
+
+        if(executor.offer(mailbox, task) || offerOnOverflow(mailbox, task)) {
+            this.lastTasks.set(mailbox, task);
+
+            final int stripe = executor.getGroup(mailbox);
+            final int depth = executor.size(stripe);
+            int mark = this.highWaterMarks.get(stripe);
+            while (depth > mark && !this.highWaterMarks.compareAndSet(stripe, mark, depth)) {
+                mark = this.highWaterMarks.get(stripe);
+            }
+        }
+    }
+
+    /**
+     * Applies the <code>OverflowPolicy</code> to a batch which did not fit into the queue of its executor.
+     *
+     * @return true if the batch has been queued. false if it has been coalesced into a queued batch or dropped.
+     */
+    private boolean offerOnOverflow(final int mailbox, final PersistTask task) {
+        final int stripe = this.executor.getGroup(mailbox);
+        switch (this.overflowPolicy) {
+            case COALESCE:
+                // Only into the same mailbox, as a batch of another mailbox may run ahead of the batches queued before this one.
+                final PersistTask lastTask = this.lastTasks.get(mailbox);
+                if(lastTask != null && lastTask.append(task)) {
+                    this.metrics.recordCoalescedBatch();
+                    return false;
+                }
+                break;
+            case DROP_EXPIRY:
+                if(task.isExpiryOnly()) {
+                    this.metrics.recordDroppedCommands(task.size());
+                    written(task.commands, Collections.<RedisCommand>emptySet());
+                    return false;
+                }
+                if(dropExpiryOnly(stripe) && this.executor.offer(mailbox, task)) {
+                    return true;
+                }
+                break;
+        }
+
+        try {
+            if(this.executor.offer(mailbox, task, this.overflowTimeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.error("Dropping " + task.size() + " RedisCommands as the queue of executor " + stripe + " is full");
+        this.metrics.recordDroppedCommands(task.size());
+        written(task.commands, Collections.<RedisCommand>emptySet());
+        return false;
+    }
+
+    /**
+     * Drops a queued batch which only resets expiries, from any mailbox of the executor.
+     *
+     * @return true if a batch has been dropped.
+     */
+    private boolean dropExpiryOnly(final int stripe) {
+        for(int mailbox = stripe; mailbox < this.executor.getMailboxes(); mailbox += this.executor.getGroups()) {
+            for(PersistTask queued : this.executor.getQueued(mailbox)) {
+                if(queued.isExpiryOnly() && this.executor.remove(mailbox, queued)) {
+                    this.metrics.recordDroppedCommands(queued.size());
+                    written(queued.commands, Collections.<RedisCommand>emptySet());
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands the outcome of a batch, once executed or dropped, to the listeners of the keyspace subscriptions.
+     *
+     * @param commands <code>RedisCommand</code>s of the batch.
+     * @param changed <code>RedisCommand</code>s which redis confirmed to have changed their key.
+     */
+    private void written(final List<RedisCommand> commands, final Set<RedisCommand> changed) {
+        for (KeyspaceSubscriber subscriber : this.subscribers) {
+            try {
+                subscriber.getListener().onWritten(commands, changed);
+            } catch (RuntimeException e) {
+                LOG.error("Error while notifying the keyspace listener of the written RedisCommands", e);
             }
         }
     }
 
     public Map<String, Serializable> loadData(final String key) throws SerializationException {
-        final Jedis jedis = acquireConnection();
+        return loadData(Collections.singletonList(key), 0).get(key);
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys in a single round trip.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param expiryInterval Expiry (in seconds) to be reset on each of the keys as part of the same round trip. Not reset if 0 or less.
+     * @return De-serialized hash-map per key. The value is null if nothing is stored against the key.
+     * @throws SerializationException If any issues occur during de-serialization of the data.
+     */
+    public Map<String, Map<String, Serializable>> loadData(final List<String> keys, final int expiryInterval) throws SerializationException {
+        final Map<String, Map<String, byte[]>> rawData = loadRawData(keys, expiryInterval);
+        final Map<String, Map<String, Serializable>> data = new HashMap<String, Map<String, Serializable>>(rawData.size());
+        for(Map.Entry<String, Map<String, byte[]>> entry : rawData.entrySet()) {
+            data.put(entry.getKey(), deSerialize(entry.getKey(), entry.getValue()));
+        }
+        return data;
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys in a single round trip without de-serializing the values.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param expiryInterval Expiry (in seconds) to be reset on each of the keys as part of the same round trip. Not reset if 0 or less.
+     * @return Serialized hash-map per key. The value is null if nothing is stored against the key.
+     */
+    public Map<String, Map<String, byte[]>> loadRawData(final List<String> keys, final int expiryInterval) {
+        return loadRawData(keys, Collections.<String>emptySet(), Collections.<String>emptyList(), expiryInterval);
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys in a single round trip without de-serializing the values.
+     * Of the partially loaded hash-maps, only the names of the fields are loaded, along with the values of the given fields.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param partialKeys Keys, among the given keys, of the hash-maps to be loaded partially.
+     * @param fields Fields whose values are loaded from the partially loaded hash-maps.
+     * @param expiryInterval Expiry (in seconds) to be reset on each of the keys as part of the same round trip. Not reset if 0 or less.
+     * @return Serialized hash-map per key. The value is null if nothing is stored against the key.
+     * The values of a partially loaded hash-map are null, except for the given fields.
+     */
+    public Map<String, Map<String, byte[]>> loadRawData(final List<String> keys, final Collection<String> partialKeys, final List<String> fields, final int expiryInterval) {
+        return this.backend.loadRawData(keys, partialKeys, fields, expiryInterval).await(getTimeout());
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys from a replica of the master, without resetting their expiry.
+     * Only the replicas within <code>replicaMaxLag</code> of the master are read from.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @return Serialized hash-map per key, as by <code>loadRawData</code>. null if no replica is fresh enough, or the replica failed.
+     */
+    public Map<String, Map<String, byte[]>> loadRawDataFromReplica(final List<String> keys) {
+        return loadRawDataFromReplica(keys, Collections.<String>emptySet(), Collections.<String>emptyList());
+    }
+
+    /**
+     * Loads the hash-maps stored against the given keys from a replica of the master, without resetting their expiry.
+     * Only the replicas within <code>replicaMaxLag</code> of the master are read from.
+     *
+     * @param keys Keys of the hash-maps to be loaded.
+     * @param partialKeys Keys, among the given keys, of the hash-maps to be loaded partially.
+     * @param fields Fields whose values are loaded from the partially loaded hash-maps.
+     * @return Serialized hash-map per key, as by <code>loadRawData</code>. null if no replica is fresh enough, or the replica failed.
+     */
+    public Map<String, Map<String, byte[]>> loadRawDataFromReplica(final List<String> keys, final Collection<String> partialKeys, final List<String> fields) {
+        final List<JedisPool> replicas = this.freshReplicas;
+        if(replicas.isEmpty() || keys == null || keys.isEmpty()) {
+            return null;
+        }
+
+        final JedisPool replicaPool = replicas.get((this.replicaCursor.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
         try {
-            final Map<String, String> rawData = jedis.hgetAll(key);
-            if(rawData != null && !rawData.isEmpty()) {
-                final Map<String, Serializable> deSerialized = new HashMap<String, Serializable>(rawData.size());
-                for(Map.Entry<String, String> rawEntry : rawData.entrySet()) {
-                    try {
-                        deSerialized.put(rawEntry.getKey(), this.serializer.deSerialize(rawEntry.getValue()));
-                    } catch (SerializationException e) {
-                        // Need the details for better messaging.
-                        throw new SerializationException("Error loading data from redis for key "+ key + " and field "+ rawEntry.getKey(), e);
-                    }
+            final Jedis jedis = replicaPool.getResource();
+            try {
+                PooledRedisBackend.loadRawData(jedis, keys, partialKeys, fields, 0, data);
+            } finally {
+                returnConnection(jedis);
+            }
+        } catch (Exception e) {
+            LOG.warn("Error loading data from a redis replica. Hence loading from the master", e);
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * Loads the value of a single field of a hash-map without de-serializing it.
+     *
+     * @param key Key of the hash-map.
+     * @param field Field to be loaded.
+     * @return Serialized value. null if nothing is stored against the field.
+     */
+    public byte[] loadRawField(final String key, final String field) {
+        return this.backend.loadRawField(key, field).await(getTimeout());
+    }
+
+    /**
+     * De-serializes the values of a hash-map loaded from redis.
+     *
+     * @param key Key of the hash-map. Used for messaging.
+     * @param rawData Serialized hash-map.
+     * @return De-serialized hash-map. null if the hash-map is null or empty.
+     * @throws SerializationException If any issues occur during de-serialization of the data.
+     */
+    public Map<String, Serializable> deSerialize(final String key, final Map<String, byte[]> rawData) throws SerializationException {
+        if(rawData != null && !rawData.isEmpty()) {
+            final Map<String, Serializable> deSerialized = new HashMap<String, Serializable>(rawData.size());
+            for(Map.Entry<String, byte[]> rawEntry : rawData.entrySet()) {
+                try {
+                    deSerialized.put(rawEntry.getKey(), deSerialize(rawEntry.getValue()));
+                } catch (SerializationException e) {
+                    // Need the details for better messaging.
+                    throw new SerializationException("Error loading data from redis for key "+ key + " and field "+ rawEntry.getKey(), e);
                 }
-                return deSerialized;
             }
-        } finally {
-            returnConnection(jedis);
+            return deSerialized;
         }
 
         return null;
     }
 
-    protected ISerializer getSerializer() throws LifecycleException {
+    public byte[] serialize(final Serializable value) throws SerializationException {
+        final long start = System.nanoTime();
+        try {
+            return this.serializer.serialize(value);
+        } finally {
+            this.metrics.recordSerialization(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param command <code>RedisCommand</code> setting a value.
+     * @return Value of the <code>RedisCommand</code>, serialized unless it has been serialized upfront.
+     * @throws SerializationException If any issues occur during serialization of the value.
+     */
+    byte[] serialize(final RedisCommand command) throws SerializationException {
+        final byte[] serializedValue = command.getSerializedValue() != null ? command.getSerializedValue() : serialize(command.getValue());
+        this.metrics.recordBytesWritten(serializedValue.length);
+        return serializedValue;
+    }
+
+    public Serializable deSerialize(final byte[] serializedValue) throws SerializationException {
+        return this.serializer.deSerialize(serializedValue);
+    }
+
+    protected IBinarySerializer getSerializer() throws LifecycleException {
         try {
             LOG.info("Instantiating serializer of type " + this.serializationStrategyClass);
-            ISerializer serializer = (ISerializer) Class.forName(this.serializationStrategyClass).newInstance();
+            final Object strategy = Class.forName(this.serializationStrategyClass).newInstance();
+
+            final IBinarySerializer serializer;
+            if(strategy instanceof IBinarySerializer) {
+                serializer = (IBinarySerializer) strategy;
+            } else if(strategy instanceof ISerializer) {
+                // String based serializers are still supported by storing the String as bytes.
+                serializer = new StringSerializerAdapter((ISerializer) strategy);
+            } else {
+                throw new LifecycleException("Serializer of type " + this.serializationStrategyClass + " has to implement either IBinarySerializer or ISerializer");
+            }
             serializer.setClassLoader(this.classLoader);
-            return serializer;
+            // Compressed values are read even if the compression is disabled, as they may have been written before.
+            return new CompressingSerializer(serializer, this.compressionThreshold);
         } catch (ClassNotFoundException e) {
             throw new LifecycleException(e);
         } catch (InstantiationException e) {
@@ -286,49 +1203,62 @@ public class RedisStoreManager {
 
         private final List<RedisCommand> commands;
         private final RedisStoreManager storeManager;
-        private final ISerializer serializer;
+        private final RedisMetrics metrics;
+
+        /**
+         * Whether the execution has started, after which no more <code>RedisCommand</code>s can be appended. Guarded by this.
+         */
+        private boolean started = false;
 
-        private PersistTask(List<RedisCommand> commands, RedisStoreManager storeManager, ISerializer serializer) {
+        private PersistTask(List<RedisCommand> commands, RedisStoreManager storeManager) {
             this.commands = commands;
             this.storeManager = storeManager;
-            this.serializer = serializer;
+            this.metrics = storeManager.getMetrics();
         }
 
-        @Override
-        public void run() {
-            if(LOG.isDebugEnabled()) { LOG.debug("Number of RedisCommands to be executed is " + commands.size()); }
-
-            final Jedis jedis = this.storeManager.acquireConnection();
-            try {
-                for(RedisCommand command : commands) {
-                    executeCommand(command, jedis);
-                }
-            } finally {
-                this.storeManager.returnConnection(jedis);
+        /**
+         * Appends the <code>RedisCommand</code>s of a later batch of the same mailbox, unless the execution has started.
+         *
+         * @return true if appended.
+         */
+        private synchronized boolean append(final PersistTask task) {
+            if(this.started) {
+                return false;
             }
+            this.commands.addAll(task.commands);
+            return true;
+        }
 
+        private synchronized int size() {
+            return this.commands.size();
         }
 
-        private void executeCommand(final RedisCommand command, final Jedis jedis) {
-            try {
-                if(LOG.isDebugEnabled()) { LOG.debug("Executing RedisCommand " + command); }
-                switch (command.getCommand()) {
-                    case DEL:
-                        jedis.del(command.getKey());
-                        break;
-                    case HSET:
-                        jedis.hset(command.getKey(), command.getField(), this.serializer.serialize(command.getValue()));
-                        break;
-                    case HDEL:
-                        jedis.hdel(command.getKey(), command.getField());
-                        break;
-                    case EXPIRY:
-                        jedis.expire(command.getKey(), command.getExpiryInterval());
-                        break;
+        /**
+         * @return true if all the <code>RedisCommand</code>s only reset expiries.
+         */
+        private synchronized boolean isExpiryOnly() {
+            for(RedisCommand command : this.commands) {
+                if(command.getCommand() != RedisCommand.Command.EXPIRY && command.getCommand() != RedisCommand.Command.TOUCH) {
+                    return false;
                 }
+            }
+            return true;
+        }
 
-            } catch (Exception e) {
-                LOG.error("Error executing RedisCommand " + command, e);
+        @Override
+        public void run() {
+            synchronized (this) {
+                this.started = true;
+            }
+            if(LOG.isDebugEnabled()) { LOG.debug("Number of RedisCommands to be executed is " + commands.size()); }
+
+            final long start = System.nanoTime();
+            Set<RedisCommand> changed = Collections.emptySet();
+            try {
+                changed = this.storeManager.backend.execute(this.commands);
+            } finally {
+                this.metrics.recordFlush(commands.size(), System.nanoTime() - start);
+                this.storeManager.written(this.commands, changed);
             }
         }
     }
@@ -0,0 +1,28 @@
+package org.vijaysanthosh.tomcat.redis.util;
+
+/**
+ * HashUtils for utility methods
+ */
+public class HashUtils {
+
+    private static final long FNV_64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the given bytes.
+     * It is cheap to compute and is good enough to detect changes in a serialized value.
+     * @param bytes the bytes to hash (may be <code>null</code>)
+     * @return the hash of the bytes; 0 for <code>null</code>
+     */
+    public static long fingerprint(byte[] bytes) {
+        if (bytes == null) {
+            return 0L;
+        }
+        long hash = FNV_64_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash ^= (b & 0xff);
+            hash *= FNV_64_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,53 @@
+package org.vijaysanthosh.tomcat.redis.metrics;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+    public void testHistogram() throws Exception {
+        final Histogram histogram = new Histogram();
+        assertEquals(0L, histogram.getPercentile(99));
+        assertEquals(0d, histogram.getMean());
+
+        for(int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+
+        assertEquals(101L, histogram.getCount());
+        assertEquals(5050L, histogram.getSum());
+        assertEquals(100L, histogram.getMax());
+        assertEquals(0L, histogram.getPercentile(0));
+
+        // Percentiles are reported as the upper bound of their power of two bucket.
+        assertEquals(63L, histogram.getPercentile(50));
+        assertEquals(100L, histogram.getPercentile(99));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        final Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < 10000; j++) {
+                        histogram.record(offset * 10000 + j);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000L, histogram.getCount());
+        assertEquals(39999L, histogram.getMax());
+        assertEquals(39999L * 40000L / 2, histogram.getSum());
+    }
+}
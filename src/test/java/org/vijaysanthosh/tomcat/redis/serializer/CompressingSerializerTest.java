@@ -0,0 +1,70 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompressingSerializerTest extends TestCase {
+
+    private final IBinarySerializer javaSerializer = new JavaSerializer();
+    private final IBinarySerializer serializer = new CompressingSerializer(this.javaSerializer, 1024);
+
+    public void testCompression() throws Exception {
+        final ArrayList<SimpleEntry> entries = new ArrayList<SimpleEntry>();
+        for(int i = 0; i < 1000; i++) {
+            final SimpleEntry entry = new SimpleEntry();
+            entry.setMsg("MSG - " + (i % 10));
+            entry.setStatusCode(i);
+            entries.add(entry);
+        }
+
+        final byte[] serializedBytes = this.serializer.serialize(entries);
+        assertEquals(CompressingSerializer.HEADER, serializedBytes[0]);
+        assertEquals(CompressingSerializer.DEFLATE, serializedBytes[1]);
+        assertTrue(serializedBytes.length < this.javaSerializer.serialize(entries).length / 2);
+        assertEquals(entries, this.serializer.deSerialize(serializedBytes));
+    }
+
+    public void testThreshold() throws Exception {
+        // Small values are stored as is.
+        final byte[] serializedBytes = this.serializer.serialize("ABC");
+        assertTrue(Arrays.equals(this.javaSerializer.serialize("ABC"), serializedBytes));
+        assertEquals("ABC", this.serializer.deSerialize(serializedBytes));
+
+        // Values which do not compress are stored as is.
+        final byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        final byte[] incompressible = this.serializer.serialize(random);
+        assertFalse(incompressible[0] == CompressingSerializer.HEADER);
+        assertTrue(Arrays.equals(random, (byte[]) this.serializer.deSerialize(incompressible)));
+    }
+
+    public void testDisabled() throws Exception {
+        final ArrayList<String> values = new ArrayList<String>();
+        for(int i = 0; i < 1000; i++) {
+            values.add("VALUE");
+        }
+
+        // Values compressed earlier are still read once the compression is disabled.
+        final IBinarySerializer disabled = new CompressingSerializer(this.javaSerializer, 0);
+        assertTrue(Arrays.equals(this.javaSerializer.serialize(values), disabled.serialize(values)));
+        assertEquals(values, disabled.deSerialize(this.serializer.serialize(values)));
+    }
+
+    public void testCorruptLength() throws Exception {
+        // Negative, and larger than the compressed bytes can ever inflate to.
+        for(byte[] corrupt : new byte[][] {
+                {CompressingSerializer.HEADER, CompressingSerializer.DEFLATE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 1, 2},
+                {CompressingSerializer.HEADER, CompressingSerializer.DEFLATE, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xf0, 1, 2}}) {
+            try {
+                this.serializer.deSerialize(corrupt);
+                fail("Expected SerializationException");
+            } catch (SerializationException e) {
+                // Expected
+            }
+        }
+    }
+}
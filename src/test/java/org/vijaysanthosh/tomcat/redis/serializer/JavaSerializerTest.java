@@ -4,6 +4,7 @@ import junit.framework.TestCase;
 import org.vijaysanthosh.tomcat.redis.serializer.model.SampleEntry;
 import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
 
+import javax.xml.bind.DatatypeConverter;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
@@ -11,11 +12,11 @@ import java.util.List;
 public class JavaSerializerTest extends TestCase {
     public void testSerialization() throws Exception {
 
-        final ISerializer serializer1 = new JavaSerializer();
-        final ISerializer serializer2 = new JavaSerializer();
+        final IBinarySerializer serializer1 = new JavaSerializer();
+        final IBinarySerializer serializer2 = new JavaSerializer();
         serializer2.setClassLoader(getClass().getClassLoader());
 
-        for(ISerializer serializer : Arrays.asList(serializer1, serializer2)) {
+        for(IBinarySerializer serializer : Arrays.asList(serializer1, serializer2)) {
             final SimpleEntry simpleEntry = new SimpleEntry();
             simpleEntry.setMsg("MSG - SIMPLE");
             simpleEntry.setStatusCode(1231);
@@ -33,9 +34,42 @@ public class JavaSerializerTest extends TestCase {
         }
     }
 
-    private void checkSerializer(Serializable obj, ISerializer serializer) throws SerializationException {
-        final String serializedString = serializer.serialize(obj);
-        final Object deSerializedObject = serializer.deSerialize(serializedString);
+    public void testLegacyDeSerialization() throws Exception {
+        final IBinarySerializer serializer = new JavaSerializer();
+
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - LEGACY");
+        simpleEntry.setStatusCode(4321);
+
+        // Values written by the earlier versions are Base64 encoded.
+        final byte[] legacyBytes = DatatypeConverter.printBase64Binary(serializer.serialize(simpleEntry)).getBytes("US-ASCII");
+        assertEquals(simpleEntry, serializer.deSerialize(legacyBytes));
+    }
+
+    public void testBufferReuse() throws Exception {
+        final IBinarySerializer serializer = new JavaSerializer();
+
+        final SimpleEntry small = new SimpleEntry();
+        small.setMsg("MSG - SMALL");
+        small.setStatusCode(1);
+        final byte[] smallBytes = serializer.serialize(small);
+
+        // Grows the buffer of the thread, beyond the size retained after use.
+        final char[] chars = new char[2 * 1024 * 1024];
+        Arrays.fill(chars, 'A');
+        final SimpleEntry large = new SimpleEntry();
+        large.setMsg(new String(chars));
+        large.setStatusCode(2);
+        checkSerializer(large, serializer);
+
+        // Nothing of the earlier values is left in the buffer.
+        assertTrue(Arrays.equals(smallBytes, serializer.serialize(small)));
+        checkSerializer(small, serializer);
+    }
+
+    private void checkSerializer(Serializable obj, IBinarySerializer serializer) throws SerializationException {
+        final byte[] serializedBytes = serializer.serialize(obj);
+        final Object deSerializedObject = serializer.deSerialize(serializedBytes);
 
         assertEquals(obj, deSerializedObject);
     }
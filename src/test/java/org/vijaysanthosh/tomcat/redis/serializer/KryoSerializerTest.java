@@ -0,0 +1,77 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SampleEntry;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
+
+import java.io.Serializable;
+import java.util.*;
+
+public class KryoSerializerTest extends TestCase {
+
+    public void testSerialization() throws Exception {
+        final IBinarySerializer serializer = new KryoSerializer();
+        serializer.setClassLoader(getClass().getClassLoader());
+
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - SIMPLE");
+        simpleEntry.setStatusCode(1231);
+
+        final SampleEntry sampleEntry = new SampleEntry();
+        sampleEntry.setMsg("MSG - SAMPLE");
+        sampleEntry.setStatusCode(9876);
+        sampleEntry.setEntry(simpleEntry);
+
+        final HashMap<String, SimpleEntry> map = new HashMap<String, SimpleEntry>();
+        map.put("KEY", simpleEntry);
+
+        final List<Serializable> objects = Arrays.asList("ABC", 123, (long) 123, new Date(), simpleEntry, sampleEntry,
+                new ArrayList<SampleEntry>(Collections.singletonList(sampleEntry)), map, Locale.FRANCE);
+        for(Serializable obj : objects) {
+            assertEquals(obj, serializer.deSerialize(serializer.serialize(obj)));
+        }
+    }
+
+    public void testSharedReferences() throws Exception {
+        final IBinarySerializer serializer = new KryoSerializer();
+
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - SHARED");
+        final ArrayList<Object> list = new ArrayList<Object>();
+        list.add(simpleEntry);
+        list.add(simpleEntry);
+        list.add(list);
+
+        final List<?> deSerialized = (List<?>) serializer.deSerialize(serializer.serialize(list));
+        assertSame(deSerialized.get(0), deSerialized.get(1));
+        assertSame(deSerialized, deSerialized.get(2));
+    }
+
+    public void testJavaSerializedValues() throws Exception {
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - JAVA");
+        simpleEntry.setStatusCode(4321);
+
+        // Values written before switching from JavaSerializer are still read.
+        final byte[] javaBytes = new JavaSerializer().serialize(simpleEntry);
+        assertEquals(simpleEntry, new KryoSerializer().deSerialize(javaBytes));
+    }
+
+    public void testClassLoader() throws Exception {
+        final Set<String> loaded = new HashSet<String>();
+        final ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                loaded.add(name);
+                return super.loadClass(name, resolve);
+            }
+        };
+
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg("MSG - CLASSLOADER");
+        final IBinarySerializer serializer = new KryoSerializer();
+        serializer.setClassLoader(classLoader);
+        assertEquals(simpleEntry, serializer.deSerialize(new KryoSerializer().serialize(simpleEntry)));
+        assertTrue(loaded.contains(SimpleEntry.class.getName()));
+    }
+}
@@ -0,0 +1,32 @@
+package org.vijaysanthosh.tomcat.redis.serializer;
+
+import junit.framework.TestCase;
+
+import java.io.Serializable;
+
+public class StringSerializerAdapterTest extends TestCase {
+
+    public void testAdapter() throws Exception {
+        final IBinarySerializer serializer = new StringSerializerAdapter(new ISerializer() {
+            @Override
+            public void setClassLoader(ClassLoader classLoader) {
+                // Do nothing
+            }
+
+            @Override
+            public String serialize(Serializable object) throws SerializationException {
+                return String.valueOf(object);
+            }
+
+            @Override
+            public Serializable deSerialize(String serializedString) throws SerializationException {
+                return serializedString;
+            }
+        });
+
+        final String value = "ÄBC - €";
+        assertEquals(value, new String(serializer.serialize(value), "UTF-8"));
+        assertEquals(value, serializer.deSerialize(value.getBytes("UTF-8")));
+    }
+
+}
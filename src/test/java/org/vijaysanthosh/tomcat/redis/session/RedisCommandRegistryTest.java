@@ -0,0 +1,96 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class RedisCommandRegistryTest extends TestCase {
+
+    private static final String SESSION_ID = "ABCD";
+    private static final String KEY = "session:attributes:ABCD";
+
+    public void testCoalescing() throws Exception {
+        final RedisCommandRegistry registry = new RedisCommandRegistry(4, 64);
+        final int stripe = registry.getStripe(SESSION_ID);
+
+        registry.register(expiry());
+        for(int i = 0; i < 10; i++) {
+            registry.register(hset("cart", i));
+        }
+        registry.register(hset("user", "USER"));
+        registry.register(new RedisCommand(SESSION_ID).setCommand(Command.HDEL).setKey(KEY).setField("user"));
+        registry.register(expiry());
+        assertEquals(14, registry.size(stripe));
+
+        final List<RedisCommand> commands = registry.drain(stripe);
+        assertEquals(0, registry.size());
+        assertEquals(3, commands.size());
+
+        // Last write wins and keeps the position of the first registration, whereas the expiry moves to the latest.
+        assertEquals(Command.HSET, commands.get(0).getCommand());
+        assertEquals(9, commands.get(0).getValue());
+        assertEquals(Command.HDEL, commands.get(1).getCommand());
+        assertEquals("user", commands.get(1).getField());
+        assertEquals(Command.EXPIRY, commands.get(2).getCommand());
+    }
+
+    public void testExpiryAfterReplacedWrite() throws Exception {
+        final RedisCommandRegistry registry = new RedisCommandRegistry(4, 64);
+
+        registry.register(hset("cart", 1));
+        registry.register(expiry());
+        registry.register(hset("cart", 2));
+
+        // The expiry stays after the HSET creating the key.
+        final List<RedisCommand> commands = registry.drain(registry.getStripe(SESSION_ID));
+        assertEquals(2, commands.size());
+        assertEquals(Command.HSET, commands.get(0).getCommand());
+        assertEquals(2, commands.get(0).getValue());
+        assertEquals(Command.EXPIRY, commands.get(1).getCommand());
+    }
+
+    public void testDelete() throws Exception {
+        final RedisCommandRegistry registry = new RedisCommandRegistry(4, 64);
+
+        registry.register(hset("cart", 1));
+        registry.register(expiry());
+        registry.register(new RedisCommand(SESSION_ID).setCommand(Command.DEL).setKey(KEY));
+        registry.register(hset("user", "USER"));
+
+        final List<RedisCommand> commands = registry.drain(registry.getStripe(SESSION_ID));
+        assertEquals(2, commands.size());
+        assertEquals(Command.DEL, commands.get(0).getCommand());
+        assertEquals(Command.HSET, commands.get(1).getCommand());
+        assertEquals("user", commands.get(1).getField());
+    }
+
+    public void testStriping() throws Exception {
+        final RedisCommandRegistry registry = new RedisCommandRegistry(4, 2);
+
+        assertTrue(registry.register(hset("cart", 1)));
+        assertTrue(registry.register(hset("user", "USER")));
+        assertFalse(registry.register(expiry()));
+
+        // The commands of the other sessions are not affected by a full stripe.
+        String sessionId = SESSION_ID;
+        for(int i = 0; registry.getStripe(sessionId) == registry.getStripe(SESSION_ID); i++) {
+            sessionId = SESSION_ID + i;
+        }
+        assertTrue(registry.register(new RedisCommand(sessionId).setCommand(Command.EXPIRY).setKey(KEY).setExpiryInterval(60)));
+
+        assertEquals(2, registry.drain(registry.getStripe(SESSION_ID)).size());
+        assertTrue(registry.register(expiry()));
+        assertEquals(2, registry.size());
+    }
+
+    private RedisCommand hset(String field, Serializable value) {
+        return new RedisCommand(SESSION_ID).setCommand(Command.HSET).setKey(KEY).setField(field).setValue(value);
+    }
+
+    private RedisCommand expiry() {
+        return new RedisCommand(SESSION_ID).setCommand(Command.EXPIRY).setKey(KEY).setExpiryInterval(60);
+    }
+
+}
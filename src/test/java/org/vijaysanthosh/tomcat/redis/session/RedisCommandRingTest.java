@@ -0,0 +1,77 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class RedisCommandRingTest extends TestCase {
+
+    public void testCapacity() throws Exception {
+        final RedisCommandRing ring = new RedisCommandRing(3);
+        assertEquals(4, ring.getCapacity());
+        assertNull(ring.poll());
+
+        for(int lap = 0; lap < 3; lap++) {
+            for(int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(command("A", i)));
+            }
+            assertFalse(ring.offer(command("A", 4)));
+            assertEquals(4, ring.size());
+
+            for(int i = 0; i < 4; i++) {
+                assertEquals(i, ring.poll().getValue());
+            }
+            assertNull(ring.poll());
+            assertEquals(0, ring.size());
+        }
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int commands = 100000;
+        final RedisCommandRing ring = new RedisCommandRing(64);
+
+        final Thread[] threads = new Thread[producers];
+        for(int i = 0; i < producers; i++) {
+            final String sessionId = "SESSION-" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < commands; j++) {
+                        final RedisCommand command = command(sessionId, j);
+                        while (!ring.offer(command)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        // The commands of each producer are polled in the order they were offered.
+        final Map<String, Integer> next = new HashMap<String, Integer>();
+        int polled = 0;
+        while (polled < producers * commands) {
+            final RedisCommand command = ring.poll();
+            if(command == null) {
+                Thread.yield();
+                continue;
+            }
+            final Integer expected = next.get(command.getSessionId());
+            assertEquals(expected == null ? 0 : expected, command.getValue());
+            next.put(command.getSessionId(), (Integer) command.getValue() + 1);
+            polled++;
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(ring.poll());
+    }
+
+    private static RedisCommand command(final String sessionId, final int value) {
+        return new RedisCommand(sessionId).setCommand(Command.HSET).setKey("session:attributes:" + sessionId).setField("cart").setValue(value);
+    }
+}
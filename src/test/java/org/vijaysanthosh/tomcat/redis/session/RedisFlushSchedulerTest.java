@@ -0,0 +1,96 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.util.concurrent.TimeUnit;
+
+public class RedisFlushSchedulerTest extends TestCase {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private LocalRedisServer server;
+    private RedisStoreManager storeManager;
+    private RedisSessionActionHandler actionHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.server = new LocalRedisServer();
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        this.storeManager = sessionManager.getStoreManager();
+        this.storeManager.setHost(this.server.getHost());
+        this.storeManager.setPort(this.server.getPort());
+        this.storeManager.setExecutorPoolSize(1);
+        this.storeManager.setScripting(false);
+        this.storeManager.init();
+        this.actionHandler = new RedisSessionActionHandler(sessionManager, 1800, 100);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        this.server.shutdown();
+    }
+
+    public void testFlushInterval() throws Exception {
+        final RedisFlushScheduler scheduler = new RedisFlushScheduler(this.actionHandler, 10, 100);
+        final long start = System.nanoTime();
+        register(5);
+
+        // Redis is fast, yet the commands are held.
+        scheduler.tick(start + MILLIS);
+        assertEquals(100, scheduler.getBatchLimit());
+        assertEquals(5, this.actionHandler.getRegistrySize());
+
+        // Woken up as the commands are due, rather than at the next tick.
+        assertEquals(MILLIS, scheduler.tick(this.actionHandler.registry.getPendingSince(0) + 9 * MILLIS));
+        assertEquals(5, this.actionHandler.getRegistrySize());
+
+        // Pending for the flush interval.
+        scheduler.tick(this.actionHandler.registry.getPendingSince(0) + 10 * MILLIS);
+        assertEquals(0, this.actionHandler.getRegistrySize());
+    }
+
+    public void testPendingSinceRegistration() throws Exception {
+        final RedisFlushScheduler scheduler = new RedisFlushScheduler(this.actionHandler, 10, 100);
+        register(5);
+
+        // Timed from the registration, even though no check has seen the commands before.
+        scheduler.tick(this.actionHandler.registry.getPendingSince(0) + 10 * MILLIS);
+        assertEquals(0, this.actionHandler.getRegistrySize());
+    }
+
+    public void testBatchLimit() throws Exception {
+        final RedisFlushScheduler scheduler = new RedisFlushScheduler(this.actionHandler, 1000, 50);
+        final long start = System.nanoTime();
+
+        // No round trip observed yet, hence held until the minimum batch.
+        register(49);
+        scheduler.tick(start + MILLIS);
+        assertEquals(50, scheduler.getBatchLimit());
+        assertEquals(49, this.actionHandler.getRegistrySize());
+        register(1);
+        scheduler.tick(start + 2 * MILLIS);
+        assertEquals(0, this.actionHandler.getRegistrySize());
+
+        // A slow redis grows the batches up to half the capacity of a stripe.
+        this.storeManager.getMetrics().recordFlush(1, TimeUnit.SECONDS.toNanos(1));
+        register(100);
+        scheduler.tick(start + 3 * MILLIS);
+        assertEquals(this.actionHandler.registry.getCapacity() / 2, scheduler.getBatchLimit());
+        assertEquals(100, this.actionHandler.getRegistrySize());
+
+        // Pending for the flush interval.
+        scheduler.tick(this.actionHandler.registry.getPendingSince(0) + 1000 * MILLIS);
+        assertEquals(0, this.actionHandler.getRegistrySize());
+    }
+
+    private void register(final int commands) {
+        for(int i = 0; i < commands; i++) {
+            this.actionHandler.registerCommand(new RedisCommand("ABCD").setCommand(Command.HSET)
+                    .setKey("session:attributes:ABCD").setField("attribute" + i).setValue(i));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.core.StandardContext;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+public class RedisSessionClusterTest extends TestCase {
+
+    private LocalRedisServer[] servers;
+    private RedisSessionManager sessionManager;
+    private RedisStoreManager storeManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.servers = new LocalRedisServer[] {new LocalRedisServer(), new LocalRedisServer()};
+        LocalRedisServer.formCluster(this.servers);
+        this.sessionManager = new RedisSessionManager();
+        this.sessionManager.setContainer(new StandardContext());
+        this.storeManager = this.sessionManager.getStoreManager();
+        this.storeManager.setClusterNodes(this.servers[0].getHost() + ":" + this.servers[0].getPort());
+        this.storeManager.setScripting(false);
+        this.storeManager.setExecutorPoolSize(1);
+        this.storeManager.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        for (LocalRedisServer server : this.servers) {
+            server.shutdown();
+        }
+    }
+
+    public void testLoadFromSingleNode() throws Exception {
+        this.sessionManager.setSessionLayout("tagged");
+        this.sessionManager.attachRedisActionHandler();
+
+        // A session whose legacy hashes would live on the other node.
+        String sessionId = null;
+        for (int i = 0; sessionId == null; i++) {
+            final String candidate = "SESSION-" + i;
+            if (LocalRedisServer.getNode(this.servers, "session:{" + candidate + "}:main") != LocalRedisServer.getNode(this.servers, "session:main:" + candidate)) {
+                sessionId = candidate;
+            }
+        }
+        this.storeManager.hset("session:{" + sessionId + "}:main", "id", sessionId, true);
+        this.storeManager.hset("session:{" + sessionId + "}:main", "ctime", System.currentTimeMillis(), true);
+
+        final LocalRedisServer otherNode = LocalRedisServer.getNode(this.servers, "session:main:" + sessionId);
+        final int commandCount = otherNode.getCommandCount();
+        assertNotNull(this.sessionManager.getActionHandler().loadSession(sessionId));
+        assertEquals(commandCount, otherNode.getCommandCount());
+    }
+
+    public void testMultiSlotLayoutRejected() throws Exception {
+        this.sessionManager.setSessionLayout("multi");
+        try {
+            this.sessionManager.attachRedisActionHandler();
+            fail("Expected LifecycleException");
+        } catch (LifecycleException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.util.StandardSessionIdGenerator;
+import org.vijaysanthosh.tomcat.redis.store.InMemoryRedisBackend;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class RedisSessionIdPoolTest extends TestCase {
+
+    private RedisSessionManager sessionManager;
+    private RedisStoreManager storeManager;
+    private InMemoryRedisBackend backend;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.sessionManager = new RedisSessionManager();
+        this.sessionManager.setContainer(new StandardContext());
+        this.sessionManager.setSessionIdGenerator(new StandardSessionIdGenerator());
+        this.sessionManager.setSessionIdReservation(8);
+        this.storeManager = this.sessionManager.getStoreManager();
+        this.storeManager.setBackend("memory");
+        this.storeManager.init();
+        this.sessionManager.attachRedisActionHandler();
+        this.backend = (InMemoryRedisBackend) this.storeManager.getRedisBackend();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+    }
+
+    public void testSkipsRegisteredIds() throws Exception {
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        actionHandler.regsisterSessionId("ABCD", false);
+
+        assertEquals(Collections.singletonList("EFGH"), actionHandler.reserveSessionIds(Arrays.asList("ABCD", "EFGH")));
+        assertTrue(this.backend.getTimeToLive(actionHandler.getLayout().getKey("EFGH", RedisSessionLayout.MAIN)) > 0L);
+    }
+
+    public void testHandsOutReservedIds() throws Exception {
+        final RedisSessionIdPool pool = new RedisSessionIdPool(this.sessionManager, 8, 60);
+        assertNull(pool.poll());
+
+        pool.reserve();
+        assertEquals(8, pool.size());
+        final Set<String> sessionIds = new HashSet<String>();
+        String sessionId;
+        while ((sessionId = pool.poll()) != null) {
+            assertNotNull(this.backend.getHash(this.sessionManager.getActionHandler().getLayout().getKey(sessionId, RedisSessionLayout.MAIN)));
+            sessionIds.add(sessionId);
+        }
+        assertEquals(8, sessionIds.size());
+    }
+
+    public void testDropsStaleIds() throws Exception {
+        // Stale as soon as reserved, as their registration expires right away.
+        final RedisSessionIdPool pool = new RedisSessionIdPool(this.sessionManager, 8, 0);
+        pool.reserve();
+        assertNull(pool.poll());
+    }
+}
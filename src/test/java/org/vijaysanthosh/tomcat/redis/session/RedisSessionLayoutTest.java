@@ -0,0 +1,93 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.LifecycleException;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.util.*;
+
+public class RedisSessionLayoutTest extends TestCase {
+
+    private static final String SESSION_ID = "ABCD";
+
+    public void testMultiHashLayout() throws Exception {
+        final RedisSessionLayout layout = RedisSessionLayout.getLayout("multi");
+
+        assertEquals("session:main:ABCD", layout.getKey(SESSION_ID, RedisSessionLayout.MAIN));
+        assertEquals("session:attributes:ABCD", layout.getKey(SESSION_ID, RedisSessionLayout.ATTRIBUTES));
+        assertEquals("cart", layout.getField(RedisSessionLayout.ATTRIBUTES, "cart"));
+        assertEquals(Arrays.asList("session:main:ABCD", "session:notes:ABCD", "session:attributes:ABCD"), layout.getKeys(SESSION_ID));
+        assertTrue(layout.getLegacyKeys(SESSION_ID).isEmpty());
+
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        data.put("session:main:ABCD", Collections.singletonMap("ctime", new byte[] {1}));
+        data.put("session:attributes:ABCD", Collections.singletonMap("cart", new byte[] {2}));
+
+        final Map<String, Map<String, byte[]>> buckets = layout.getBuckets(SESSION_ID, data);
+        assertEquals(1, buckets.get(RedisSessionLayout.MAIN).get("ctime")[0]);
+        assertNull(buckets.get(RedisSessionLayout.NOTES));
+        assertEquals(2, buckets.get(RedisSessionLayout.ATTRIBUTES).get("cart")[0]);
+    }
+
+    public void testSingleHashLayout() throws Exception {
+        final RedisSessionLayout layout = RedisSessionLayout.getLayout("single");
+
+        assertEquals("session:ABCD", layout.getKey(SESSION_ID, RedisSessionLayout.MAIN));
+        assertEquals("session:ABCD", layout.getKey(SESSION_ID, RedisSessionLayout.ATTRIBUTES));
+        assertEquals("a:cart", layout.getField(RedisSessionLayout.ATTRIBUTES, "cart"));
+        assertEquals("m:ctime", layout.getField(RedisSessionLayout.MAIN, "ctime"));
+        assertEquals(Collections.singletonList("session:ABCD"), layout.getKeys(SESSION_ID));
+        assertEquals(3, layout.getLegacyKeys(SESSION_ID).size());
+
+        final Map<String, byte[]> hash = new HashMap<String, byte[]>();
+        hash.put("m:ctime", new byte[] {1});
+        hash.put("a:cart", new byte[] {2});
+        hash.put("a:n:odd", new byte[] {3});
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        data.put("session:ABCD", hash);
+
+        final Map<String, Map<String, byte[]>> buckets = layout.getBuckets(SESSION_ID, data);
+        assertEquals(1, buckets.get(RedisSessionLayout.MAIN).get("ctime")[0]);
+        assertNull(buckets.get(RedisSessionLayout.NOTES));
+        assertEquals(2, buckets.get(RedisSessionLayout.ATTRIBUTES).get("cart")[0]);
+        assertEquals(3, buckets.get(RedisSessionLayout.ATTRIBUTES).get("n:odd")[0]);
+
+        // Sessions written in the multi-hash layout are read as well.
+        data.clear();
+        data.put("session:main:ABCD", Collections.singletonMap("ctime", new byte[] {4}));
+        assertNull(layout.getBuckets(SESSION_ID, data).get(RedisSessionLayout.MAIN));
+        assertEquals(4, layout.getLegacyBuckets(SESSION_ID, data).get(RedisSessionLayout.MAIN).get("ctime")[0]);
+    }
+
+    public void testTaggedHashLayout() throws Exception {
+        final RedisSessionLayout layout = RedisSessionLayout.getLayout("tagged");
+
+        assertEquals("session:{ABCD}:main", layout.getKey(SESSION_ID, RedisSessionLayout.MAIN));
+        assertEquals("cart", layout.getField(RedisSessionLayout.ATTRIBUTES, "cart"));
+        assertEquals(3, layout.getLegacyKeys(SESSION_ID).size());
+        assertEquals(SESSION_ID, layout.getSessionId("session:{ABCD}:attributes"));
+        assertEquals(SESSION_ID, layout.getSessionId("session:attributes:ABCD"));
+        assertTrue(layout.isSingleSlot());
+        assertFalse(RedisSessionLayout.getLayout("multi").isSingleSlot());
+
+        // All the hashes of the session belong to the same slot of a redis cluster.
+        final int slot = JedisClusterCRC16.getSlot(SESSION_ID);
+        for(String key : layout.getKeys(SESSION_ID)) {
+            assertEquals(slot, JedisClusterCRC16.getSlot(key));
+        }
+
+        final Map<String, Map<String, byte[]>> data = new HashMap<String, Map<String, byte[]>>();
+        data.put("session:{ABCD}:main", Collections.singletonMap("ctime", new byte[] {1}));
+        assertEquals(1, layout.getBuckets(SESSION_ID, data).get(RedisSessionLayout.MAIN).get("ctime")[0]);
+    }
+
+    public void testUnknownLayout() throws Exception {
+        try {
+            RedisSessionLayout.getLayout("unknown");
+            fail("Expected LifecycleException");
+        } catch (LifecycleException e) {
+            // Expected
+        }
+    }
+
+}
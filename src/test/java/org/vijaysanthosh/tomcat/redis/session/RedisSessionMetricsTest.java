@@ -0,0 +1,29 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+public class RedisSessionMetricsTest extends TestCase {
+
+    public void testMBean() throws Exception {
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        sessionManager.getStoreManager().getMetrics().recordLoad(true, 2000000L);
+        sessionManager.getStoreManager().getMetrics().recordLoad(false, 4000000L);
+        sessionManager.getStoreManager().getMetrics().recordFlush(10, 1000000L);
+
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = new ObjectName("Catalina:type=RedisSessionMetrics,context=/,host=localhost");
+        server.registerMBean(new RedisSessionMetrics(sessionManager), name);
+
+        assertEquals(1L, server.getAttribute(name, "LoadHits"));
+        assertEquals(1L, server.getAttribute(name, "LoadMisses"));
+        assertEquals(3d, server.getAttribute(name, "LoadLatencyMeanMillis"));
+        assertEquals(1L, server.getAttribute(name, "Flushes"));
+        assertEquals(10L, server.getAttribute(name, "CommandsFlushed"));
+        assertEquals(0, server.getAttribute(name, "RegistrySize"));
+        assertEquals(0, ((int[]) server.getAttribute(name, "ExecutorBacklog")).length);
+    }
+}
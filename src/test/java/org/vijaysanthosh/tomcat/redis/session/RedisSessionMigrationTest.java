@@ -0,0 +1,62 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.core.StandardContext;
+import org.vijaysanthosh.tomcat.redis.store.InMemoryRedisBackend;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+public class RedisSessionMigrationTest extends TestCase {
+
+    private RedisSessionManager sessionManager;
+    private RedisStoreManager storeManager;
+    private InMemoryRedisBackend backend;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.sessionManager = new RedisSessionManager();
+        this.sessionManager.setContainer(new StandardContext());
+        this.sessionManager.setSessionLayout("single");
+        this.storeManager = this.sessionManager.getStoreManager();
+        this.storeManager.setBackend("memory");
+        this.storeManager.setExecutorPoolSize(1);
+        this.storeManager.init();
+        this.sessionManager.attachRedisActionHandler();
+        this.backend = (InMemoryRedisBackend) this.storeManager.getRedisBackend();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+    }
+
+    public void testLegacyKeysReadOnMissOnly() throws Exception {
+        this.storeManager.hset("session:ABCD", "m:id", "ABCD", true);
+        this.storeManager.hset("session:ABCD", "m:ctime", System.currentTimeMillis(), true);
+        // Left over in the layout migrated from, without an expiry.
+        this.storeManager.hset("session:main:ABCD", "ctime", System.currentTimeMillis(), true);
+
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        assertNotNull(actionHandler.loadSession("ABCD"));
+        assertTrue(this.backend.getTimeToLive("session:ABCD") > 0L);
+        // Not even touched, as the session is found in the configured layout.
+        assertEquals(-1L, this.backend.getTimeToLive("session:main:ABCD"));
+    }
+
+    public void testMigration() throws Exception {
+        this.storeManager.hset("session:main:EFGH", "id", "EFGH", true);
+        this.storeManager.hset("session:main:EFGH", "ctime", System.currentTimeMillis(), true);
+        this.storeManager.hset("session:attributes:EFGH", "cart", "CART", true);
+
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        final RedisSession session = (RedisSession) actionHandler.loadSession("EFGH");
+        assertEquals("CART", session.getAttribute("cart"));
+        actionHandler.flushActions();
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (this.backend.getHash("session:main:EFGH") != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertNull(this.backend.getHash("session:main:EFGH"));
+        assertNotNull(this.backend.getHash("session:EFGH").get("a:cart"));
+    }
+}
@@ -0,0 +1,221 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+
+import javax.servlet.http.HttpSession;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class RedisSessionNearCacheTest extends TestCase {
+
+    private static final long TIMEOUT = 5000L;
+
+    private final RedisSessionManager sessionManager = new RedisSessionManager();
+
+    public void testVersioning() throws Exception {
+        final RedisSessionNearCache nearCache = new RedisSessionNearCache(RedisSessionLayout.getLayout("multi"), 10);
+        assertFalse(nearCache.put(session("ABCD"), nearCache.getVersion()));
+
+        nearCache.onSubscribe();
+        final long version = nearCache.getVersion();
+        nearCache.onKeyChanged("session:attributes:ABCD", "hset");
+
+        // Loaded before the change, hence stale.
+        assertFalse(nearCache.put(session("ABCD"), version));
+        assertTrue(nearCache.put(session("ABCD"), nearCache.getVersion()));
+        assertTrue(nearCache.put(session("EFGH"), version));
+        assertNotNull(nearCache.get("ABCD"));
+
+        // Resetting the expiry does not change the session.
+        nearCache.onKeyChanged("session:main:ABCD", "expire");
+        assertNotNull(nearCache.get("ABCD"));
+
+        nearCache.onKeyChanged("session:main:ABCD", "del");
+        assertNull(nearCache.get("ABCD"));
+        assertNotNull(nearCache.get("EFGH"));
+
+        nearCache.onDisconnect();
+        assertFalse(nearCache.isActive());
+        assertNull(nearCache.get("EFGH"));
+        assertEquals(0, nearCache.size());
+    }
+
+    public void testEviction() throws Exception {
+        final RedisSessionNearCache nearCache = new RedisSessionNearCache(RedisSessionLayout.getLayout("multi"), 2);
+        nearCache.onSubscribe();
+
+        nearCache.put(session("A"), nearCache.getVersion());
+        nearCache.put(session("B"), nearCache.getVersion());
+        nearCache.get("A");
+        nearCache.put(session("C"), nearCache.getVersion());
+
+        assertEquals(2, nearCache.size());
+        assertNotNull(nearCache.get("A"));
+        assertNull(nearCache.get("B"));
+        assertNotNull(nearCache.get("C"));
+    }
+
+    public void testWriteOutcomes() throws Exception {
+        final RedisSessionLayout layout = RedisSessionLayout.getLayout("multi");
+        final RedisSessionNearCache nearCache = new RedisSessionNearCache(layout, 10);
+        nearCache.onSubscribe();
+        final String key = layout.getKey("ABCD", RedisSessionLayout.ATTRIBUTES);
+
+        // Notified before the reply of the write confirms it.
+        assertTrue(nearCache.put(session("ABCD"), nearCache.getVersion()));
+        final List<RedisCommand> hset = Collections.singletonList(new RedisCommand("ABCD").setCommand(RedisCommand.Command.HSET).setKey(key).setField("cart"));
+        nearCache.beginWrites(hset);
+        nearCache.onKeyChanged(key, "hset");
+        assertNotNull(nearCache.get("ABCD"));
+        nearCache.onWritten(hset, new HashSet<RedisCommand>(hset));
+        assertNotNull(nearCache.get("ABCD"));
+
+        // Notified after the reply, matched by the event.
+        nearCache.beginWrites(hset);
+        nearCache.onWritten(hset, new HashSet<RedisCommand>(hset));
+        nearCache.onKeyChanged(key, "del");
+        assertNull(nearCache.get("ABCD"));
+        nearCache.onKeyChanged(key, "hset");
+
+        // Changed by another node while the batch was dropped.
+        assertTrue(nearCache.put(session("ABCD"), nearCache.getVersion()));
+        nearCache.beginWrites(hset);
+        nearCache.onKeyChanged(key, "hset");
+        assertNotNull(nearCache.get("ABCD"));
+        nearCache.onWritten(hset, Collections.<RedisCommand>emptySet());
+        assertNull(nearCache.get("ABCD"));
+
+        // An HDEL of a missing field is not notified, hence a later notification is that of another node.
+        assertTrue(nearCache.put(session("ABCD"), nearCache.getVersion()));
+        final List<RedisCommand> hdel = Collections.singletonList(new RedisCommand("ABCD").setCommand(RedisCommand.Command.HDEL).setKey(key).setField("cart"));
+        nearCache.beginWrites(hdel);
+        nearCache.onWritten(hdel, Collections.<RedisCommand>emptySet());
+        nearCache.onKeyChanged(key, "hdel");
+        assertNull(nearCache.get("ABCD"));
+
+        // The HSETNX of the id lost to another node, which set it.
+        final String mainKey = layout.getKey("ABCD", RedisSessionLayout.MAIN);
+        assertTrue(nearCache.put(session("ABCD"), nearCache.getVersion()));
+        nearCache.beginWrite(mainKey);
+        nearCache.onKeyChanged(mainKey, "hset");
+        nearCache.endWrite(mainKey, "hset", false);
+        assertNull(nearCache.get("ABCD"));
+    }
+
+    public void testKeyspaceNotifications() throws Exception {
+        final LocalRedisServer server = new LocalRedisServer();
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setHost(server.getHost());
+        storeManager.setPort(server.getPort());
+        storeManager.setScripting(false);
+        try {
+            storeManager.init();
+            final RedisSessionLayout layout = RedisSessionLayout.getLayout("multi");
+            final RedisSessionNearCache nearCache = new RedisSessionNearCache(layout, 10);
+            storeManager.subscribeKeyspace(layout.getKeyPattern(), nearCache);
+            awaitActive(nearCache);
+
+            nearCache.put(session("ABCD"), nearCache.getVersion());
+            storeManager.hset(layout.getKey("ABCD", RedisSessionLayout.ATTRIBUTES), "cart", "CART", true);
+            awaitEmpty(nearCache);
+            assertEquals(0, nearCache.size());
+        } finally {
+            storeManager.destroy();
+            server.shutdown();
+        }
+    }
+
+    public void testOwnWrites() throws Exception {
+        final LocalRedisServer server = new LocalRedisServer();
+        final RedisSessionManager sessionManager = new RedisSessionManager();
+        sessionManager.setContainer(new StandardContext());
+        sessionManager.setNearCacheSize(10);
+        final RedisStoreManager storeManager = sessionManager.getStoreManager();
+        storeManager.setHost(server.getHost());
+        storeManager.setPort(server.getPort());
+        storeManager.setExecutorPoolSize(1);
+        storeManager.setScripting(false);
+        try {
+            storeManager.init();
+            sessionManager.attachRedisActionHandler();
+            sessionManager.attachNearCache();
+            final RedisSessionNearCache nearCache = sessionManager.nearCache;
+            awaitActive(nearCache);
+
+            final RedisSessionLayout layout = RedisSessionLayout.getLayout("multi");
+            storeManager.hset(layout.getKey("ABCD", RedisSessionLayout.MAIN), "id", "ABCD", true);
+            storeManager.hset(layout.getKey("ABCD", RedisSessionLayout.MAIN), "ctime", System.currentTimeMillis(), true);
+            awaitNotified(storeManager, nearCache);
+            final Session session = sessionManager.findSession("ABCD");
+            assertSame(session, nearCache.get("ABCD"));
+
+            // Written by this node, hence still cached and still in use.
+            ((HttpSession) session).setAttribute("cart", "CART");
+            sessionManager.getActionHandler().flushActions();
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (server.getHash(layout.getKey("ABCD", RedisSessionLayout.ATTRIBUTES)) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            awaitNotified(storeManager, nearCache);
+            assertSame(session, nearCache.get("ABCD"));
+            assertSame(session, sessionManager.findSession("ABCD"));
+
+            // Written by another node, hence loaded again in place of the in-memory session.
+            storeManager.hset(layout.getKey("ABCD", RedisSessionLayout.ATTRIBUTES), "cart", "OTHER", true);
+            awaitNotified(storeManager, nearCache);
+            assertNull(nearCache.get("ABCD"));
+            final Session reloaded = sessionManager.findSession("ABCD");
+            assertNotSame(session, reloaded);
+            assertEquals("OTHER", ((HttpSession) reloaded).getAttribute("cart"));
+            assertSame(reloaded, sessionManager.findSession("ABCD"));
+
+            // Evicted from the cache only, hence still found in memory.
+            nearCache.remove("ABCD");
+            assertSame(reloaded, sessionManager.findSession("ABCD"));
+        } finally {
+            storeManager.destroy();
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the notifications of the changes made so far, as they are received in order.
+     */
+    private void awaitNotified(final RedisStoreManager storeManager, final RedisSessionNearCache nearCache) throws Exception {
+        nearCache.put(session("SENTINEL"), nearCache.getVersion());
+        storeManager.hset(RedisSessionLayout.getLayout("multi").getKey("SENTINEL", RedisSessionLayout.MAIN), "id", "SENTINEL", true);
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (nearCache.get("SENTINEL") != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertNull(nearCache.get("SENTINEL"));
+    }
+
+    private static void awaitActive(final RedisSessionNearCache nearCache) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!nearCache.isActive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(nearCache.isActive());
+    }
+
+    private static void awaitEmpty(final RedisSessionNearCache nearCache) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (nearCache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private RedisSession session(final String sessionId) {
+        return new RedisSession(this.sessionManager) {
+            {
+                this.id = sessionId;
+            }
+        };
+    }
+}
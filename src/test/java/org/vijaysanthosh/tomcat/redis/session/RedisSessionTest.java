@@ -0,0 +1,242 @@
+package org.vijaysanthosh.tomcat.redis.session;
+
+import junit.framework.TestCase;
+import org.apache.catalina.core.StandardContext;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SampleEntry;
+import org.vijaysanthosh.tomcat.redis.serializer.model.SimpleEntry;
+import org.vijaysanthosh.tomcat.redis.store.LocalRedisServer;
+import org.vijaysanthosh.tomcat.redis.store.RedisStoreManager;
+import org.vijaysanthosh.tomcat.redis.util.HashUtils;
+
+import javax.servlet.http.HttpSessionAttributeListener;
+import javax.servlet.http.HttpSessionBindingEvent;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RedisSessionTest extends TestCase {
+
+    private LocalRedisServer server;
+    private RedisSessionManager sessionManager;
+    private RedisStoreManager storeManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.server = new LocalRedisServer();
+        this.sessionManager = new RedisSessionManager();
+        this.sessionManager.setContainer(new StandardContext());
+        this.sessionManager.setLazyAttributes(true);
+        this.sessionManager.setDirtyTracking(true);
+        this.storeManager = this.sessionManager.getStoreManager();
+        this.storeManager.setHost(this.server.getHost());
+        this.storeManager.setPort(this.server.getPort());
+        this.storeManager.setExecutorPoolSize(1);
+        this.storeManager.setScripting(false);
+        this.storeManager.init();
+        this.sessionManager.attachRedisActionHandler();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        this.server.shutdown();
+    }
+
+    public void testLazyAttributes() throws Exception {
+        final SimpleEntry user = simpleEntry("USER");
+        storeSession("ABCD", user, sampleEntry("REPORT", user));
+
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        final RedisSession session = (RedisSession) actionHandler.loadSession("ABCD");
+        assertNotNull(session.getRawAttribute("user"));
+        assertNotNull(session.getRawAttribute("report"));
+        final Set<String> names = new HashSet<String>(Collections.list(session.getAttributeNames()));
+        assertEquals(2, names.size());
+        assertTrue(names.contains("user") && names.contains("report"));
+
+        // De-serialized on the first access only.
+        assertEquals(user, session.getAttribute("user"));
+        assertNull(session.getRawAttribute("user"));
+        assertNotNull(session.getRawAttribute("report"));
+
+        // Neither the accessed nor the untouched attribute has changed.
+        actionHandler.registerDirtyAttributes(session);
+        assertEquals(0, actionHandler.getRegistrySize());
+
+        session.removeAttribute("report");
+        assertNull(session.getRawAttribute("report"));
+        assertNull(session.getAttribute("report"));
+        assertEquals(1, actionHandler.getRegistrySize());
+    }
+
+    public void testDirtyTracking() throws Exception {
+        final SimpleEntry user = simpleEntry("USER");
+        storeSession("ABCD", user, sampleEntry("REPORT", user));
+
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        final RedisSession session = (RedisSession) actionHandler.loadSession("ABCD");
+
+        // Modified in place, hence written without being set again.
+        actionHandler.beginRequest();
+        ((SimpleEntry) session.getAttribute("user")).setMsg("CHANGED");
+        actionHandler.endRequest(session);
+        assertEquals(1, actionHandler.getRegistrySize());
+        actionHandler.flushActions();
+
+        // Set again unchanged, as by the applications calling setAttribute on every request. Hence not written.
+        actionHandler.beginRequest();
+        session.setAttribute("user", session.getAttribute("user"));
+        assertEquals(0, actionHandler.getRegistrySize());
+        actionHandler.endRequest(session);
+        assertEquals(0, actionHandler.getRegistrySize());
+
+        // Set and then modified in place during the same request. Hence written once, with its final value.
+        actionHandler.beginRequest();
+        final SimpleEntry newUser = simpleEntry("NEW");
+        session.setAttribute("user", newUser);
+        newUser.setStatusCode(2);
+        actionHandler.endRequest(session);
+        assertEquals(1, actionHandler.getRegistrySize());
+        actionHandler.flushActions();
+
+        // Outside of a request, a change is written right away, and an unchanged value is not.
+        session.setAttribute("user", simpleEntry("NEW"));
+        assertEquals(1, actionHandler.getRegistrySize());
+        actionHandler.flushActions();
+        session.setAttribute("user", simpleEntry("NEW"));
+        assertEquals(0, actionHandler.getRegistrySize());
+    }
+
+    public void testOnDemandAttributes() throws Exception {
+        this.sessionManager.setOnDemandAttributes(true);
+        this.sessionManager.setHotAttributes("user");
+        this.sessionManager.attachRedisActionHandler();
+        final SimpleEntry user = simpleEntry("USER");
+        final SampleEntry report = sampleEntry("REPORT", user);
+        storeSession("ABCD", user, report);
+
+        final RedisSessionActionHandler actionHandler = this.sessionManager.getActionHandler();
+        final RedisSession session = (RedisSession) actionHandler.loadSession("ABCD");
+        final Set<String> names = new HashSet<String>(Collections.list(session.getAttributeNames()));
+        assertEquals(2, names.size());
+
+        // Only the hot attribute is loaded along with the session.
+        assertNotNull(session.getRawAttribute("user"));
+        assertTrue(session.isRawAttribute("report"));
+        assertNull(session.getRawAttribute("report"));
+
+        assertEquals(report, session.getAttribute("report"));
+        assertFalse(session.isRawAttribute("report"));
+        assertEquals(user, session.getAttribute("user"));
+
+        actionHandler.registerDirtyAttributes(session);
+        assertEquals(0, actionHandler.getRegistrySize());
+    }
+
+    public void testOnDemandAttributeSetWhileLoading() throws Exception {
+        this.sessionManager.setOnDemandAttributes(true);
+        this.sessionManager.attachRedisActionHandler();
+        final SimpleEntry user = simpleEntry("USER");
+        storeSession("ABCD", user, sampleEntry("REPORT", user));
+
+        final RedisSession session = (RedisSession) this.sessionManager.getActionHandler().loadSession("ABCD");
+        final SampleEntry newReport = sampleEntry("NEW", user);
+        final AtomicReference<Object> readUser = new AtomicReference<Object>();
+        session.actionHandler = new RedisSessionActionHandler(this.sessionManager, 1800, 1000) {
+            @Override
+            byte[] loadAttribute(final RedisSession loading, final String name) {
+                if(!"report".equals(name)) {
+                    return super.loadAttribute(loading, name);
+                }
+                // Another request reads and replaces attributes of the session during the round trip.
+                final Thread request = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        readUser.set(loading.getAttribute("user"));
+                        loading.setAttribute(name, newReport);
+                    }
+                });
+                request.start();
+                try {
+                    request.join(5000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.loadAttribute(loading, name);
+            }
+        };
+
+        // The value loaded is not put in place of the one set meanwhile, nor is its fingerprint.
+        assertSame(newReport, session.getAttribute("report"));
+        assertEquals(user, readUser.get());
+        assertEquals(Long.valueOf(HashUtils.fingerprint(this.storeManager.serialize(newReport))), session.getFingerprint("report"));
+    }
+
+    public void testExpiryWithoutListeners() throws Exception {
+        this.sessionManager.setOnDemandAttributes(true);
+        this.sessionManager.attachRedisActionHandler();
+        storeSession("ABCD", simpleEntry("USER"), sampleEntry("REPORT", simpleEntry("USER")));
+
+        final RedisSession session = (RedisSession) this.sessionManager.getActionHandler().loadSession("ABCD");
+        assertTrue(session.isRawAttribute("report"));
+        final int commands = this.server.getCommandCount();
+        session.expire(true);
+
+        // Neither loaded nor de-serialized, as no listener is to be notified of the values.
+        assertEquals(commands, this.server.getCommandCount());
+        assertFalse(session.isRawAttribute("report"));
+        assertFalse(session.isRawAttribute("user"));
+    }
+
+    public void testExpiryWithListeners() throws Exception {
+        this.sessionManager.setOnDemandAttributes(true);
+        this.sessionManager.attachRedisActionHandler();
+        final SampleEntry report = sampleEntry("REPORT", simpleEntry("USER"));
+        storeSession("ABCD", simpleEntry("USER"), report);
+        final Map<String, Object> removed = new HashMap<String, Object>();
+        ((StandardContext) this.sessionManager.getContainer()).setApplicationEventListeners(new Object[] {
+                new HttpSessionAttributeListener() {
+                    public void attributeAdded(HttpSessionBindingEvent event) {
+                    }
+
+                    public void attributeRemoved(HttpSessionBindingEvent event) {
+                        removed.put(event.getName(), event.getValue());
+                    }
+
+                    public void attributeReplaced(HttpSessionBindingEvent event) {
+                    }
+                }
+        });
+
+        final RedisSession session = (RedisSession) this.sessionManager.getActionHandler().loadSession("ABCD");
+        session.expire(true);
+        assertEquals(report, removed.get("report"));
+        assertEquals(2, removed.size());
+    }
+
+    private void storeSession(final String sessionId, final SimpleEntry user, final SampleEntry report) throws Exception {
+        final RedisSessionLayout layout = RedisSessionLayout.getLayout("multi");
+        this.storeManager.hset(layout.getKey(sessionId, RedisSessionLayout.MAIN), "id", sessionId, true);
+        this.storeManager.hset(layout.getKey(sessionId, RedisSessionLayout.MAIN), "ctime", System.currentTimeMillis(), true);
+        this.storeManager.hset(layout.getKey(sessionId, RedisSessionLayout.ATTRIBUTES), "user", user, true);
+        this.storeManager.hset(layout.getKey(sessionId, RedisSessionLayout.ATTRIBUTES), "report", report, true);
+    }
+
+    private static SimpleEntry simpleEntry(final String msg) {
+        final SimpleEntry simpleEntry = new SimpleEntry();
+        simpleEntry.setMsg(msg);
+        simpleEntry.setStatusCode(1);
+        return simpleEntry;
+    }
+
+    private static SampleEntry sampleEntry(final String msg, final SimpleEntry entry) {
+        final SampleEntry sampleEntry = new SampleEntry();
+        sampleEntry.setMsg(msg);
+        sampleEntry.setStatusCode(2);
+        sampleEntry.setEntry(entry);
+        return sampleEntry;
+    }
+}
@@ -0,0 +1,85 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import org.apache.catalina.LifecycleException;
+
+import java.util.concurrent.ThreadFactory;
+
+public class ExecutorThreadsTest extends TestCase {
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    public void testPlatformThreads() {
+        final ThreadFactory threadFactory = ExecutorThreads.PLATFORM.newThreadFactory("redis-executor-");
+        final Thread first = threadFactory.newThread(NOOP);
+        assertEquals("redis-executor-0", first.getName());
+        assertTrue(first.isDaemon());
+        assertEquals("redis-executor-1", threadFactory.newThread(NOOP).getName());
+    }
+
+    public void testVirtualThreads() throws Exception {
+        if(!ExecutorThreads.VIRTUAL.isSupported()) {
+            try {
+                ExecutorThreads.VIRTUAL.newThreadFactory("redis-executor-");
+                fail("Expected virtual threads to be unsupported before Java 21");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            return;
+        }
+
+        final Thread thread = ExecutorThreads.VIRTUAL.newThreadFactory("redis-executor-").newThread(NOOP);
+        assertEquals("redis-executor-0", thread.getName());
+        assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+    }
+
+    public void testFallsBackToPlatformThreads() throws Exception {
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setBackend("memory");
+        storeManager.setExecutorPoolSize(2);
+        storeManager.setExecutorThreads("virtual");
+        storeManager.init();
+        try {
+            assertEquals(ExecutorThreads.VIRTUAL.isSupported() ? ExecutorThreads.VIRTUAL : ExecutorThreads.PLATFORM, storeManager.executorThreads);
+            assertEquals(2, storeManager.getExecutorBacklog().length);
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    public void testVirtualExecutorPoolSize() throws Exception {
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setBackend("memory");
+        storeManager.setExecutorPoolSize(2);
+        storeManager.setExecutorMailboxes(4);
+        storeManager.setVirtualExecutorPoolSize(64);
+        storeManager.setExecutorThreads("virtual");
+        storeManager.init();
+        try {
+            if(ExecutorThreads.VIRTUAL.isSupported()) {
+                // A mailbox per virtual thread, whatever the number of executor queues.
+                assertEquals(64, storeManager.executor.getWorkers());
+                assertEquals(64, storeManager.executor.getMailboxes());
+            } else {
+                assertEquals(2, storeManager.executor.getWorkers());
+                assertEquals(8, storeManager.executor.getMailboxes());
+            }
+            assertEquals(2, storeManager.executor.getGroups());
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    public void testUnknownThreads() {
+        try {
+            ExecutorThreads.getThreads("green");
+            fail("Expected unknown threads to be rejected");
+        } catch (LifecycleException e) {
+            // Expected
+        }
+    }
+}
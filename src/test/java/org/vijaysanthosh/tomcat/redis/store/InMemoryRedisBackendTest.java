@@ -0,0 +1,81 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class InMemoryRedisBackendTest extends TestCase {
+
+    private static final String KEY = "session:main:ABCD";
+
+    private RedisStoreManager storeManager;
+    private InMemoryRedisBackend backend;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.storeManager = new RedisStoreManager();
+        this.storeManager.setBackend("memory");
+        this.storeManager.setExecutorPoolSize(1);
+        this.storeManager.init();
+        this.backend = (InMemoryRedisBackend) this.storeManager.getRedisBackend();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+    }
+
+    public void testRegistersOnce() throws Exception {
+        assertEquals("ABCD", this.storeManager.hset(KEY, "id", "ABCD", false, 60));
+        assertNull(this.storeManager.hset(KEY, "id", "EFGH", false, 60));
+        assertEquals("ABCD", this.storeManager.deSerialize(this.storeManager.loadRawField(KEY, "id")));
+        assertTrue(this.backend.getTimeToLive(KEY) > 0L);
+    }
+
+    public void testExecutesCommands() throws Exception {
+        this.backend.execute(Arrays.asList(
+                new RedisCommand("ABCD").setCommand(Command.HSET).setKey(KEY).setField("id").setValue("ABCD"),
+                new RedisCommand("ABCD").setCommand(Command.HSET).setKey(KEY).setField("user").setValue("someone"),
+                new RedisCommand("ABCD").setCommand(Command.HDEL).setKey(KEY).setField("user"),
+                new RedisCommand("ABCD").setCommand(Command.EXPIRY).setKey(KEY).setExpiryInterval(60)));
+        assertEquals(Collections.singleton("id"), this.backend.getHash(KEY).keySet());
+        assertTrue(this.backend.getTimeToLive(KEY) > 0L);
+
+        final Map<String, Map<String, byte[]>> data = this.storeManager.loadRawData(
+                Collections.singletonList(KEY), Collections.singleton(KEY), Collections.<String>emptyList(), 0);
+        assertTrue(data.get(KEY).containsKey("id"));
+        assertNull(data.get(KEY).get("id"));
+
+        this.backend.execute(Collections.singletonList(new RedisCommand("ABCD").setCommand(Command.DEL).setKey(KEY)));
+        assertNull(this.backend.getHash(KEY));
+        assertEquals(0, this.backend.size());
+    }
+
+    public void testExpires() throws Exception {
+        this.backend.hset(KEY, "id", SafeEncoder.encode("ABCD"), true, 1).await(0);
+        assertEquals(1, this.backend.size());
+
+        Thread.sleep(1100L);
+        assertNull(this.storeManager.loadRawData(Collections.singletonList(KEY), 0).get(KEY));
+        assertEquals(-2L, this.backend.getTimeToLive(KEY));
+        assertEquals(0, this.backend.size());
+    }
+
+    public void testSimulatesLatency() throws Exception {
+        this.storeManager.destroy();
+        this.storeManager = new RedisStoreManager();
+        this.storeManager.setBackend("memory");
+        this.storeManager.setBackendLatency(5000L);
+        this.storeManager.init();
+
+        final long start = System.nanoTime();
+        this.storeManager.loadRawField(KEY, "id");
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5L));
+    }
+}
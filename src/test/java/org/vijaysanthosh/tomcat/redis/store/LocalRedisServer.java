@@ -0,0 +1,477 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * Local stand-in for redis-server, speaking the redis protocol over a socket on the loopback interface.
+ * Supports the subset of commands used by the session manager: hashes, expiry, keyspace notifications, script loading
+ * and the replication section of INFO. Several of them can form a redis cluster, refer to <code>formCluster</code>.
+ * Scripts can be loaded but not executed, hence the tests using it disable scripting.
+ */
+public class LocalRedisServer {
+
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+    private static final int SLOTS = 16384;
+
+    /**
+     * Commands whose first argument is a key, hence redirected when part of a cluster.
+     */
+    private static final Set<String> KEY_COMMANDS = new HashSet<String>(Arrays.asList(
+            "HSET", "HSETNX", "HDEL", "HGET", "HMGET", "HGETALL", "HKEYS", "DEL", "EXISTS", "EXPIRE"));
+
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<String, Map<String, byte[]>>();
+    private final Map<String, Long> expiries = new ConcurrentHashMap<String, Long>();
+    private final Set<String> scripts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+    private volatile int commandCount = 0;
+    private volatile boolean replica = false;
+    private volatile long replicationOffset = 0L;
+
+    /**
+     * Servers of the cluster, each serving an equal range of the slots in this order. null unless part of a cluster.
+     */
+    private volatile LocalRedisServer[] cluster = null;
+
+    public LocalRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "local-redis-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return Number of commands received so far, across all the connections.
+     */
+    public int getCommandCount() {
+        return this.commandCount;
+    }
+
+    /**
+     * @param key Key of a hash.
+     * @return Hash stored against the key, null if absent or expired.
+     */
+    public Map<String, byte[]> getHash(final String key) {
+        return lookup(key);
+    }
+
+    /**
+     * @param key Key of a hash.
+     * @return Remaining time to live in milliseconds, -1 if the key has no expiry.
+     */
+    public long getTimeToLive(final String key) {
+        final Long expiry = this.expiries.get(key);
+        return expiry == null ? -1L : expiry - System.currentTimeMillis();
+    }
+
+    /**
+     * Sets the replication state reported by INFO.
+     *
+     * @param replica Whether to report as a replica connected to its master, rather than as a master.
+     * @param replicationOffset Replication offset to be reported.
+     */
+    public void setReplication(final boolean replica, final long replicationOffset) {
+        this.replica = replica;
+        this.replicationOffset = replicationOffset;
+    }
+
+    /**
+     * Makes the servers the masters of a redis cluster, each serving an equal range of the slots in the given order.
+     * Can be called again with another order to simulate a resharding, in which case the keys are not moved.
+     * A command on a key of a slot served by another server is replied with a MOVED redirection.
+     *
+     * @param servers Servers of the cluster.
+     */
+    public static void formCluster(final LocalRedisServer... servers) {
+        for (LocalRedisServer server : servers) {
+            server.cluster = servers.clone();
+        }
+    }
+
+    /**
+     * @param servers Servers of the cluster, in the order given to <code>formCluster</code>.
+     * @param key Key.
+     * @return Server serving the slot of the key.
+     */
+    public static LocalRedisServer getNode(final LocalRedisServer[] servers, final String key) {
+        final int slot = JedisClusterCRC16.getSlot(key);
+        int i = 0;
+        while (slot > (i + 1) * SLOTS / servers.length - 1) {
+            i++;
+        }
+        return servers[i];
+    }
+
+    public void shutdown() {
+        this.running = false;
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // Do nothing
+        }
+        for (Connection connection : this.connections) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        while (this.running) {
+            try {
+                final Connection connection = new Connection(this.serverSocket.accept());
+                this.connections.add(connection);
+                final Thread thread = new Thread(connection, "local-redis-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // Server socket closed
+            }
+        }
+    }
+
+    private Map<String, byte[]> lookup(final String key) {
+        final Long expiry = this.expiries.get(key);
+        if (expiry != null && expiry <= System.currentTimeMillis()) {
+            this.expiries.remove(key);
+            if (this.hashes.remove(key) != null) {
+                notifyKeyspace(key, "expired");
+            }
+        }
+        return this.hashes.get(key);
+    }
+
+    private synchronized Object execute(final Connection connection, final List<byte[]> request) {
+        this.commandCount++;
+        final String command = string(request.get(0)).toUpperCase(Locale.ENGLISH);
+        final List<String> args = new ArrayList<String>(request.size() - 1);
+        for (int i = 1; i < request.size(); i++) {
+            args.add(string(request.get(i)));
+        }
+
+        final LocalRedisServer[] cluster = this.cluster;
+        if (cluster != null && KEY_COMMANDS.contains(command)) {
+            final LocalRedisServer node = getNode(cluster, args.get(0));
+            if (node != this) {
+                return new Error("MOVED " + JedisClusterCRC16.getSlot(args.get(0)) + " " + node.getHost() + ":" + node.getPort());
+            }
+        }
+
+        if ("PING".equals(command)) {
+            return new Status("PONG");
+        } else if ("SELECT".equals(command) || "AUTH".equals(command)) {
+            return new Status("OK");
+        } else if ("QUIT".equals(command)) {
+            connection.quit = true;
+            return new Status("OK");
+        } else if ("HSET".equals(command) || "HSETNX".equals(command)) {
+            Map<String, byte[]> hash = lookup(args.get(0));
+            if (hash == null) {
+                hash = new ConcurrentHashMap<String, byte[]>();
+                this.hashes.put(args.get(0), hash);
+            }
+            final boolean absent = !hash.containsKey(args.get(1));
+            if (absent || "HSET".equals(command)) {
+                hash.put(args.get(1), request.get(3));
+                notifyKeyspace(args.get(0), "hset");
+            }
+            return absent ? 1L : 0L;
+        } else if ("HDEL".equals(command)) {
+            final Map<String, byte[]> hash = lookup(args.get(0));
+            long removed = 0L;
+            if (hash != null) {
+                for (String field : args.subList(1, args.size())) {
+                    removed += hash.remove(field) != null ? 1 : 0;
+                }
+                if (hash.isEmpty()) {
+                    this.hashes.remove(args.get(0));
+                    this.expiries.remove(args.get(0));
+                }
+                if (removed > 0) {
+                    notifyKeyspace(args.get(0), "hdel");
+                }
+            }
+            return removed;
+        } else if ("HGET".equals(command)) {
+            final Map<String, byte[]> hash = lookup(args.get(0));
+            return hash != null ? hash.get(args.get(1)) : null;
+        } else if ("HMGET".equals(command)) {
+            final Map<String, byte[]> hash = lookup(args.get(0));
+            final List<Object> values = new ArrayList<Object>();
+            for (String field : args.subList(1, args.size())) {
+                values.add(hash != null ? hash.get(field) : null);
+            }
+            return values;
+        } else if ("HGETALL".equals(command) || "HKEYS".equals(command)) {
+            final Map<String, byte[]> hash = lookup(args.get(0));
+            final List<Object> values = new ArrayList<Object>();
+            if (hash != null) {
+                for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                    values.add(bytes(entry.getKey()));
+                    if ("HGETALL".equals(command)) {
+                        values.add(entry.getValue());
+                    }
+                }
+            }
+            return values;
+        } else if ("DEL".equals(command)) {
+            long removed = 0L;
+            for (String key : args) {
+                if (lookup(key) != null) {
+                    this.hashes.remove(key);
+                    this.expiries.remove(key);
+                    notifyKeyspace(key, "del");
+                    removed++;
+                }
+            }
+            return removed;
+        } else if ("EXISTS".equals(command)) {
+            return lookup(args.get(0)) != null ? 1L : 0L;
+        } else if ("EXPIRE".equals(command)) {
+            if (lookup(args.get(0)) == null) {
+                return 0L;
+            }
+            this.expiries.put(args.get(0), System.currentTimeMillis() + Long.parseLong(args.get(1)) * 1000L);
+            notifyKeyspace(args.get(0), "expire");
+            return 1L;
+        } else if ("SCRIPT".equals(command) && "LOAD".equalsIgnoreCase(args.get(0))) {
+            final String sha = sha1Hex(request.get(2));
+            this.scripts.add(sha);
+            return bytes(sha);
+        } else if ("EVALSHA".equals(command)) {
+            return this.scripts.contains(args.get(0))
+                    ? new Error("ERR scripts are not executed by the local stand-in")
+                    : new Error("NOSCRIPT No matching script. Please use EVAL.");
+        } else if ("CLUSTER".equals(command) && "SLOTS".equalsIgnoreCase(args.get(0)) && cluster != null) {
+            final List<Object> slots = new ArrayList<Object>();
+            for (int i = 0; i < cluster.length; i++) {
+                slots.add(Arrays.<Object>asList((long) (i * SLOTS / cluster.length), (long) ((i + 1) * SLOTS / cluster.length - 1),
+                        Arrays.<Object>asList(bytes(cluster[i].getHost()), (long) cluster[i].getPort())));
+            }
+            return slots;
+        } else if ("INFO".equals(command)) {
+            return bytes(this.replica
+                    ? "# Replication\r\nrole:slave\r\nmaster_link_status:up\r\nslave_repl_offset:" + this.replicationOffset + "\r\n"
+                    : "# Replication\r\nrole:master\r\nmaster_repl_offset:" + this.replicationOffset + "\r\n");
+        } else if ("CONFIG".equals(command) && "GET".equalsIgnoreCase(args.get(0))) {
+            return Arrays.<Object>asList(bytes(args.get(1)), bytes("notify-keyspace-events".equals(args.get(1)) ? "KA" : ""));
+        } else if ("PSUBSCRIBE".equals(command)) {
+            for (String pattern : args) {
+                connection.patterns.add(pattern);
+                connection.write(Arrays.<Object>asList(bytes("psubscribe"), bytes(pattern), (long) connection.patterns.size()));
+            }
+            return null;
+        } else if ("PUNSUBSCRIBE".equals(command)) {
+            final List<String> patterns = args.isEmpty() ? new ArrayList<String>(connection.patterns) : args;
+            for (String pattern : patterns) {
+                connection.patterns.remove(pattern);
+                connection.write(Arrays.<Object>asList(bytes("punsubscribe"), bytes(pattern), (long) connection.patterns.size()));
+            }
+            return null;
+        }
+        return new Error("ERR unknown command '" + command + "'");
+    }
+
+    private void notifyKeyspace(final String key, final String event) {
+        final String channel = "__keyspace@0__:" + key;
+        for (Connection connection : this.connections) {
+            for (String pattern : connection.patterns) {
+                if (glob(pattern).matcher(channel).matches()) {
+                    connection.write(Arrays.<Object>asList(bytes("pmessage"), bytes(pattern), bytes(channel), bytes(event)));
+                }
+            }
+        }
+    }
+
+    private static Pattern glob(final String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String sha1Hex(final byte[] bytes) {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String string(final byte[] bytes) {
+        return new String(bytes, CHARSET);
+    }
+
+    private static byte[] bytes(final String string) {
+        return string.getBytes(CHARSET);
+    }
+
+    private static final class Status {
+        private final String message;
+
+        private Status(String message) {
+            this.message = message;
+        }
+    }
+
+    private static final class Error {
+        private final String message;
+
+        private Error(String message) {
+            this.message = message;
+        }
+    }
+
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Set<String> patterns = new LinkedHashSet<String>();
+        private volatile boolean quit = false;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            // As does redis-server, otherwise the replies to a pipeline are held back by Nagle's algorithm.
+            this.socket.setTcpNoDelay(true);
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running && !this.quit) {
+                    final List<byte[]> request = readRequest();
+                    if (request == null) {
+                        break;
+                    }
+                    final Object reply = execute(this, request);
+                    if (reply != null) {
+                        write(reply);
+                    }
+                }
+            } catch (SocketException e) {
+                // Connection closed
+            } catch (IOException e) {
+                // Connection closed
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            connections.remove(this);
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                // Do nothing
+            }
+        }
+
+        private List<byte[]> readRequest() throws IOException {
+            final String header = readLine();
+            if (header == null) {
+                return null;
+            }
+            final int count = Integer.parseInt(header.substring(1));
+            final List<byte[]> request = new ArrayList<byte[]>(count);
+            for (int i = 0; i < count; i++) {
+                final int length = Integer.parseInt(readLine().substring(1));
+                final byte[] bulk = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    final int n = this.in.read(bulk, read, length - read);
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    read += n;
+                }
+                readLine();
+                request.add(bulk);
+            }
+            return request;
+        }
+
+        private String readLine() throws IOException {
+            final StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = this.in.read()) != -1) {
+                if (c == '\r') {
+                    this.in.read(); // '\n'
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return null;
+        }
+
+        private synchronized void write(final Object reply) {
+            try {
+                writeReply(reply);
+                this.out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void writeReply(final Object reply) throws IOException {
+            if (reply == null) {
+                this.out.write(bytes("$-1\r\n"));
+            } else if (reply instanceof Status) {
+                this.out.write(bytes("+" + ((Status) reply).message + "\r\n"));
+            } else if (reply instanceof Error) {
+                this.out.write(bytes("-" + ((Error) reply).message + "\r\n"));
+            } else if (reply instanceof Long) {
+                this.out.write(bytes(":" + reply + "\r\n"));
+            } else if (reply instanceof byte[]) {
+                final byte[] bulk = (byte[]) reply;
+                this.out.write(bytes("$" + bulk.length + "\r\n"));
+                this.out.write(bulk);
+                this.out.write(bytes("\r\n"));
+            } else if (reply instanceof List) {
+                final List<?> multi = (List<?>) reply;
+                this.out.write(bytes("*" + multi.size() + "\r\n"));
+                for (Object element : multi) {
+                    writeReply(element);
+                }
+            }
+        }
+    }
+}
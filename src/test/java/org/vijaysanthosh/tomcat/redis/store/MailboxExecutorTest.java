@@ -0,0 +1,111 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MailboxExecutorTest extends TestCase {
+
+    public void testOrderPerMailbox() throws Exception {
+        final MailboxExecutor<Runnable> executor = new MailboxExecutor<Runnable>(4, 4, 10000, ExecutorThreads.PLATFORM.newThreadFactory("test-"));
+        final List<List<Integer>> executed = new ArrayList<List<Integer>>();
+        for(int mailbox = 0; mailbox < executor.getMailboxes(); mailbox++) {
+            executed.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        for(int i = 0; i < 1000; i++) {
+            for(int mailbox = 0; mailbox < executor.getMailboxes(); mailbox++) {
+                final List<Integer> log = executed.get(mailbox);
+                final int sequence = i;
+                assertTrue(executor.offer(mailbox, new Runnable() {
+                    @Override
+                    public void run() {
+                        log.add(sequence);
+                    }
+                }));
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for(List<Integer> log : executed) {
+            assertEquals(1000, log.size());
+            for(int i = 0; i < log.size(); i++) {
+                assertEquals(i, log.get(i).intValue());
+            }
+        }
+    }
+
+    public void testIdleWorkerTakesOverMailboxOfBusyGroup() throws Exception {
+        final MailboxExecutor<Runnable> executor = new MailboxExecutor<Runnable>(2, 2, 10, ExecutorThreads.PLATFORM.newThreadFactory("test-"));
+        assertEquals(0, executor.getGroup(2));
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.offer(0, new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // Same group as the stuck mailbox, which would wait behind it with a single threaded executor per group.
+        final CountDownLatch executed = new CountDownLatch(1);
+        executor.offer(2, new Runnable() {
+            @Override
+            public void run() {
+                executed.countDown();
+            }
+        });
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.size(0));
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    public void testCapacityPerGroup() throws Exception {
+        final MailboxExecutor<Runnable> executor = new MailboxExecutor<Runnable>(1, 2, 1, ExecutorThreads.PLATFORM.newThreadFactory("test-"));
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable waiting = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        assertTrue(executor.offer(0, waiting));
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (executor.size(0) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+
+        assertTrue(executor.offer(1, waiting));
+        assertEquals(1, executor.size(0));
+        assertFalse(executor.offer(0, waiting));
+        assertFalse(executor.offer(0, waiting, 50, TimeUnit.MILLISECONDS));
+
+        // Removing a queued task makes room.
+        assertTrue(executor.remove(1, waiting));
+        assertEquals(0, executor.size(0));
+        assertTrue(executor.offer(0, waiting));
+
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
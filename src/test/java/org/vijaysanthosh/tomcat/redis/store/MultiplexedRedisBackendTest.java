@@ -0,0 +1,144 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MultiplexedRedisBackendTest extends TestCase {
+
+    private static final String KEY = "session:main:ABCD";
+
+    private LocalRedisServer server;
+    private RedisStoreManager storeManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.server = new LocalRedisServer();
+
+        this.storeManager = new RedisStoreManager();
+        this.storeManager.setHost(this.server.getHost());
+        this.storeManager.setPort(this.server.getPort());
+        this.storeManager.setBackend("multiplexed");
+        this.storeManager.setScripting(false);
+        this.storeManager.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        this.server.shutdown();
+    }
+
+    public void testConcurrentCallsShareOneConnection() throws Exception {
+        final int threads = 16;
+        final int callsPerThread = 100;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int set = 0;
+                        for (int i = 0; i < callsPerThread; i++) {
+                            // Every field is claimed twice, only the first claim sets it.
+                            final String field = "id-" + ((thread / 2) * callsPerThread + i);
+                            if (storeManager.backend.hset(KEY, field, SafeEncoder.encode(field), false, 60).await(5000L)) {
+                                set++;
+                            }
+                        }
+                        return set;
+                    }
+                }));
+            }
+            int set = 0;
+            for (Future<Integer> result : results) {
+                set += result.get();
+            }
+            assertEquals(threads * callsPerThread / 2, set);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * callsPerThread / 2, this.server.getHash(KEY).size());
+        assertTrue(this.server.getTimeToLive(KEY) > 0L);
+    }
+
+    public void testLoadsPartially() throws Exception {
+        this.storeManager.backend.hset(KEY, "id", SafeEncoder.encode("ABCD"), true, 0).await(5000L);
+        this.storeManager.backend.hset(KEY, "user", SafeEncoder.encode("someone"), true, 0).await(5000L);
+        this.storeManager.backend.hset("session:main:EFGH", "id", SafeEncoder.encode("EFGH"), true, 0).await(5000L);
+
+        final Map<String, Map<String, byte[]>> data = this.storeManager.loadRawData(
+                Arrays.asList(KEY, "session:main:EFGH", "session:main:IJKL"),
+                Collections.singleton(KEY), Collections.singletonList("id"), 60);
+        assertEquals("ABCD", new String(data.get(KEY).get("id"), "UTF-8"));
+        assertTrue(data.get(KEY).containsKey("user"));
+        assertNull(data.get(KEY).get("user"));
+        assertEquals("EFGH", new String(data.get("session:main:EFGH").get("id"), "UTF-8"));
+        assertTrue(data.containsKey("session:main:IJKL"));
+        assertNull(data.get("session:main:IJKL"));
+        assertEquals("someone", new String(this.storeManager.loadRawField(KEY, "user"), "UTF-8"));
+        assertTrue(this.server.getTimeToLive(KEY) > 0L);
+    }
+
+    public void testSetsAbsentFieldsTogether() throws Exception {
+        this.storeManager.backend.hset(KEY, "id", SafeEncoder.encode("ABCD"), true, 0).await(5000L);
+
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put(KEY, "ABCD");
+        values.put("session:main:EFGH", "EFGH");
+        assertEquals(Collections.singleton("session:main:EFGH"), this.storeManager.hsetnx("id", values, 60));
+        assertEquals(-1L, this.server.getTimeToLive(KEY));
+        assertTrue(this.server.getTimeToLive("session:main:EFGH") > 0L);
+    }
+
+    public void testFailsOnceClosed() {
+        this.storeManager.backend.close();
+        try {
+            this.storeManager.loadRawField(KEY, "id");
+            fail("Expected the closed connection to fail the call");
+        } catch (JedisConnectionException e) {
+            // Expected
+        }
+    }
+
+    public void testHandshakeTimesOut() throws Exception {
+        // Accepts the connections, yet never replies.
+        final ServerSocket stalled = new ServerSocket(0);
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setHost("localhost");
+        storeManager.setPort(stalled.getLocalPort());
+        storeManager.setPassword("secret");
+        storeManager.setTimeout(200);
+        final MultiplexedRedisConnection connection = new MultiplexedRedisConnection(storeManager, "stalled");
+        try {
+            connection.start();
+            final RedisFuture<Object> reply = connection.send(Protocol.Command.PING);
+            try {
+                reply.await(5000L);
+                fail("Expected the handshake to time out");
+            } catch (JedisConnectionException e) {
+                // Failed by the handshake, rather than left waiting.
+                assertNotNull(reply.getFailure());
+            }
+        } finally {
+            connection.close();
+            stalled.close();
+        }
+    }
+}
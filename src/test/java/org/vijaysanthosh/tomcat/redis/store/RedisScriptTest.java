@@ -0,0 +1,17 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+public class RedisScriptTest extends TestCase {
+
+    public void testScript() throws Exception {
+        // Digest as reported by SCRIPT LOAD in redis
+        assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", new RedisScript("return 1").getSha());
+
+        assertTrue(RedisScript.isNoScript(new JedisDataException("NOSCRIPT No matching script. Please use EVAL.")));
+        assertFalse(RedisScript.isNoScript(new JedisDataException("ERR wrong number of arguments")));
+        assertFalse(RedisScript.isNoScript(new IllegalStateException("NOSCRIPT")));
+    }
+
+}
@@ -0,0 +1,148 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import org.apache.catalina.LifecycleException;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+
+import java.util.*;
+
+public class RedisStoreManagerClusterTest extends TestCase {
+
+    private LocalRedisServer[] servers;
+    private RedisStoreManager storeManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.servers = new LocalRedisServer[] {new LocalRedisServer(), new LocalRedisServer()};
+        LocalRedisServer.formCluster(this.servers);
+        this.storeManager = createStoreManager();
+        this.storeManager.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        for (LocalRedisServer server : this.servers) {
+            server.shutdown();
+        }
+    }
+
+    public void testGroupByNode() throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            keys.add("session:{" + i + "}:main");
+        }
+
+        final Collection<List<String>> groups = this.storeManager.groupByNode(keys);
+        assertEquals(2, groups.size());
+        int grouped = 0;
+        for (List<String> group : groups) {
+            final LocalRedisServer node = LocalRedisServer.getNode(this.servers, group.get(0));
+            for (String key : group) {
+                assertSame(node, LocalRedisServer.getNode(this.servers, key));
+            }
+            // The order of the keys is retained within a node.
+            for (int i = 1; i < group.size(); i++) {
+                assertTrue(keys.indexOf(group.get(i - 1)) < keys.indexOf(group.get(i)));
+            }
+            grouped += group.size();
+        }
+        assertEquals(keys.size(), grouped);
+
+        // The hashes of a session share the slot of the session id.
+        assertEquals(1, this.storeManager.groupByNode(Arrays.asList("session:{ABCD}:main", "session:{ABCD}:notes", "session:{ABCD}:attributes")).size());
+    }
+
+    public void testGroupCommandsByNode() throws Exception {
+        final List<RedisCommand> commands = new ArrayList<RedisCommand>();
+        for (int i = 0; i < 20; i++) {
+            commands.add(hset(String.valueOf(i), "cart"));
+            commands.add(new RedisCommand(String.valueOf(i)).setCommand(Command.EXPIRY).setKey(key(String.valueOf(i))).setExpiryInterval(60));
+        }
+
+        final Collection<List<RedisCommand>> groups = this.storeManager.groupCommandsByNode(commands);
+        assertEquals(2, groups.size());
+        for (List<RedisCommand> group : groups) {
+            final LocalRedisServer node = LocalRedisServer.getNode(this.servers, group.get(0).getKey());
+            for (int i = 0; i < group.size(); i++) {
+                assertSame(node, LocalRedisServer.getNode(this.servers, group.get(i).getKey()));
+                if (i > 0) {
+                    assertTrue(commands.indexOf(group.get(i - 1)) < commands.indexOf(group.get(i)));
+                }
+            }
+        }
+
+        this.storeManager.execute(commands);
+        for (int i = 0; i < 20; i++) {
+            final LocalRedisServer node = LocalRedisServer.getNode(this.servers, key(String.valueOf(i)));
+            assertNotNull(awaitField(node, key(String.valueOf(i)), "cart"));
+            // The expiry follows the HSET in the pipeline of the node.
+            final long deadline = System.currentTimeMillis() + 5000L;
+            while (node.getTimeToLive(key(String.valueOf(i))) < 0L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5L);
+            }
+            assertTrue(node.getTimeToLive(key(String.valueOf(i))) > 0L);
+        }
+    }
+
+    public void testMovedSlots() throws Exception {
+        final String key = key("ABCD");
+        final LocalRedisServer node = LocalRedisServer.getNode(this.servers, key);
+        this.storeManager.hset(key, "id", "ABCD", true);
+        assertNotNull(node.getHash(key));
+
+        // Resharded, while the store manager still routes by the slots it discovered.
+        final LocalRedisServer[] resharded = {this.servers[1], this.servers[0]};
+        LocalRedisServer.formCluster(resharded);
+        final LocalRedisServer movedNode = LocalRedisServer.getNode(resharded, key);
+        assertNotSame(node, movedNode);
+
+        // Each path retries once on the node now serving the slot.
+        this.storeManager.hset(key, "id", "ABCD", true);
+        assertNotNull(movedNode.getHash(key));
+        assertEquals(1, this.storeManager.loadRawData(Collections.singletonList(key), 0).get(key).size());
+
+        LocalRedisServer.formCluster(this.servers);
+        this.storeManager.execute(Collections.singletonList(hset("ABCD", "cart")));
+        assertNotNull(awaitField(node, key, "cart"));
+        assertEquals(0L, this.storeManager.getMetrics().getCommandErrors());
+    }
+
+    public void testUnsupportedSettings() throws Exception {
+        final RedisStoreManager storeManager = createStoreManager();
+        storeManager.setDatabase(1);
+        try {
+            storeManager.init();
+            fail("Expected LifecycleException");
+        } catch (LifecycleException e) {
+            // Expected
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    private RedisStoreManager createStoreManager() {
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setClusterNodes(this.servers[0].getHost() + ":" + this.servers[0].getPort());
+        storeManager.setScripting(false);
+        storeManager.setExecutorPoolSize(1);
+        return storeManager;
+    }
+
+    private static byte[] awaitField(final LocalRedisServer node, final String key, final String field) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while ((node.getHash(key) == null || node.getHash(key).get(field) == null) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        return node.getHash(key) != null ? node.getHash(key).get(field) : null;
+    }
+
+    private static String key(final String sessionId) {
+        return "session:{" + sessionId + "}:attributes";
+    }
+
+    private static RedisCommand hset(final String sessionId, final String field) {
+        return new RedisCommand(sessionId).setCommand(Command.HSET).setKey(key(sessionId)).setField(field).setValue("CART");
+    }
+}
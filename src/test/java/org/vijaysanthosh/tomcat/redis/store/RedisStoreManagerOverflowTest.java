@@ -0,0 +1,117 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand;
+import org.vijaysanthosh.tomcat.redis.session.RedisCommand.Command;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+
+public class RedisStoreManagerOverflowTest extends TestCase {
+
+    private ServerSocket stalledRedis;
+
+    @Override
+    protected void setUp() throws Exception {
+        // Connections are accepted by the OS but never replied to, as by a stalled redis.
+        this.stalledRedis = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.stalledRedis.close();
+    }
+
+    public void testBlock() throws Exception {
+        final RedisStoreManager storeManager = createStoreManager("block");
+        try {
+            fillQueue(storeManager);
+
+            final long start = System.currentTimeMillis();
+            storeManager.execute(Collections.singletonList(hset("C")));
+            assertTrue(System.currentTimeMillis() - start >= 100L);
+            assertEquals(1L, storeManager.getMetrics().getDroppedCommands());
+            assertEquals(1, storeManager.getExecutorHighWaterMarks()[0]);
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    public void testCoalesce() throws Exception {
+        final RedisStoreManager storeManager = createStoreManager("coalesce");
+        try {
+            fillQueue(storeManager);
+
+            storeManager.execute(Collections.singletonList(hset("C")));
+            assertEquals(1L, storeManager.getMetrics().getCoalescedBatches());
+            assertEquals(0L, storeManager.getMetrics().getDroppedCommands());
+            assertEquals(1, storeManager.getExecutorBacklog()[0]);
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    public void testDropExpiry() throws Exception {
+        final RedisStoreManager storeManager = createStoreManager("dropExpiry");
+        try {
+            storeManager.execute(Collections.singletonList(hset("A")));
+            awaitEmptyQueue(storeManager);
+            storeManager.execute(Collections.singletonList(expiry("B")));
+
+            // The queued expiry makes room for the change.
+            storeManager.execute(Collections.singletonList(hset("C")));
+            assertEquals(1L, storeManager.getMetrics().getDroppedCommands());
+            assertEquals(1, storeManager.getExecutorBacklog()[0]);
+
+            // Expiries are dropped without waiting.
+            final long start = System.currentTimeMillis();
+            storeManager.execute(Collections.singletonList(expiry("D")));
+            assertTrue(System.currentTimeMillis() - start < 100L);
+            assertEquals(2L, storeManager.getMetrics().getDroppedCommands());
+        } finally {
+            storeManager.destroy();
+        }
+    }
+
+    private RedisStoreManager createStoreManager(final String overflowPolicy) throws Exception {
+        final RedisStoreManager storeManager = new RedisStoreManager();
+        storeManager.setHost("127.0.0.1");
+        storeManager.setPort(this.stalledRedis.getLocalPort());
+        storeManager.setTimeout(500);
+        storeManager.setScripting(false);
+        storeManager.setExecutorPoolSize(1);
+        storeManager.setExecutorQueueSize(1);
+        // A single mailbox, so that the batches of all the sessions queue up behind each other.
+        storeManager.setExecutorMailboxes(1);
+        storeManager.setOverflowPolicy(overflowPolicy);
+        storeManager.setOverflowTimeout(100L);
+        storeManager.init();
+        return storeManager;
+    }
+
+    /**
+     * Leaves the executor stuck on a first batch and its queue full with a second one.
+     */
+    private static void fillQueue(final RedisStoreManager storeManager) throws InterruptedException {
+        storeManager.execute(Collections.singletonList(hset("A")));
+        awaitEmptyQueue(storeManager);
+        storeManager.execute(Collections.singletonList(hset("B")));
+        assertEquals(1, storeManager.getExecutorBacklog()[0]);
+    }
+
+    private static void awaitEmptyQueue(final RedisStoreManager storeManager) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (storeManager.getExecutorBacklog()[0] > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+    }
+
+    private static RedisCommand hset(final String sessionId) {
+        return new RedisCommand(sessionId).setCommand(Command.HSET).setKey("session:attributes:" + sessionId).setField("cart").setValue("CART");
+    }
+
+    private static RedisCommand expiry(final String sessionId) {
+        return new RedisCommand(sessionId).setCommand(Command.EXPIRY).setKey("session:attributes:" + sessionId).setExpiryInterval(60);
+    }
+}
@@ -0,0 +1,76 @@
+package org.vijaysanthosh.tomcat.redis.store;
+
+import junit.framework.TestCase;
+import redis.clients.jedis.Jedis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class RedisStoreManagerReplicaTest extends TestCase {
+
+    private static final String KEY = "session:main:ABCD";
+    private static final List<String> KEYS = Collections.singletonList(KEY);
+
+    private LocalRedisServer master;
+    private LocalRedisServer replica;
+    private RedisStoreManager storeManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.master = new LocalRedisServer();
+        this.replica = new LocalRedisServer();
+        hset(this.master, "master");
+        hset(this.replica, "replica");
+        this.master.setReplication(false, 1000L);
+        this.replica.setReplication(true, 950L);
+
+        this.storeManager = new RedisStoreManager();
+        this.storeManager.setHost(this.master.getHost());
+        this.storeManager.setPort(this.master.getPort());
+        this.storeManager.setReplicas(this.replica.getHost() + ":" + this.replica.getPort());
+        this.storeManager.setReplicaMaxLag(100L);
+        this.storeManager.setReplicaLagCheckInterval(60000L);
+        this.storeManager.setScripting(false);
+        this.storeManager.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.storeManager.destroy();
+        this.master.shutdown();
+        this.replica.shutdown();
+    }
+
+    public void testReadsFromFreshReplica() throws Exception {
+        assertTrue(this.storeManager.isReplicaReads());
+        assertEquals("replica", new String(this.storeManager.loadRawDataFromReplica(KEYS).get(KEY).get("id"), "UTF-8"));
+        // The replica is never written to.
+        assertEquals(-1L, this.replica.getTimeToLive(KEY));
+    }
+
+    public void testSkipsLaggingReplica() throws Exception {
+        this.replica.setReplication(true, 800L);
+        this.storeManager.checkReplicas();
+        assertNull(this.storeManager.loadRawDataFromReplica(KEYS));
+
+        final Map<String, byte[]> hash = this.storeManager.loadRawData(KEYS, 60).get(KEY);
+        assertEquals("master", new String(hash.get("id"), "UTF-8"));
+    }
+
+    public void testInfoField() {
+        final String info = "# Replication\r\nrole:slave\r\nmaster_link_status:up\r\nslave_repl_offset:42\r\n";
+        assertEquals("42", RedisStoreManager.getInfoField(info, "slave_repl_offset"));
+        assertEquals("up", RedisStoreManager.getInfoField(info, "master_link_status"));
+        assertNull(RedisStoreManager.getInfoField(info, "master_repl_offset"));
+    }
+
+    private static void hset(final LocalRedisServer server, final String value) {
+        final Jedis jedis = new Jedis(server.getHost(), server.getPort());
+        try {
+            jedis.hset(KEY, "id", value);
+        } finally {
+            jedis.close();
+        }
+    }
+}
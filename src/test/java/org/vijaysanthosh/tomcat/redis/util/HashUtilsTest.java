@@ -0,0 +1,16 @@
+package org.vijaysanthosh.tomcat.redis.util;
+
+import junit.framework.TestCase;
+
+public class HashUtilsTest extends TestCase {
+
+    public void testFingerprint() throws Exception {
+        assertEquals(0L, HashUtils.fingerprint(null));
+        assertEquals(0xcbf29ce484222325L, HashUtils.fingerprint(new byte[0]));
+        assertEquals(0xaf63dc4c8601ec8cL, HashUtils.fingerprint("a".getBytes("US-ASCII")));
+
+        assertEquals(HashUtils.fingerprint(new byte[] {1, 2, 3}), HashUtils.fingerprint(new byte[] {1, 2, 3}));
+        assertFalse(HashUtils.fingerprint(new byte[] {1, 2, 3}) == HashUtils.fingerprint(new byte[] {1, 3, 2}));
+    }
+
+}